@@ -0,0 +1,197 @@
+package com.ova.platform.markov.benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Corpus de los benchmarks como {@link Reader}, sin materializar el texto: así
+ * se puede entrenar con 1 GB sin reservar 1 GB de heap.
+ *
+ * <p>{@value #SINTETICO}: español sintético reproducible (palabras frecuentes con
+ * tildes y eñes, una cola larga de palabras raras con distribución de Zipf y
+ * puntuación). Cualquier otro valor es la ruta de un corpus real en UTF-8, que
+ * se vuelve a leer desde el principio si es más corto que el tamaño pedido.</p>
+ */
+final class Corpus {
+
+    static final String SINTETICO = "sintetico";
+
+    /** Hasta este tamaño el corpus se genera una vez y se lee desde memoria. */
+    static final long MATERIALIZE_LIMIT = 256L << 20;
+
+    private static final String[] FRECUENTES = {
+            "de", "la", "que", "el", "en", "y", "a", "los", "se", "del", "las", "un", "por", "con", "no",
+            "una", "su", "para", "es", "al", "lo", "como", "más", "pero", "sus", "le", "ya", "o", "fue",
+            "este", "ha", "sí", "porque", "esta", "son", "entre", "está", "cuando", "muy", "sin", "sobre",
+            "ser", "también", "me", "hasta", "hay", "donde", "han", "quien", "están", "desde", "todo",
+            "nos", "durante", "todos", "uno", "les", "ni", "contra", "otros", "fueron", "ese", "eso",
+            "había", "ante", "ellos", "esto", "mí", "antes", "algunos", "qué", "unos", "yo", "otro",
+            "otras", "otra", "él", "tanto", "esa", "estos", "mucho", "quienes", "nada", "muchos", "cuál",
+            "año", "niño", "mañana", "corazón", "canción", "pequeño", "señor", "acción", "país", "árbol",
+            "después", "según", "también", "música", "página", "último", "público", "montaña", "español"};
+
+    private static final String[] SILABAS = {
+            "ca", "de", "fi", "go", "lu", "ma", "ne", "pi", "ro", "sa", "te", "vi", "zo", "ña", "ció",
+            "bre", "tra", "ás", "cu", "le", "mo", "ri", "llo", "que", "gui", "ún", "dé", "pro", "es", "al"};
+
+    private static final int RAREZAS = 200_000;
+
+    private Corpus() {
+    }
+
+    /** Tamaños como "10KB", "1MB", "100MB" o "1GB"; sin sufijo, en bytes. */
+    static long parseSize(String size) {
+        String value = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (value.endsWith("KB")) unit = 1L << 10;
+        else if (value.endsWith("MB")) unit = 1L << 20;
+        else if (value.endsWith("GB")) unit = 1L << 30;
+        if (unit > 1) value = value.substring(0, value.length() - 2);
+        return Long.parseLong(value.trim()) * unit;
+    }
+
+    /**
+     * Abre {@code chars} caracteres del corpus. Con el corpus sintético casi todos
+     * son ASCII, así que el tamaño en caracteres se aproxima al tamaño en bytes.
+     */
+    static Reader open(String corpus, long chars) throws IOException {
+        Reader source = SINTETICO.equals(corpus) ? new Sintetico(42) : new Repetido(Path.of(corpus));
+        return new Limitado(source, chars);
+    }
+
+    /** El corpus completo en memoria; sólo para tamaños hasta {@link #MATERIALIZE_LIMIT}. */
+    static String text(String corpus, long chars) throws IOException {
+        if (chars > MATERIALIZE_LIMIT) {
+            throw new IllegalArgumentException("Corpus demasiado grande para materializar: " + chars);
+        }
+        StringWriter text = new StringWriter((int) chars);
+        try (Reader reader = open(corpus, chars)) {
+            reader.transferTo(text);
+        }
+        return text.toString();
+    }
+
+    // Recorta el corpus a `limit` caracteres
+    private static final class Limitado extends Reader {
+        private final Reader source;
+        private long remaining;
+
+        Limitado(Reader source, long limit) {
+            this.source = source;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) return -1;
+            int read = source.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    // Corpus real en UTF-8, en bucle: al llegar al final se reabre el fichero
+    private static final class Repetido extends Reader {
+        private final Path path;
+        private Reader current;
+
+        Repetido(Path path) throws IOException {
+            if (Files.size(path) == 0) {
+                throw new IllegalArgumentException("Corpus vacío: " + path);
+            }
+            this.path = path;
+            this.current = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = current.read(buffer, offset, length);
+            if (read >= 0) return read;
+            current.close();
+            current = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            // Separa la última palabra de una vuelta de la primera de la siguiente
+            buffer[offset] = '\n';
+            return 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            current.close();
+        }
+    }
+
+    // Texto infinito y reproducible: cada llamada genera las palabras que hagan falta
+    private static final class Sintetico extends Reader {
+        private final SplittableRandom random;
+        private final StringBuilder pending = new StringBuilder(256);
+        private int position;
+        private boolean capitalize = true;
+
+        Sintetico(long seed) {
+            this.random = new SplittableRandom(seed);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int written = 0;
+            while (written < length) {
+                if (position == pending.length()) {
+                    pending.setLength(0);
+                    position = 0;
+                    appendWord();
+                }
+                int n = Math.min(length - written, pending.length() - position);
+                pending.getChars(position, position + n, buffer, offset + written);
+                position += n;
+                written += n;
+            }
+            return written;
+        }
+
+        private void appendWord() {
+            // Zipf aproximado: rango log-uniforme sobre frecuentes + rarezas
+            int rank = (int) Math.pow(FRECUENTES.length + RAREZAS, random.nextDouble()) - 1;
+            int start = pending.length();
+            if (rank < FRECUENTES.length) {
+                pending.append(FRECUENTES[rank]);
+            } else {
+                appendRare(rank - FRECUENTES.length);
+            }
+            if (capitalize) {
+                pending.setCharAt(start, Character.toUpperCase(pending.charAt(start)));
+            }
+
+            int p = random.nextInt(100);
+            capitalize = p < 6;
+            if (p < 6) pending.append(p < 5 ? ". " : "?\n");
+            else if (p < 12) pending.append(", ");
+            else if (p < 13) pending.append("; ");
+            else pending.append(' ');
+        }
+
+        // Cada rareza es una combinación fija de dos a cuatro sílabas
+        private void appendRare(int rare) {
+            int syllables = 2 + rare % 3;
+            int code = rare;
+            for (int i = 0; i < syllables; i++) {
+                pending.append(SILABAS[code % SILABAS.length]);
+                code = code / SILABAS.length + 7 * i + 1;
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
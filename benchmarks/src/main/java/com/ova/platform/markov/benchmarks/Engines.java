@@ -0,0 +1,85 @@
+package com.ova.platform.markov.benchmarks;
+
+import com.ova.platform.markov.config.ExecutorConfig;
+import com.ova.platform.markov.service.MarkovEngine;
+import com.ova.platform.markov.service.MarkovJavaService;
+import com.ova.platform.markov.service.MarkovMetrics;
+import com.ova.platform.markov.service.MarkovNativeService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Un motor del servicio montado en un contexto de Spring mínimo (los
+ * ejecutores, las métricas y el motor), con los mismos valores por defecto que
+ * en producción.
+ * Las propiedades {@code -Dmarkov.*} de la JVM del benchmark tienen prioridad,
+ * salvo la ruta de la librería en {@value #SIMULATION}.
+ */
+final class Engines implements AutoCloseable {
+
+    static final String NATIVE = "native";
+    static final String SIMULATION = "simulation";
+    static final String JAVA = "java";
+
+    private final AnnotationConfigApplicationContext context;
+    private final MarkovEngine engine;
+
+    private Engines(AnnotationConfigApplicationContext context) {
+        this.context = context;
+        this.engine = context.getBean(MarkovEngine.class);
+    }
+
+    static Engines start(String backend) {
+        Map<String, Object> defaults = new HashMap<>();
+        Map<String, Object> overrides = new HashMap<>();
+        defaults.put("markov.native.debug-mode", "false");
+        Class<?> service;
+        switch (backend) {
+            case NATIVE -> {
+                defaults.put("markov.native.library-path", "../src/main/resources/native/libmarkovova.so");
+                service = MarkovNativeService.class;
+            }
+            case SIMULATION -> {
+                // Sin librería aunque se pase -Dmarkov.native.library-path: el servicio cae al modo simulación
+                overrides.put("markov.native.library-path", "/nonexistent/libmarkovova.so");
+                overrides.put("markov.native.library-name", "markovova-no-disponible");
+                service = MarkovNativeService.class;
+            }
+            case JAVA -> service = MarkovJavaService.class;
+            default -> throw new IllegalArgumentException("Backend desconocido: " + backend);
+        }
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("backend", overrides));
+        context.getEnvironment().getPropertySources().addLast(new MapPropertySource("benchmarks", defaults));
+        // Las métricas se registran igual que en producción, así que su coste entra en la medida
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(ExecutorConfig.class, MarkovMetrics.class, service);
+        context.refresh();
+
+        Engines engines = new Engines(context);
+        if (service == MarkovNativeService.class
+                && context.getBean(MarkovNativeService.class).isNativeLibraryLoaded() != NATIVE.equals(backend)) {
+            engines.close();
+            throw new IllegalStateException(NATIVE.equals(backend)
+                    ? "No se cargó la librería nativa; indica la ruta con "
+                    + "-jvmArgsAppend -Dmarkov.native.library-path=/ruta/libmarkovova.so"
+                    : "El backend simulation cargó una librería nativa");
+        }
+        return engines;
+    }
+
+    MarkovEngine engine() {
+        return engine;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
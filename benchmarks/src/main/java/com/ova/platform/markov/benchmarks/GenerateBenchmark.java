@@ -0,0 +1,98 @@
+package com.ova.platform.markov.benchmarks;
+
+import com.ova.platform.markov.service.GenerationItem;
+import com.ova.platform.markov.service.MarkovEngine;
+import com.ova.platform.markov.service.MarkovModelHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generación sobre un modelo entrenado una vez por trial con el corpus de
+ * {@code size}. Cada operación usa una semilla nueva, como las peticiones sin
+ * {@code seed}, pero la secuencia es la misma en cada ejecución.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GenerateBenchmark {
+
+    private static final int BATCH = 32;
+
+    @Param({Engines.NATIVE, Engines.SIMULATION, Engines.JAVA})
+    public String backend;
+
+    @Param({Corpus.SINTETICO})
+    public String corpus;
+
+    @Param({"1MB", "100MB"})
+    public String size;
+
+    @Param({"2"})
+    public int order;
+
+    @Param({"100", "10000"})
+    public int length;
+
+    private Engines engines;
+    private MarkovEngine engine;
+    private MarkovModelHandle model;
+
+    @State(Scope.Thread)
+    public static class Seeds {
+        private long next;
+
+        long next() {
+            return next++;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        engines = Engines.start(backend);
+        engine = engines.engine();
+        try (Reader reader = Corpus.open(corpus, Corpus.parseSize(size))) {
+            model = engine.trainModel(order, reader);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.freeModel(model);
+        engines.close();
+    }
+
+    @Benchmark
+    public String generate(Seeds seeds) {
+        return engine.generateText(model, length, null, seeds.next());
+    }
+
+    /** Lote como el de {@code /generate/batch}: {@value #BATCH} textos por operación. */
+    @Benchmark
+    public List<String> generateBatch(Seeds seeds) {
+        List<GenerationItem> items = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            items.add(new GenerationItem(null, length, order, seeds.next()));
+        }
+        return engine.generateBatch(model, items);
+    }
+}
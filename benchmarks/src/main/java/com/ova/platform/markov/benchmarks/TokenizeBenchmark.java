@@ -0,0 +1,58 @@
+package com.ova.platform.markov.benchmarks;
+
+import com.ova.platform.markov.engine.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizador del motor Java en streaming. El motor nativo tokeniza dentro de
+ * {@code markov_train_chunk} y no lo expone por separado: su coste se mide en
+ * {@link TrainBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TokenizeBenchmark {
+
+    @Param({Corpus.SINTETICO})
+    public String corpus;
+
+    @Param({"10KB", "1MB", "100MB"})
+    public String size;
+
+    private long chars;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        chars = Corpus.parseSize(size);
+        // Hasta el límite se tokeniza desde memoria; por encima la generación del corpus entra en la medida
+        text = chars <= Corpus.MATERIALIZE_LIMIT ? Corpus.text(corpus, chars) : null;
+    }
+
+    @Benchmark
+    public long tokenize(Blackhole blackhole) throws IOException {
+        try (Reader reader = text != null ? new StringReader(text) : Corpus.open(corpus, chars)) {
+            return Tokenizer.forEachToken(reader, blackhole::consume);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.ova.platform.markov.benchmarks;
+
+import com.ova.platform.markov.service.MarkovEngine;
+import com.ova.platform.markov.service.MarkovModelHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entrenamiento completo (tokenización, recuento, compilación y compactación)
+ * en cada motor, desde un {@link Reader} como el de {@code /models/{id}/train}.
+ * Cada operación libera el modelo que entrena.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class TrainBenchmark {
+
+    @Param({Engines.NATIVE, Engines.SIMULATION, Engines.JAVA})
+    public String backend;
+
+    @Param({Corpus.SINTETICO})
+    public String corpus;
+
+    @Param({"10KB", "1MB", "100MB"})
+    public String size;
+
+    @Param({"2"})
+    public int order;
+
+    private Engines engines;
+    private MarkovEngine engine;
+    private long chars;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        engines = Engines.start(backend);
+        engine = engines.engine();
+        chars = Corpus.parseSize(size);
+        text = chars <= Corpus.MATERIALIZE_LIMIT ? Corpus.text(corpus, chars) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engines.close();
+    }
+
+    @Benchmark
+    public int train() throws IOException {
+        try (Reader reader = text != null ? new StringReader(text) : Corpus.open(corpus, chars)) {
+            MarkovModelHandle model = engine.trainModel(order, reader);
+            try {
+                return model.getEstadosCount();
+            } finally {
+                engine.freeModel(model);
+            }
+        }
+    }
+}
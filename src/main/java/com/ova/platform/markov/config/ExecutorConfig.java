@@ -0,0 +1,65 @@
+package com.ova.platform.markov.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Hilos que generan las respuestas SSE de {@code /api/markov/generate/stream}.
+     * Acotado: con todos ocupados y la cola llena la petición se rechaza en vez
+     * de acumular generaciones.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService markovStreamExecutor(@Value("${markov.stream.threads:8}") int threads,
+                                                @Value("${markov.stream.queue-size:64}") int queueSize) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "markov-stream-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hilos entre los que se reparten las particiones de un lote grande de
+     * {@code /api/markov/generate/batch}. Las particiones que no caben esperan en
+     * cola: un lote nunca se rechaza a medias.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService markovBatchExecutor(@Value("${markov.batch.threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "markov-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Pool fork/join del entrenamiento: tokeniza y cuenta en paralelo los
+     * fragmentos del texto de entrenamiento (ver {@code ParallelTrainer}).
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ForkJoinPool markovTrainingPool(@Value("${markov.training.threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(size, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("markov-train-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+}
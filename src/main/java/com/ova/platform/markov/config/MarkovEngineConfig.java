@@ -0,0 +1,42 @@
+package com.ova.platform.markov.config;
+
+import com.ova.platform.markov.service.MarkovEngine;
+import com.ova.platform.markov.service.MarkovJavaService;
+import com.ova.platform.markov.service.MarkovNativeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.Locale;
+
+@Configuration
+public class MarkovEngineConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarkovEngineConfig.class);
+
+    /**
+     * Motor usado por los servicios según {@code markov.engine}:
+     * {@code native} (JNA, con modo simulación si falta la librería),
+     * {@code java} (motor en la JVM) o {@code auto} (nativo si la librería
+     * se cargó, Java en caso contrario).
+     */
+    @Bean
+    @Primary
+    public MarkovEngine markovEngine(@Value("${markov.engine:auto}") String engine,
+                                     MarkovNativeService nativeService,
+                                     MarkovJavaService javaService) {
+        MarkovEngine selected = switch (engine.trim().toLowerCase(Locale.ROOT)) {
+            case "native" -> nativeService;
+            case "java" -> javaService;
+            case "auto" -> nativeService.isNativeLibraryLoaded() ? nativeService : javaService;
+            default -> throw new IllegalArgumentException(
+                    "Motor Markov desconocido: " + engine + " (valores válidos: native, java, auto)");
+        };
+
+        logger.info("Motor Markov seleccionado: {} (markov.engine={})", selected.getNombre(), engine);
+        return selected;
+    }
+}
@@ -0,0 +1,37 @@
+package com.ova.platform.markov.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Marca el instante en que una petición de {@code /api/markov} llega al
+ * controlador, antes de leer el cuerpo. El interceptor corre antes de la
+ * resolución de argumentos, así que {@link #nanosDesdeInicio} medido al entrar
+ * al método del controlador es el tiempo de lectura del JSON, Jackson y la
+ * validación (la etapa {@code deserializacion} de los tiempos por etapa).
+ */
+@Configuration
+public class RequestTimingConfig implements WebMvcConfigurer {
+
+    private static final String INICIO = RequestTimingConfig.class.getName() + ".inicio";
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                request.setAttribute(INICIO, System.nanoTime());
+                return true;
+            }
+        }).addPathPatterns("/api/markov/**");
+    }
+
+    /** Nanosegundos desde que el interceptor vio la petición, o 0 si no pasó por él. */
+    public static long nanosDesdeInicio(HttpServletRequest request) {
+        return request.getAttribute(INICIO) instanceof Long inicio ? System.nanoTime() - inicio : 0;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ova.platform.markov.config;
+
+import com.ova.platform.markov.service.TimingTraces;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Últimas trazas de tiempos por etapa ({@code /actuator/markovtimings}): las
+ * peticiones con {@code debugTimings} y la muestra de
+ * {@code markov.timings.sample-rate}, de la más reciente a la más antigua.
+ */
+@Component
+@Endpoint(id = "markovtimings")
+public class TimingTracesEndpoint {
+
+    @Autowired
+    private TimingTraces timingTraces;
+
+    @ReadOperation
+    public Map<String, Object> trazas() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("sampleRate", timingTraces.getSampleRate());
+        body.put("capacidad", timingTraces.getCapacidad());
+        body.put("trazas", timingTraces.recientes());
+        return body;
+    }
+}
@@ -0,0 +1,29 @@
+package com.ova.platform.markov.config;
+
+import com.ova.platform.markov.service.ModelWarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Estado del warm-up de modelos ({@code /actuator/health/warmup}). Forma parte
+ * del grupo {@code readiness}: la instancia no recibe tráfico hasta que el hot
+ * set está cargado.
+ */
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    private ModelWarmupService warmupService;
+
+    @Override
+    public Health health() {
+        Health.Builder builder = warmupService.isCompleted() ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("modelos", warmupService.getTotal())
+                .withDetail("cargados", warmupService.getLoaded())
+                .withDetail("fallidos", warmupService.getFailed())
+                .build();
+    }
+}
@@ -1,24 +1,44 @@
 package com.ova.platform.markov.controller;
 
+import com.ova.platform.markov.config.RequestTimingConfig;
 import com.ova.platform.markov.model.dto.ApiResponse;
+import com.ova.platform.markov.model.request.AppendTrainingRequest;
+import com.ova.platform.markov.model.request.BatchGenerateRequest;
 import com.ova.platform.markov.model.request.CreateModelRequest;
 import com.ova.platform.markov.model.request.MarkovGenerateRequest;
+import com.ova.platform.markov.model.response.BatchGenerateResponse;
 import com.ova.platform.markov.model.response.MarkovGenerateResponse;
 import com.ova.platform.markov.model.response.ModelResponse;
 import com.ova.platform.markov.model.request.TrainModelRequest;
 import com.ova.platform.markov.model.response.TrainModelResponse;
 import com.ova.platform.markov.service.MarkovService;
 import com.ova.platform.markov.service.ModelService;
+import com.ova.platform.markov.service.StageTimings;
+import com.ova.platform.markov.service.TimingTraces;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api/markov")
@@ -33,18 +53,28 @@ public class MarkovController {
     @Autowired
     private ModelService modelService;
 
+    @Autowired
+    private ExecutorService markovStreamExecutor;
+
+    @Autowired
+    private TimingTraces timingTraces;
+
+    @Value("${markov.stream.timeout-ms:60000}")
+    private long streamTimeoutMs;
+
     // ✅ ENDPOINT NUEVO - HU-301: ENTRENAR MODELO
     @PostMapping("/train")
     @Operation(summary = "Entrenar modelo Markov",
             description = "Entrena un modelo de Cadenas de Markov con texto personalizado. " +
                     "Permite especificar el orden del modelo y recibe estadísticas del entrenamiento.")
     public ResponseEntity<ApiResponse<TrainModelResponse>> entrenarModelo(
-            @Valid @RequestBody TrainModelRequest request) {
+            @Valid @RequestBody TrainModelRequest request, HttpServletRequest httpRequest) {
 
+        StageTimings tiempos = iniciarTiempos(request.isDebugTimings(), httpRequest);
         logger.info("Solicitud recibida para entrenar modelo - Orden: {}, Texto longitud: {}",
                 request.getOrden(), request.getTextoEntrenamiento().length());
 
-        TrainModelResponse result = markovService.entrenarModelo(request);
+        TrainModelResponse result = markovService.entrenarModelo(request, tiempos);
 
         ApiResponse<TrainModelResponse> response;
         if (result.isExito()) {
@@ -59,17 +89,76 @@ public class MarkovController {
         return ResponseEntity.ok(response);
     }
 
+    @PostMapping(value = "/train/stream", consumes = MediaType.TEXT_PLAIN_VALUE)
+    @Operation(summary = "Entrenar modelo Markov por streaming",
+            description = "Entrena con el cuerpo text/plain (admite transferencia chunked) tokenizándolo a medida " +
+                    "que llega, sin cargar el corpus completo en memoria. Codificación por defecto: UTF-8.")
+    public ResponseEntity<ApiResponse<TrainModelResponse>> entrenarModeloStream(
+            @RequestParam(defaultValue = "2") int orden,
+            HttpServletRequest httpRequest) throws IOException {
+
+        if (orden < 1 || orden > 5) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("El orden debe estar entre 1 y 5"));
+        }
+
+        Charset charset = httpRequest.getCharacterEncoding() != null
+                ? Charset.forName(httpRequest.getCharacterEncoding())
+                : StandardCharsets.UTF_8;
+        logger.info("Solicitud recibida para entrenar modelo por streaming - Orden: {}, Content-Length: {}",
+                orden, httpRequest.getContentLengthLong());
+
+        try (Reader texto = new InputStreamReader(httpRequest.getInputStream(), charset)) {
+            return respuestaEntrenamiento(markovService.entrenarModeloStream(orden, texto));
+        }
+    }
+
+    @PostMapping(value = "/train/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Entrenar modelo Markov desde un archivo",
+            description = "Entrena con un archivo de texto UTF-8 subido como multipart (campo 'archivo'), " +
+                    "leyéndolo por bloques.")
+    public ResponseEntity<ApiResponse<TrainModelResponse>> entrenarModeloArchivo(
+            @RequestParam("archivo") MultipartFile archivo,
+            @RequestParam(defaultValue = "2") int orden) throws IOException {
+
+        if (orden < 1 || orden > 5) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("El orden debe estar entre 1 y 5"));
+        }
+
+        logger.info("Solicitud recibida para entrenar modelo desde archivo - Orden: {}, Archivo: {} ({} bytes)",
+                orden, archivo.getOriginalFilename(), archivo.getSize());
+
+        try (InputStream input = archivo.getInputStream();
+             Reader texto = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+            return respuestaEntrenamiento(markovService.entrenarModeloStream(orden, texto));
+        }
+    }
+
+    private ResponseEntity<ApiResponse<TrainModelResponse>> respuestaEntrenamiento(TrainModelResponse result) {
+        ApiResponse<TrainModelResponse> response;
+        if (result.isExito()) {
+            response = ApiResponse.success(result, result.getMensaje());
+            logger.info("Entrenamiento exitoso - Texto: {} caracteres, Vocabulario: {} palabras, Estados: {}",
+                    result.getLongitudTexto(), result.getVocabularioSize(), result.getEstadosCount());
+        } else {
+            response = ApiResponse.error(result.getMensaje());
+            logger.warn("Entrenamiento fallido - Error: {}", result.getMensaje());
+        }
+        return ResponseEntity.ok(response);
+    }
+
     // ✅ ENDPOINT EXISTENTE - HU-302
     @PostMapping("/generate")
     @Operation(summary = "Generar texto automático",
-            description = "Genera texto usando el modelo de Cadenas de Markov.")
+            description = "Genera texto usando el modelo de Cadenas de Markov. El orden puede ser cualquiera " +
+                    "entre 1 y el orden con que se entrenó el modelo.")
     public ResponseEntity<ApiResponse<MarkovGenerateResponse>> generarTexto(
-            @Valid @RequestBody MarkovGenerateRequest request) {
+            @Valid @RequestBody MarkovGenerateRequest request, HttpServletRequest httpRequest) {
 
+        StageTimings tiempos = iniciarTiempos(request.isDebugTimings(), httpRequest);
         logger.info("Solicitud recibida para generar texto - Inicio: '{}', Longitud: {}",
                 request.getTextoInicio(), request.getLongitud());
 
-        MarkovGenerateResponse result = markovService.generarTexto(request);
+        MarkovGenerateResponse result = markovService.generarTexto(request, tiempos);
 
         ApiResponse<MarkovGenerateResponse> response;
         if (result.isExito()) {
@@ -84,6 +173,103 @@ public class MarkovController {
         return ResponseEntity.ok(response);
     }
 
+    // Tiempos por etapa si la petición trae debugTimings o cae en la muestra; la primera etapa
+    // es la lectura del cuerpo, Jackson y la validación (ver RequestTimingConfig)
+    private StageTimings iniciarTiempos(boolean debugTimings, HttpServletRequest httpRequest) {
+        StageTimings tiempos = timingTraces.iniciar(debugTimings);
+        if (tiempos.isEnabled()) {
+            tiempos.add("deserializacion", RequestTimingConfig.nanosDesdeInicio(httpRequest));
+        }
+        return tiempos;
+    }
+
+    @PostMapping("/generate/batch")
+    @Operation(summary = "Generar un lote de textos",
+            description = "Genera muchos textos cortos con el mismo modelo en una sola petición. Cada elemento " +
+                    "admite texto de inicio, longitud, orden y semilla; la respuesta incluye estadísticas de rendimiento.")
+    public ResponseEntity<ApiResponse<BatchGenerateResponse>> generarLote(
+            @Valid @RequestBody BatchGenerateRequest request) {
+
+        BatchGenerateResponse result = markovService.generarLote(request);
+
+        ApiResponse<BatchGenerateResponse> response = result.isExito()
+                ? ApiResponse.success(result, result.getMensaje())
+                : ApiResponse.error(result.getMensaje());
+        if (!result.isExito()) {
+            logger.warn("Generación por lotes fallida - Error: {}", result.getMensaje());
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    // Generación en streaming (Server-Sent Events): un evento "word" por palabra en cuanto
+    // se muestrea y un evento final "done" con el resumen (o "error").
+    @PostMapping(value = "/generate/stream", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Generar texto en streaming (SSE)",
+            description = "Emite cada palabra como evento 'word' a medida que se genera y un evento 'done' " +
+                    "con el resumen. Cerrar la conexión cancela la generación.")
+    public SseEmitter generarTextoStream(@Valid @RequestBody MarkovGenerateRequest request) {
+        return iniciarStream(request);
+    }
+
+    // Variante GET para clientes EventSource del navegador (sólo admiten GET)
+    @GetMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Generar texto en streaming (SSE, parámetros en la URL)")
+    public SseEmitter generarTextoStreamGet(@Valid @ModelAttribute MarkovGenerateRequest request) {
+        return iniciarStream(request);
+    }
+
+    private SseEmitter iniciarStream(MarkovGenerateRequest request) {
+        logger.info("Solicitud recibida para generar texto en streaming - Inicio: '{}', Longitud: {}",
+                request.getTextoInicio(), request.getLongitud());
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        AtomicBoolean cancelado = new AtomicBoolean();
+        emitter.onCompletion(() -> cancelado.set(true));
+        emitter.onTimeout(() -> cancelado.set(true));
+        emitter.onError(error -> cancelado.set(true));
+
+        try {
+            markovStreamExecutor.execute(() -> {
+                MarkovGenerateResponse result = markovService.generarTextoStream(request, palabra -> {
+                    if (cancelado.get()) return false;
+                    try {
+                        emitter.send(SseEmitter.event().name("word").data(palabra));
+                        return true;
+                    } catch (IOException | IllegalStateException e) {
+                        // Cliente desconectado: se detiene la generación
+                        cancelado.set(true);
+                        return false;
+                    }
+                });
+                if (cancelado.get()) {
+                    logger.info("Generación en streaming cancelada por el cliente tras {} palabras",
+                            result.getLongitudGenerada());
+                    return;
+                }
+                try {
+                    emitter.send(SseEmitter.event()
+                            .name(result.isExito() ? "done" : "error")
+                            .data(result.isExito() ? ApiResponse.success(result, result.getMensaje())
+                                    : ApiResponse.error(result.getMensaje()), MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Generación en streaming rechazada: demasiadas generaciones en curso");
+            try {
+                emitter.send(SseEmitter.event().name("error")
+                        .data(ApiResponse.error("Servicio ocupado, reintenta más tarde"), MediaType.APPLICATION_JSON));
+                emitter.complete();
+            } catch (IOException ioException) {
+                emitter.completeWithError(ioException);
+            }
+        }
+        return emitter;
+    }
+
     // ✅ NUEVOS ENDPOINTS CRUD
 
     @GetMapping("/models")
@@ -145,6 +331,24 @@ public class MarkovController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @PostMapping("/models/{id}/train")
+    @Operation(summary = "Entrenamiento incremental de un modelo",
+            description = "Suma el texto nuevo a las frecuencias del modelo existente sin re-entrenar el corpus completo")
+    public ResponseEntity<ApiResponse<ModelResponse>> appendTraining(
+            @PathVariable Long id,
+            @Valid @RequestBody AppendTrainingRequest request) {
+        logger.info("Solicitud recibida para ampliar el modelo {} - Texto longitud: {}",
+                id, request.getTextoEntrenamiento().length());
+        return modelService.appendTraining(id, request.getTextoEntrenamiento())
+                .map(updatedModel -> {
+                    ApiResponse<ModelResponse> response = ApiResponse.success(
+                            updatedModel, "Modelo entrenado incrementalmente"
+                    );
+                    return ResponseEntity.ok(response);
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @DeleteMapping("/models/{id}")
     @Operation(summary = "Eliminar modelo",
             description = "Elimina un modelo Markov por su ID")
@@ -168,6 +372,9 @@ public class MarkovController {
         boolean nativeActive = markovService.isNativeIntegrationActive();
         boolean modeloEntrenado = markovService.isModeloEntrenado();
         String infoModelo = markovService.getInfoModeloEntrenado();
+        String motorActivo = markovService.getMotorActivo();
+        int residentes = markovService.getModelosResidentes();
+        long fueraDelHeap = markovService.getBytesFueraDelHeap();
 
         // ✅ CORREGIDO: Usar variables locales en lugar de referencias a this
         final boolean modeloEntrenadoFinal = modeloEntrenado;
@@ -178,14 +385,22 @@ public class MarkovController {
             public final String service = "markov-service";
             public final boolean nativeIntegration = nativeActive;
             public final String nativeStatus = nativeActive ? "ACTIVE" : "SIMULATION";
+            public final String motor = motorActivo;
+            public final int modelosResidentes = residentes;
+            public final long bytesFueraDelHeap = fueraDelHeap;
             public final boolean modeloEntrenado = modeloEntrenadoFinal;  // ✅ Usar variable local
             public final String infoModelo = infoModeloFinal;             // ✅ Usar variable local
             public final String timestamp = java.time.LocalDateTime.now().toString();
         };
 
-        String mensaje = nativeActive ?
-                "Servicio Markov operativo con librería nativa" :
-                "Servicio Markov en modo simulación";
+        String mensaje;
+        if ("java".equals(motorActivo)) {
+            mensaje = "Servicio Markov operativo con motor Java";
+        } else {
+            mensaje = nativeActive ?
+                    "Servicio Markov operativo con librería nativa" :
+                    "Servicio Markov en modo simulación";
+        }
 
         if (modeloEntrenado) {
             mensaje += " | " + infoModelo;
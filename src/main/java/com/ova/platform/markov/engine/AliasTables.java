@@ -0,0 +1,54 @@
+package com.ova.platform.markov.engine;
+
+/**
+ * Construcción de tablas alias (método de Walker/Vose) con aritmética entera.
+ *
+ * <p>Para un estado con {@code n} sucesores y frecuencia total {@code T}, cada
+ * sucesor {@code j} es una urna con umbral {@code threshold[j]} en {@code [0, T]}
+ * y un alias. Muestrear es elegir una urna uniforme y un {@code r} en
+ * {@code [0, T)}: si {@code r < threshold[j]} sale {@code j}, si no su alias.
+ * La probabilidad resultante es exactamente {@code count[j] / T}.</p>
+ */
+final class AliasTables {
+
+    private AliasTables() {
+    }
+
+    /**
+     * Rellena {@code thresholds[from..to)} y {@code aliases[from..to)} (índices
+     * absolutos dentro del mismo rango) a partir de {@code counts[from..to)}.
+     */
+    static void build(int[] counts, int from, int to, int[] thresholds, int[] aliases) {
+        int n = to - from;
+        if (n == 0) return;
+
+        long total = 0;
+        for (int j = from; j < to; j++) total += counts[j];
+
+        long[] scaled = new long[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int j = 0; j < n; j++) {
+            scaled[j] = (long) counts[from + j] * n;
+            aliases[from + j] = from + j;
+            if (scaled[j] < total) small[smallCount++] = j;
+            else large[largeCount++] = j;
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[largeCount - 1];
+            thresholds[from + s] = (int) scaled[s];
+            aliases[from + s] = from + l;
+            scaled[l] -= total - scaled[s];
+            if (scaled[l] < total) {
+                largeCount--;
+                small[smallCount++] = l;
+            }
+        }
+        while (largeCount > 0) thresholds[from + large[--largeCount]] = (int) total;
+        while (smallCount > 0) thresholds[from + small[--smallCount]] = (int) total;
+    }
+}
@@ -0,0 +1,224 @@
+package com.ova.platform.markov.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Acumula las frecuencias n-grama -> palabra siguiente durante el entrenamiento.
+ *
+ * <p>Cada transición (estado, palabra) tiene un índice denso obtenido de un
+ * {@link LongIntHashMap}; sus datos viven en arrays paralelos de enteros. Al
+ * terminar se llama a {@link #compile()} para obtener la cadena inmutable que
+ * usa la generación.</p>
+ */
+public final class ChainBuilder {
+
+    private final int order;
+    private final Vocabulary vocabulary;
+    private final IntNgramTable states;
+    private final LongIntHashMap transitions;
+
+    private int[] transitionState;
+    private int[] transitionWord;
+    private int[] transitionCount;
+    private int transitionSize;
+
+    private final int[] window;
+    private int windowFill;
+    private long tokenCount;
+
+    public ChainBuilder(int order) {
+        this(order, new Vocabulary(), new IntNgramTable(order, 1024), 2048);
+    }
+
+    private ChainBuilder(int order, Vocabulary vocabulary, IntNgramTable states, int expectedTransitions) {
+        int capacity = Math.max(16, expectedTransitions);
+        this.order = order;
+        this.vocabulary = vocabulary;
+        this.states = states;
+        this.transitions = new LongIntHashMap(capacity);
+        this.transitionState = new int[capacity];
+        this.transitionWord = new int[capacity];
+        this.transitionCount = new int[capacity];
+        this.window = new int[order];
+    }
+
+    /**
+     * Builder que parte de las frecuencias de una cadena ya compilada, para
+     * seguir entrenándola con texto nuevo sin reprocesar el corpus original.
+     *
+     * @throws IllegalArgumentException si la cadena se compactó con pérdida
+     *         ({@link MarkovChain#hasExactCounts()}): hay que reentrenar desde el texto
+     */
+    public static ChainBuilder from(MarkovChain chain) {
+        if (!chain.hasExactCounts()) {
+            throw new IllegalArgumentException("La cadena se compactó con pérdida de recuentos: hay que reentrenar");
+        }
+        ChainBuilder builder = new ChainBuilder(chain.order(), chain.vocabulary().copy(), chain.states().toTable(),
+                chain.transitionCount());
+        IntBuffer offsets = chain.offsets();
+        IntBuffer words = chain.successorWords();
+        IntBuffer counts = chain.successorCounts();
+        for (int state = 0; state < chain.stateCount(); state++) {
+            for (int j = offsets.get(state); j < offsets.get(state + 1); j++) {
+                builder.addTransition(state, words.get(j), counts.get(j));
+            }
+        }
+        builder.tokenCount = chain.tokenCount();
+        return builder;
+    }
+
+    /**
+     * Builder de un fragmento para {@link ParallelTrainer}: recibe ids ya
+     * globales, con la ventana inicial en {@code context} (los últimos tokens
+     * del fragmento anterior), y cuenta en tablas propias que luego se funden
+     * con {@link #merge}. Comparte el vocabulario sólo para lectura.
+     */
+    ChainBuilder shard(int[] context, int contextLength, int expectedTokens) {
+        ChainBuilder shard = new ChainBuilder(order, vocabulary,
+                new IntNgramTable(order, Math.max(1024, expectedTokens / 4)), Math.max(2048, expectedTokens / 2));
+        System.arraycopy(context, 0, shard.window, 0, contextLength);
+        shard.windowFill = contextLength;
+        return shard;
+    }
+
+    /**
+     * Suma los recuentos de un fragmento. Los estados y transiciones nuevos se
+     * añaden en el orden en que aparecieron en el fragmento, así que fundir los
+     * fragmentos de un texto en orden da exactamente los mismos ids que contarlo
+     * entero en un solo hilo.
+     */
+    void merge(ChainBuilder shard) {
+        int[] keys = shard.states.keys();
+        int[] stateIds = new int[shard.states.size()];
+        for (int s = 0; s < stateIds.length; s++) {
+            stateIds[s] = states.findOrAdd(keys, s * order);
+        }
+        for (int t = 0; t < shard.transitionSize; t++) {
+            addTransition(stateIds[shard.transitionState[t]], shard.transitionWord[t], shard.transitionCount[t]);
+        }
+        tokenCount += shard.tokenCount;
+    }
+
+    /** Ventana actual (últimos tokens del documento en curso), para encadenar fragmentos. */
+    int copyWindow(int[] dest) {
+        System.arraycopy(window, 0, dest, 0, windowFill);
+        return windowFill;
+    }
+
+    void setWindow(int[] tokens, int length) {
+        System.arraycopy(tokens, 0, window, 0, length);
+        windowFill = length;
+    }
+
+    Vocabulary vocabulary() {
+        return vocabulary;
+    }
+
+    /** Tokeniza y cuenta un documento completo. */
+    public void addText(CharSequence text) {
+        Tokenizer.forEachToken(text, this::addToken);
+        endDocument();
+    }
+
+    /**
+     * Tokeniza y cuenta un documento leído por bloques; la memoria usada depende
+     * del vocabulario y de los estados, no del tamaño del texto.
+     *
+     * @return caracteres leídos
+     */
+    public long addText(Reader text) throws IOException {
+        long characters = Tokenizer.forEachToken(text, this::addToken);
+        endDocument();
+        return characters;
+    }
+
+    public void addToken(String word) {
+        addToken(vocabulary.intern(word));
+    }
+
+    public void addToken(int wordId) {
+        tokenCount++;
+        if (windowFill < order) {
+            window[windowFill++] = wordId;
+            return;
+        }
+
+        int state = states.findOrAdd(window, 0);
+        addTransition(state, wordId, 1);
+
+        System.arraycopy(window, 1, window, 0, order - 1);
+        window[order - 1] = wordId;
+    }
+
+    /** Cierra el documento actual: el siguiente token no continúa la ventana anterior. */
+    public void endDocument() {
+        windowFill = 0;
+    }
+
+    private void addTransition(int state, int wordId, int count) {
+        long key = ((long) state << 32) | wordId;
+        int index = transitions.get(key);
+        if (index < 0) {
+            index = transitionSize++;
+            if (index == transitionCount.length) {
+                int capacity = index * 2;
+                transitionState = Arrays.copyOf(transitionState, capacity);
+                transitionWord = Arrays.copyOf(transitionWord, capacity);
+                transitionCount = Arrays.copyOf(transitionCount, capacity);
+            }
+            transitionState[index] = state;
+            transitionWord[index] = wordId;
+            transitions.put(key, index);
+        }
+        transitionCount[index] += count;
+    }
+
+    /**
+     * Agrupa las transiciones por estado (counting sort) y produce la cadena
+     * compilada. El builder puede seguir usándose después.
+     */
+    public MarkovChain compile() {
+        int stateCount = states.size();
+        int[] offsets = new int[stateCount + 1];
+        for (int t = 0; t < transitionSize; t++) {
+            offsets[transitionState[t] + 1]++;
+        }
+        for (int s = 0; s < stateCount; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+
+        int[] cursor = Arrays.copyOf(offsets, stateCount);
+        int[] words = new int[transitionSize];
+        int[] counts = new int[transitionSize];
+        int[] totals = new int[stateCount];
+        for (int t = 0; t < transitionSize; t++) {
+            int state = transitionState[t];
+            int position = cursor[state]++;
+            words[position] = transitionWord[t];
+            counts[position] = transitionCount[t];
+            totals[state] += transitionCount[t];
+        }
+
+        return new MarkovChain(order, vocabulary.copy(), StateIndex.of(states), offsets, words, counts, totals,
+                tokenCount, true);
+    }
+
+    public int order() {
+        return order;
+    }
+
+    public int vocabularySize() {
+        return vocabulary.size();
+    }
+
+    public int stateCount() {
+        return states.size();
+    }
+
+    public long tokenCount() {
+        return tokenCount;
+    }
+}
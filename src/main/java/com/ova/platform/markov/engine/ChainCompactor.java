@@ -0,0 +1,142 @@
+package com.ova.platform.markov.engine;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Compactación de una {@link MarkovChain} recién compilada para servirla con
+ * menos memoria: descarta los sucesores raros y reescala los recuentos.
+ *
+ * <p>Un sucesor se conserva si apareció al menos {@code minCount} veces o si es
+ * el más frecuente de su estado, así que ningún estado se queda sin salida. Con
+ * un presupuesto ({@code maxBytes > 0}) el recuento mínimo sube lo necesario
+ * para que la cadena quepa: entran los sucesores secundarios más frecuentes en
+ * lo que dejan libre estados, sufijos y vocabulario.</p>
+ *
+ * <p>Con {@code countBits} 8 o 16 los recuentos de cada estado se reescalan
+ * para que el mayor quepa en ese número de bits (ninguno baja de 1); las
+ * proporciones se conservan salvo por el redondeo. Las tablas CSR ya son
+ * contiguas, así que en este motor el ahorro sale de la poda; el motor nativo
+ * además guarda los recuentos reescalados en 1 o 2 bytes.</p>
+ */
+public final class ChainCompactor {
+
+    private final int minCount;
+    private final int countBits;
+    private final long maxBytes;
+
+    public ChainCompactor(int minCount, int countBits, long maxBytes) {
+        this.minCount = Math.max(1, minCount);
+        this.countBits = checkCountBits(countBits);
+        this.maxBytes = maxBytes;
+    }
+
+    /** Valida los bits por recuento: 0 (exactos), 8 o 16. */
+    public static int checkCountBits(int countBits) {
+        if (countBits != 0 && countBits != 8 && countBits != 16) {
+            throw new IllegalArgumentException("Bits por recuento no soportados: " + countBits + " (0, 8 o 16)");
+        }
+        return countBits;
+    }
+
+    /** Si {@link #compact} puede cambiar la cadena; si no, la devuelve tal cual. */
+    public boolean isLossy() {
+        return minCount > 1 || countBits > 0 || maxBytes > 0;
+    }
+
+    /**
+     * Cadena compactada, o la misma si no hay nada que descartar ni reescalar.
+     * La compactada queda sin {@link MarkovChain#hasExactCounts() recuentos exactos}.
+     */
+    public MarkovChain compact(MarkovChain chain) {
+        if (!isLossy()) return chain;
+
+        IntBuffer offsets = chain.offsets();
+        IntBuffer words = chain.successorWords();
+        IntBuffer counts = chain.successorCounts();
+        int stateCount = chain.stateCount();
+        int[] top = topSuccessors(chain);
+        int threshold = maxBytes > 0 ? Math.max(minCount, budgetMinCount(chain, top)) : minCount;
+
+        int kept = 0;
+        for (int s = 0; s < stateCount; s++) {
+            for (int t = offsets.get(s); t < offsets.get(s + 1); t++) {
+                if (t == top[s] || counts.get(t) >= threshold) kept++;
+            }
+        }
+
+        int limit = countBits > 0 ? (1 << countBits) - 1 : Integer.MAX_VALUE;
+        if (kept == chain.transitionCount() && !exceeds(chain, top, limit)) return chain;
+
+        int[] newOffsets = new int[stateCount + 1];
+        int[] newWords = new int[kept];
+        int[] newCounts = new int[kept];
+        int[] newTotals = new int[stateCount];
+        int k = 0;
+        for (int s = 0; s < stateCount; s++) {
+            newOffsets[s] = k;
+            int max = top[s] >= 0 ? counts.get(top[s]) : 0;
+            for (int t = offsets.get(s); t < offsets.get(s + 1); t++) {
+                int count = counts.get(t);
+                if (t != top[s] && count < threshold) continue;
+                newWords[k] = words.get(t);
+                newCounts[k] = max > limit ? (int) Math.max(1, ((long) count * limit + max / 2) / max) : count;
+                newTotals[s] += newCounts[k];
+                k++;
+            }
+        }
+        newOffsets[stateCount] = k;
+        return new MarkovChain(chain.order(), chain.vocabulary(), chain.states(), newOffsets, newWords,
+                newCounts, newTotals, chain.tokenCount(), false);
+    }
+
+    // Si algún estado tiene un recuento mayor que `limit`, es decir, si reescalar cambia algo
+    private static boolean exceeds(MarkovChain chain, int[] top, int limit) {
+        IntBuffer counts = chain.successorCounts();
+        for (int t : top) {
+            if (t >= 0 && counts.get(t) > limit) return true;
+        }
+        return false;
+    }
+
+    // Transición más frecuente de cada estado (la primera si hay empate; -1 sin sucesores)
+    private static int[] topSuccessors(MarkovChain chain) {
+        IntBuffer offsets = chain.offsets();
+        IntBuffer counts = chain.successorCounts();
+        int[] top = new int[chain.stateCount()];
+        for (int s = 0; s < top.length; s++) {
+            top[s] = -1;
+            for (int t = offsets.get(s); t < offsets.get(s + 1); t++) {
+                if (top[s] < 0 || counts.get(t) > counts.get(top[s])) top[s] = t;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Recuento mínimo con el que la cadena cabe en {@code maxBytes}: la parte fija
+     * se descuenta del presupuesto y el resto se reparte entre los sucesores
+     * secundarios más frecuentes. {@link Integer#MAX_VALUE} si sólo caben los principales.
+     */
+    private int budgetMinCount(MarkovChain chain, int[] top) {
+        long perTransition = (long) Integer.BYTES * MarkovChain.TRANSITION_INTS;
+        long fixed = chain.memoryBytes() - perTransition * chain.transitionCount();
+        long principal = Arrays.stream(top).filter(t -> t >= 0).count();
+        long allowed = (maxBytes - fixed) / perTransition - principal;
+        if (allowed <= 0) return Integer.MAX_VALUE;
+
+        IntBuffer offsets = chain.offsets();
+        IntBuffer counts = chain.successorCounts();
+        int[] candidates = new int[chain.transitionCount()];
+        int n = 0;
+        for (int s = 0; s < top.length; s++) {
+            for (int t = offsets.get(s); t < offsets.get(s + 1); t++) {
+                if (t != top[s] && counts.get(t) >= minCount) candidates[n++] = counts.get(t);
+            }
+        }
+        if (n <= allowed) return minCount;
+        Arrays.sort(candidates, 0, n);
+        // Con recuento > candidates[n - allowed - 1] quedan como mucho `allowed`
+        return candidates[(int) (n - allowed - 1)] + 1;
+    }
+}
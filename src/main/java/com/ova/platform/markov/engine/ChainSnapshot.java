@@ -0,0 +1,386 @@
+package com.ova.platform.markov.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Formato binario versionado de una {@link MarkovChain} compilada.
+ *
+ * <p>Todo el fichero es little-endian y cada sección empieza alineada a 4 bytes
+ * (a 8 la de enteros de 64 bits):</p>
+ * <pre>
+ *  cabecera (52 bytes)  magic "MKVS", versión, orden, palabras, estados,
+ *                       transiciones, slots del índice, bytes del vocabulario,
+ *                       tokens, caracteres entrenados, flags
+ *  vocabulario          int[palabras + 1] offsets + bytes UTF-8 (relleno a 4)
+ *  estados              int[estados * orden] claves empaquetadas + int[slots] índice hash
+ *  sucesores            int[estados + 1] offsets, int[transiciones] palabras,
+ *                       int[transiciones] frecuencias, int[estados] totales
+ *  tablas alias         int[transiciones] umbrales, int[transiciones] alias
+ *  grafo                int[transiciones] estado destino
+ *  sufijos              int[estados] ids ordenados por clave invertida,
+ *                       long[estados + 1] totales acumulados en ese orden
+ *  checksum             int CRC32C de todo lo anterior
+ * </pre>
+ *
+ * <p>Se guardan también el índice hash, las tablas alias, el grafo y el índice
+ * de sufijos, de modo que leer el fichero es sólo E/S secuencial: no se
+ * tokeniza, no se reinsertan estados y no se reconstruye nada. Sólo se lee la
+ * versión actual: un fichero de otra versión se rechaza como uno corrupto y el
+ * modelo se reentrena desde sus textos guardados.</p>
+ */
+public final class ChainSnapshot {
+
+    static final int MAGIC = 0x53564B4D; // "MKVS" en little-endian
+    static final int VERSION = 5;
+    static final int HEADER_BYTES = 52;
+
+    // Flags de la cabecera: recuentos podados o reescalados por ChainCompactor
+    static final int FLAG_LOSSY_COUNTS = 1;
+
+    // Un único mapeo (o array) por fichero
+    static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final MarkovChain chain;
+    private final long trainedCharacters;
+    private final boolean mapped;
+
+    private ChainSnapshot(MarkovChain chain, long trainedCharacters, boolean mapped) {
+        this.chain = chain;
+        this.trainedCharacters = trainedCharacters;
+        this.mapped = mapped;
+    }
+
+    public MarkovChain chain() {
+        return chain;
+    }
+
+    public long trainedCharacters() {
+        return trainedCharacters;
+    }
+
+    /** Si las tablas de la cadena son vistas del fichero mapeado (y no copias en el heap). */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Escribe la cadena en {@code file}. Se escribe primero un temporal propio de
+     * esta escritura que luego se renombra, así que un lector nunca ve un snapshot
+     * a medias y dos escrituras simultáneas no se pisan (gana el último renombrado).
+     *
+     * @throws IOException también si el snapshot pasaría de {@link #MAX_BYTES}, que
+     *         no se podría volver a leer; el fichero anterior no se toca
+     */
+    public static void write(MarkovChain chain, long trainedCharacters, Path file) throws IOException {
+        Lexicon vocabulary = chain.vocabulary();
+        StateIndex states = chain.states();
+        int order = chain.order();
+        int stateCount = states.size();
+        int transitions = chain.transitionCount();
+
+        int[] wordOffsets = new int[vocabulary.size() + 1];
+        byte[][] words = new byte[vocabulary.size()][];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = vocabulary.word(i).getBytes(StandardCharsets.UTF_8);
+            wordOffsets[i + 1] = wordOffsets[i] + words[i].length;
+        }
+        int vocabularyBytes = wordOffsets[words.length];
+        long size = sizeOf(order, vocabulary.size(), stateCount, transitions, states.slots().limit(), vocabularyBytes);
+        if (size > MAX_BYTES) {
+            throw new IOException("El snapshot ocuparía " + size + " bytes (máximo " + MAX_BYTES + "): " + file);
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                SectionWriter out = new SectionWriter(channel);
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+                out.putInt(order);
+                out.putInt(vocabulary.size());
+                out.putInt(stateCount);
+                out.putInt(transitions);
+                out.putInt(states.slots().limit());
+                out.putInt(vocabularyBytes);
+                out.putLong(chain.tokenCount());
+                out.putLong(trainedCharacters);
+                out.putInt(chain.hasExactCounts() ? 0 : FLAG_LOSSY_COUNTS);
+
+                out.putInts(IntBuffer.wrap(wordOffsets), wordOffsets.length);
+                for (byte[] word : words) out.putBytes(word);
+                out.pad(4);
+
+                out.putInts(states.keys(), stateCount * order);
+                out.putInts(states.slots(), states.slots().limit());
+
+                out.putInts(chain.offsets(), stateCount + 1);
+                out.putInts(chain.successorWords(), transitions);
+                out.putInts(chain.successorCounts(), transitions);
+                out.putInts(chain.stateTotals(), stateCount);
+                out.putInts(chain.aliasThresholds(), transitions);
+                out.putInts(chain.aliases(), transitions);
+                out.putInts(chain.nextStates(), transitions);
+                out.putInts(chain.suffixes().sorted(), stateCount);
+                out.pad(8);
+                out.putLongs(chain.suffixes().cumulativeTotals(), stateCount + 1);
+                out.finish();
+                channel.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Lee un snapshot al heap verificando magic, versión, tamaño y checksum.
+     *
+     * @throws IOException si el fichero no se puede leer o está corrupto
+     */
+    public static ChainSnapshot read(Path file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * Abre un snapshot mapeado en memoria, de sólo lectura: las tablas de la
+     * cadena son vistas directas del fichero y no se copian al heap. Varios
+     * procesos que mapean el mismo fichero comparten sus páginas en la page cache.
+     * El vocabulario también se lee del mapeo ({@link OffHeapVocabulary}); sólo su
+     * índice hash se construye, en memoria directa.
+     *
+     * <p>El fichero no debe modificarse mientras esté mapeado. {@link #write}
+     * nunca lo hace: escribe un fichero nuevo y lo renombra, y los mapeos
+     * existentes siguen viendo el anterior hasta que se liberan.</p>
+     *
+     * @throws IOException si el fichero no se puede leer o está corrupto
+     */
+    public static ChainSnapshot map(Path file) throws IOException {
+        return open(file, true);
+    }
+
+    private static ChainSnapshot open(Path file, boolean mapped) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + 4 || size > MAX_BYTES) {
+                throw new IOException("Tamaño de snapshot no válido: " + size + " bytes (" + file + ")");
+            }
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            verify(in, file);
+            return parse(in, file, mapped);
+        }
+    }
+
+    private static void verify(ByteBuffer in, Path file) throws IOException {
+        if (in.getInt(0) != MAGIC) {
+            throw new IOException("No es un snapshot de modelo Markov: " + file);
+        }
+        if (in.getInt(4) != VERSION) {
+            throw new IOException("Versión de snapshot no soportada (" + in.getInt(4) + "): " + file);
+        }
+        int end = in.limit() - 4;
+        CRC32C crc = new CRC32C();
+        crc.update(in.duplicate().position(0).limit(end));
+        if ((int) crc.getValue() != in.getInt(end)) {
+            throw new IOException("Checksum del snapshot incorrecto: " + file);
+        }
+    }
+
+    private static ChainSnapshot parse(ByteBuffer in, Path file, boolean mapped) throws IOException {
+        in.position(8);
+        int order = in.getInt();
+        int vocabularySize = in.getInt();
+        int stateCount = in.getInt();
+        int transitions = in.getInt();
+        int slotCount = in.getInt();
+        int vocabularyBytes = in.getInt();
+        long tokenCount = in.getLong();
+        long trainedCharacters = in.getLong();
+        int flags = in.getInt();
+
+        if (order < 1 || vocabularySize < 0 || stateCount < 0 || transitions < 0
+                || sizeOf(order, vocabularySize, stateCount, transitions, slotCount, vocabularyBytes) != in.limit()) {
+            throw new IOException("Cabecera de snapshot inconsistente: " + file);
+        }
+
+        // Mapeado, la cadena se hace cargo del mapeo y del índice del vocabulario
+        OffHeap memory = null;
+        if (mapped) {
+            memory = new OffHeap();
+            memory.adopt(in);
+        }
+        IntBuffer wordOffsets = ints(in, vocabularySize + 1, mapped);
+        int base = in.position();
+        Lexicon vocabulary = mapped
+                ? OffHeapVocabulary.over(in.slice(base, vocabularyBytes), wordOffsets, memory)
+                : readVocabulary(in, wordOffsets, vocabularyBytes);
+        in.position(base + align(vocabularyBytes, 4));
+
+        StateIndex states = new StateIndex(order, stateCount,
+                ints(in, stateCount * order, mapped), ints(in, slotCount, mapped));
+        IntBuffer offsets = ints(in, stateCount + 1, mapped);
+        IntBuffer successorWords = ints(in, transitions, mapped);
+        IntBuffer successorCounts = ints(in, transitions, mapped);
+        IntBuffer stateTotals = ints(in, stateCount, mapped);
+        IntBuffer aliasThresholds = ints(in, transitions, mapped);
+        IntBuffer aliases = ints(in, transitions, mapped);
+        IntBuffer nextStates = ints(in, transitions, mapped);
+        IntBuffer sorted = ints(in, stateCount, mapped);
+        in.position(align(in.position(), 8));
+        SuffixIndex suffixes = new SuffixIndex(states, sorted, longs(in, stateCount + 1, mapped));
+
+        MarkovChain chain = new MarkovChain(order, vocabulary, states, offsets, successorWords, successorCounts,
+                stateTotals, aliasThresholds, aliases, nextStates, suffixes, tokenCount,
+                (flags & FLAG_LOSSY_COUNTS) == 0, memory);
+        return new ChainSnapshot(chain, trainedCharacters, mapped);
+    }
+
+    // Vocabulario en el heap: un String por palabra
+    private static Vocabulary readVocabulary(ByteBuffer in, IntBuffer wordOffsets, int vocabularyBytes) {
+        int size = wordOffsets.limit() - 1;
+        Vocabulary vocabulary = new Vocabulary(size);
+        byte[] bytes = new byte[vocabularyBytes];
+        in.get(in.position(), bytes);
+        for (int i = 0; i < size; i++) {
+            vocabulary.intern(new String(bytes, wordOffsets.get(i), wordOffsets.get(i + 1) - wordOffsets.get(i),
+                    StandardCharsets.UTF_8));
+        }
+        return vocabulary;
+    }
+
+    // Siguiente sección de enteros: vista directa del mapeo o copia en un array del heap
+    private static IntBuffer ints(ByteBuffer in, int length, boolean mapped) {
+        IntBuffer view = in.slice(in.position(), length * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        in.position(in.position() + length * 4);
+        if (mapped) return view;
+        int[] values = new int[length];
+        view.get(values);
+        return IntBuffer.wrap(values);
+    }
+
+    private static LongBuffer longs(ByteBuffer in, int length, boolean mapped) {
+        LongBuffer view = in.slice(in.position(), length * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        in.position(in.position() + length * 8);
+        if (mapped) return view;
+        long[] values = new long[length];
+        view.get(values);
+        return LongBuffer.wrap(values);
+    }
+
+    // Bytes del fichero completo, cabecera y checksum incluidos
+    private static long sizeOf(int order, int vocabularySize, int stateCount, int transitions, int slotCount,
+                               int vocabularyBytes) {
+        long sorted = HEADER_BYTES
+                + 4L * (vocabularySize + 1) + align(vocabularyBytes, 4)
+                + 4L * ((long) stateCount * order + slotCount)
+                + 4L * (stateCount + 1 + 2L * transitions + stateCount + 2L * transitions)
+                + 4L * transitions
+                + 4L * stateCount;
+        return align(sorted, 8) + 8L * (stateCount + 1) + 4;
+    }
+
+    private static int align(int bytes, int to) {
+        return (bytes + to - 1) & -to;
+    }
+
+    private static long align(long bytes, int to) {
+        return (bytes + to - 1) & -to;
+    }
+
+    /** Escritura por bloques de 64K calculando el CRC32C a la vez. */
+    private static final class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+        private long written;
+
+        SectionWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putInts(IntBuffer values, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                ensure(4);
+                int batch = Math.min(length - done, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values.duplicate().position(done).limit(done + batch));
+                buffer.position(buffer.position() + batch * 4);
+                done += batch;
+            }
+        }
+
+        void putLongs(LongBuffer values, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                ensure(8);
+                int batch = Math.min(length - done, buffer.remaining() / 8);
+                buffer.asLongBuffer().put(values.duplicate().position(done).limit(done + batch));
+                buffer.position(buffer.position() + batch * 8);
+                done += batch;
+            }
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                ensure(1);
+                int batch = Math.min(bytes.length - done, buffer.remaining());
+                buffer.put(bytes, done, batch);
+                done += batch;
+            }
+        }
+
+        // Rellena con ceros hasta el siguiente múltiplo de `to` (potencia de 2)
+        void pad(int to) throws IOException {
+            while (((written + buffer.position()) & (to - 1)) != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        void finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            written += buffer.remaining();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.ova.platform.markov.engine;
+
+import java.util.Arrays;
+
+/**
+ * Índice hash de direccionamiento abierto (sondeo lineal) que asigna un id de
+ * estado denso a cada n-grama de ids de palabra.
+ *
+ * <p>Las claves se guardan empaquetadas en un único {@code int[]} ({@code order}
+ * enteros por estado, en orden de id) y la tabla de slots sólo contiene ids de
+ * estado, así que no se crea ningún objeto por estado.</p>
+ */
+public final class IntNgramTable {
+
+    static final int EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final int order;
+    private int[] keys;
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    public IntNgramTable(int order, int expectedStates) {
+        if (order < 1) throw new IllegalArgumentException("El orden debe ser al menos 1");
+        this.order = order;
+        this.keys = new int[Math.max(16, expectedStates) * order];
+        int capacity = tableSizeFor((int) (Math.max(16, expectedStates) / LOAD_FACTOR));
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(slots, EMPTY);
+    }
+
+    private IntNgramTable(int order, int[] keys, int[] slots, int size) {
+        this.order = order;
+        this.keys = keys;
+        this.slots = slots;
+        this.mask = slots.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Reconstruye una tabla a partir de sus arrays ya serializados (claves
+     * empaquetadas y slots), sin volver a insertar los estados.
+     */
+    static IntNgramTable wrap(int order, int[] keys, int[] slots, int size) {
+        if (Integer.bitCount(slots.length) != 1 || size * order > keys.length) {
+            throw new IllegalArgumentException("Tabla de estados inconsistente");
+        }
+        return new IntNgramTable(order, keys, slots, size);
+    }
+
+    private IntNgramTable(IntNgramTable other) {
+        this.order = other.order;
+        this.keys = Arrays.copyOf(other.keys, other.size * order);
+        this.slots = other.slots.clone();
+        this.mask = other.mask;
+        this.size = other.size;
+    }
+
+    /** Id del estado cuyo n-grama es {@code key[offset..offset+order)}, o -1 si no existe. */
+    public int find(int[] key, int offset) {
+        int slot = hash(key, offset) & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == EMPTY) return -1;
+            if (matches(id, key, offset)) return id;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Id del estado para el n-grama, creándolo si todavía no existe. */
+    public int findOrAdd(int[] key, int offset) {
+        int slot = hash(key, offset) & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == EMPTY) break;
+            if (matches(id, key, offset)) return id;
+            slot = (slot + 1) & mask;
+        }
+
+        int id = size;
+        if ((id + 1) * order > keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        System.arraycopy(key, offset, keys, id * order, order);
+        size++;
+
+        if (size > slots.length * LOAD_FACTOR) {
+            rehash(slots.length * 2);
+        } else {
+            slots[slot] = id;
+        }
+        return id;
+    }
+
+    /** Copia en {@code dest} el n-grama del estado indicado. */
+    public void copyKey(int state, int[] dest, int destOffset) {
+        System.arraycopy(keys, state * order, dest, destOffset, order);
+    }
+
+    public int keyAt(int state, int position) {
+        return keys[state * order + position];
+    }
+
+    public int order() {
+        return order;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Arrays internos para StateIndex; no se modifican
+    int[] keys() {
+        return keys;
+    }
+
+    int[] slots() {
+        return slots;
+    }
+
+    public IntNgramTable copy() {
+        return new IntNgramTable(this);
+    }
+
+    private boolean matches(int id, int[] key, int offset) {
+        int base = id * order;
+        for (int i = 0; i < order; i++) {
+            if (keys[base + i] != key[offset + i]) return false;
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(slots, EMPTY);
+        for (int id = 0; id < size; id++) {
+            int slot = hash(keys, id * order) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private int hash(int[] key, int offset) {
+        return hash(key, offset, order);
+    }
+
+    // FNV-1a sobre los ids del n-grama con un mezclado final para los bits bajos.
+    // StateIndex usa la misma función sobre los slots congelados.
+    static int hash(int[] key, int offset, int order) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < order; i++) {
+            h = (h ^ key[offset + i]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    static int tableSizeFor(int capacity) {
+        int n = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        return n < 0 ? 1 << 30 : n;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ova.platform.markov.engine;
+
+/**
+ * Palabras de una {@link MarkovChain} por id denso (0..size-1): en el heap
+ * ({@link Vocabulary}) o en buffers directos ({@link OffHeapVocabulary}).
+ */
+interface Lexicon {
+
+    /** Id de la palabra o -1 si no pertenece al vocabulario. */
+    int idOf(String word);
+
+    String word(int id);
+
+    int size();
+
+    /** Memoria aproximada, dentro y fuera del heap. */
+    long memoryBytes();
+
+    /** Parte de {@link #memoryBytes()} que vive fuera del heap. */
+    long offHeapBytes();
+
+    /** Copia mutable en el heap, para seguir entrenando. */
+    Vocabulary copy();
+}
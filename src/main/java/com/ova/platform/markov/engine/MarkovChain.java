@@ -0,0 +1,422 @@
+package com.ova.platform.markov.engine;
+
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
+
+/**
+ * Cadena de Markov compilada e inmutable.
+ *
+ * <p>Los sucesores de cada estado están contiguos (formato CSR): los del
+ * estado {@code s} ocupan {@code [offsets[s], offsets[s + 1])} en
+ * {@code successorWords}/{@code successorCounts}.</p>
+ *
+ * <p>Al compilar, cada estado se congela en una tabla alias
+ * ({@link AliasTables}) para elegir el sucesor en tiempo constante, sin
+ * importar cuántos sucesores tenga.</p>
+ *
+ * <p>La cadena es además un grafo: {@code nextStates[t]} es el estado al que
+ * lleva la transición {@code t} (o -1 si no existe). Generar es seguir índices
+ * enteros; el índice hash sólo se consulta para el estado inicial.</p>
+ *
+ * <p>El estado inicial sale del texto de inicio: el n-grama completo si se vio
+ * al entrenar y, si no, un estado que termine en el sufijo más largo conocido
+ * del texto ({@link SuffixIndex}), de modo que un texto corto o con un final
+ * nunca visto sigue continuando sus últimas palabras.</p>
+ *
+ * <p>Una cadena de orden {@code n} genera también con cualquier orden menor
+ * ({@link #generate(int, String, int, RandomGenerator, Predicate)}): el
+ * contexto de {@code k} palabras es el rango de estados del índice de sufijos
+ * que terminan en ellas. Un único entrenamiento sirve así para los órdenes
+ * 1..{@code n} con la memoria del modelo de orden {@code n}.</p>
+ *
+ * <p>Las tablas son {@link IntBuffer}: arrays del heap envueltos cuando la cadena
+ * se compila, buffers directos tras {@link #toOffHeap()} o vistas de un snapshot
+ * mapeado con {@link ChainSnapshot#map}. La generación es idéntica en todos los
+ * casos.</p>
+ */
+public final class MarkovChain {
+
+    // Enteros por transición: palabra, recuento, umbral, alias y estado destino
+    static final int TRANSITION_INTS = 5;
+
+    private final int order;
+    private final Lexicon vocabulary;
+    private final StateIndex states;
+    private final IntBuffer offsets;
+    private final IntBuffer successorWords;
+    private final IntBuffer successorCounts;
+    private final IntBuffer stateTotals;
+    private final IntBuffer aliasThresholds;
+    private final IntBuffer aliases;
+    private final IntBuffer nextStates;
+    private final SuffixIndex suffixes;
+    private final long tokenCount;
+    private final boolean exactCounts;
+    // Buffers directos o mapeo propios de la cadena (null si todo está en el heap o es de otra cadena)
+    private final OffHeap memory;
+
+    MarkovChain(int order, Lexicon vocabulary, StateIndex states, int[] offsets,
+                int[] successorWords, int[] successorCounts, int[] stateTotals, long tokenCount,
+                boolean exactCounts) {
+        int[] thresholds = new int[successorWords.length];
+        int[] aliasArray = new int[successorWords.length];
+        for (int s = 0; s < stateTotals.length; s++) {
+            AliasTables.build(successorCounts, offsets[s], offsets[s + 1], thresholds, aliasArray);
+        }
+        this.order = order;
+        this.vocabulary = vocabulary;
+        this.states = states;
+        this.offsets = IntBuffer.wrap(offsets);
+        this.successorWords = IntBuffer.wrap(successorWords);
+        this.successorCounts = IntBuffer.wrap(successorCounts);
+        this.stateTotals = IntBuffer.wrap(stateTotals);
+        this.aliasThresholds = IntBuffer.wrap(thresholds);
+        this.aliases = IntBuffer.wrap(aliasArray);
+        this.nextStates = IntBuffer.wrap(linkStates(order, states, this.offsets, this.successorWords));
+        this.suffixes = SuffixIndex.of(states, vocabulary.size(), this.stateTotals);
+        this.tokenCount = tokenCount;
+        this.exactCounts = exactCounts;
+        this.memory = null;
+    }
+
+    // Cadena leída de un snapshot (en el heap o mapeada): las tablas alias, el grafo y los sufijos ya vienen construidos
+    MarkovChain(int order, Lexicon vocabulary, StateIndex states, IntBuffer offsets, IntBuffer successorWords,
+                IntBuffer successorCounts, IntBuffer stateTotals, IntBuffer aliasThresholds, IntBuffer aliases,
+                IntBuffer nextStates, SuffixIndex suffixes, long tokenCount, boolean exactCounts, OffHeap memory) {
+        this.order = order;
+        this.vocabulary = vocabulary;
+        this.states = states;
+        this.offsets = offsets;
+        this.successorWords = successorWords;
+        this.successorCounts = successorCounts;
+        this.stateTotals = stateTotals;
+        this.aliasThresholds = aliasThresholds;
+        this.aliases = aliases;
+        this.nextStates = nextStates;
+        this.suffixes = suffixes;
+        this.tokenCount = tokenCount;
+        this.exactCounts = exactCounts;
+        this.memory = memory;
+    }
+
+    /**
+     * Estado destino de cada transición: el n-grama formado por las últimas
+     * {@code order - 1} palabras del estado origen más la palabra sucesora.
+     */
+    private static int[] linkStates(int order, StateIndex states, IntBuffer offsets, IntBuffer successorWords) {
+        int[] next = new int[successorWords.limit()];
+        int[] key = new int[order];
+        for (int s = 0; s < states.size(); s++) {
+            states.copyKey(s, key, 0);
+            System.arraycopy(key, 1, key, 0, order - 1);
+            for (int t = offsets.get(s); t < offsets.get(s + 1); t++) {
+                key[order - 1] = successorWords.get(t);
+                next[t] = states.find(key, 0);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Genera hasta {@code length} palabras. Si las últimas {@code order} palabras
+     * de {@code startText} forman un estado conocido se continúa desde él; si no,
+     * desde un estado que termine en su sufijo conocido más largo y, si ni la
+     * última palabra es conocida, desde un estado aleatorio.
+     *
+     * <p>Toda la aleatoriedad sale de {@code random}: con un generador sembrado
+     * (p. ej. {@link java.util.SplittableRandom}) el texto es reproducible.</p>
+     */
+    public String generate(int length, String startText, RandomGenerator random) {
+        return generate(length, startText, order, random);
+    }
+
+    /** Igual que {@link #generate(int, String, RandomGenerator)} con un orden de 1 a {@link #order()}. */
+    public String generate(int length, String startText, int order, RandomGenerator random) {
+        return generate(length, startText, order, random, (long[]) null);
+    }
+
+    /**
+     * Igual que {@link #generate(int, String, int, RandomGenerator)}; si
+     * {@code stageNanos} no es null recibe los nanosegundos de la búsqueda del
+     * estado inicial ({@code [0]}) y del muestreo ({@code [1]}).
+     */
+    public String generate(int length, String startText, int order, RandomGenerator random, long[] stageNanos) {
+        StringBuilder text = new StringBuilder(Math.max(0, length) * 8);
+        generate(length, startText, order, random, word -> {
+            if (text.length() > 0) text.append(' ');
+            text.append(word);
+            return true;
+        }, stageNanos);
+        return text.toString();
+    }
+
+    /**
+     * Igual que {@link #generate(int, String, RandomGenerator)} pero entrega cada palabra
+     * a {@code onWord} en cuanto se muestrea. Si {@code onWord} devuelve false la
+     * generación se detiene (p. ej. el cliente canceló).
+     *
+     * @return palabras entregadas
+     */
+    public int generate(int length, String startText, RandomGenerator random, Predicate<String> onWord) {
+        return generate(length, startText, order, random, onWord);
+    }
+
+    /**
+     * Generación por palabras con un orden menor o igual que el de la cadena. Con
+     * {@code order < order()} el contexto son las últimas {@code order} palabras:
+     * en cada paso se busca su rango en el índice de sufijos (retrocediendo a
+     * menos palabras si el contexto no aparece) y se muestrea sobre la unión de
+     * sus sucesores, en {@code O(order · log estados)} por palabra en vez de
+     * seguir el grafo.
+     *
+     * @throws IllegalArgumentException si {@code order} no está entre 1 y {@link #order()}
+     */
+    public int generate(int length, String startText, int order, RandomGenerator random,
+                        Predicate<String> onWord) {
+        return generate(length, startText, order, random, onWord, null);
+    }
+
+    /**
+     * Igual que {@link #generate(int, String, int, RandomGenerator, Predicate)}
+     * midiendo, si {@code stageNanos} no es null, la búsqueda del estado inicial
+     * ({@code [0]}) y el muestreo ({@code [1]}), como {@code markov_generate_timed}
+     * en la librería nativa.
+     */
+    public int generate(int length, String startText, int order, RandomGenerator random,
+                        Predicate<String> onWord, long[] stageNanos) {
+        if (order < 1 || order > this.order) {
+            throw new IllegalArgumentException("Orden " + order + " fuera de rango (1-" + this.order + ")");
+        }
+        if (states.size() == 0 || length <= 0) return 0;
+        if (order < this.order) return generateLowerOrder(length, startText, order, random, onWord, stageNanos);
+
+        long t0 = stageNanos != null ? System.nanoTime() : 0;
+        int state = resolveStartState(startText, random);
+        if (state < 0) {
+            state = random.nextInt(states.size());
+        }
+
+        long t1 = stageNanos != null ? System.nanoTime() : 0;
+        int emitted = 0;
+        while (emitted < length) {
+            int total = stateTotals.get(state);
+            if (total == 0) break;
+
+            int transition = sample(state, total, random);
+            emitted++;
+            if (!onWord.test(vocabulary.word(successorWords.get(transition)))) break;
+
+            state = nextStates.get(transition);
+            if (state < 0) break;
+        }
+        recordStages(stageNanos, t0, t1);
+        return emitted;
+    }
+
+    private static void recordStages(long[] stageNanos, long t0, long t1) {
+        if (stageNanos != null) {
+            stageNanos[0] = t1 - t0;
+            stageNanos[1] = System.nanoTime() - t1;
+        }
+    }
+
+    private int generateLowerOrder(int length, String startText, int order, RandomGenerator random,
+                                   Predicate<String> onWord, long[] stageNanos) {
+        long t0 = stageNanos != null ? System.nanoTime() : 0;
+        int[] context = new int[this.order];
+        int[] range = new int[2];
+        int known = knownSuffix(startText, order, context);
+        int fill = known > 0 ? suffixes.match(context, known, range) : 0;
+        if (fill == 0) {
+            // Sin contexto conocido: las últimas `order` palabras de un estado aleatorio
+            states.copyKey(random.nextInt(states.size()), context, 0);
+            System.arraycopy(context, this.order - order, context, 0, order);
+            fill = suffixes.match(context, order, range);
+        } else {
+            System.arraycopy(context, known - fill, context, 0, fill);
+        }
+
+        long t1 = stageNanos != null ? System.nanoTime() : 0;
+        int emitted = 0;
+        while (emitted < length) {
+            int state = suffixes.sampleWeighted(range[0], range[1], random);
+            int total = stateTotals.get(state);
+            if (total == 0) break;
+
+            int word = successorWords.get(sample(state, total, random));
+            emitted++;
+            if (!onWord.test(vocabulary.word(word))) break;
+
+            if (fill == order) {
+                System.arraycopy(context, 1, context, 0, order - 1);
+                fill--;
+            }
+            context[fill++] = word;
+            int matched = suffixes.match(context, fill, range);
+            if (matched == 0) break;
+            System.arraycopy(context, fill - matched, context, 0, matched);
+            fill = matched;
+        }
+        recordStages(stageNanos, t0, t1);
+        return emitted;
+    }
+
+    private int resolveStartState(String startText, RandomGenerator random) {
+        int[] context = new int[order];
+        int known = knownSuffix(startText, order, context);
+        if (known == order) {
+            int state = states.find(context, 0);
+            if (state >= 0) return state;
+        }
+        // Backoff: el n-grama completo no existe; sufijo más largo de las palabras conocidas
+        return known > 0 ? suffixes.longestSuffix(context, known, random) : -1;
+    }
+
+    /**
+     * Últimas palabras de {@code startText}, hasta {@code max}, mientras estén en
+     * el vocabulario: sus ids quedan en {@code dest[0..n)} en orden del texto.
+     *
+     * @return n
+     */
+    private int knownSuffix(String startText, int max, int[] dest) {
+        if (startText == null || startText.isBlank()) return 0;
+
+        List<String> tokens = Tokenizer.tokenize(startText);
+        int known = 0;
+        while (known < max && known < tokens.size()) {
+            int id = vocabulary.idOf(tokens.get(tokens.size() - 1 - known));
+            if (id < 0) break;
+            dest[max - 1 - known++] = id;
+        }
+        System.arraycopy(dest, max - known, dest, 0, known);
+        return known;
+    }
+
+    // Muestreo O(1): urna uniforme y comparación con su umbral; devuelve la transición elegida
+    private int sample(int state, int total, RandomGenerator random) {
+        int start = offsets.get(state);
+        int j = start + random.nextInt(offsets.get(state + 1) - start);
+        return random.nextInt(total) < aliasThresholds.get(j) ? j : aliases.get(j);
+    }
+
+    public int order() {
+        return order;
+    }
+
+    // Acceso de sólo lectura para ChainBuilder.from y ChainSnapshot; los arrays no se modifican
+    Lexicon vocabulary() {
+        return vocabulary;
+    }
+
+    StateIndex states() {
+        return states;
+    }
+
+    IntBuffer offsets() {
+        return offsets;
+    }
+
+    IntBuffer successorWords() {
+        return successorWords;
+    }
+
+    IntBuffer successorCounts() {
+        return successorCounts;
+    }
+
+    IntBuffer stateTotals() {
+        return stateTotals;
+    }
+
+    IntBuffer aliasThresholds() {
+        return aliasThresholds;
+    }
+
+    IntBuffer aliases() {
+        return aliases;
+    }
+
+    IntBuffer nextStates() {
+        return nextStates;
+    }
+
+    SuffixIndex suffixes() {
+        return suffixes;
+    }
+
+    public int vocabularySize() {
+        return vocabulary.size();
+    }
+
+    public int stateCount() {
+        return states.size();
+    }
+
+    public int transitionCount() {
+        return successorWords.limit();
+    }
+
+    public long tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Si los recuentos son los del texto de entrenamiento. Es false tras una
+     * compactación que descartó sucesores o reescaló recuentos
+     * ({@link ChainCompactor}): la cadena sirve para generar pero no como base de
+     * {@link ChainBuilder#from}, que seguiría contando sobre frecuencias alteradas.
+     */
+    public boolean hasExactCounts() {
+        return exactCounts;
+    }
+
+    /**
+     * Memoria aproximada de la cadena: índice de estados, transiciones, sufijos
+     * (con sus totales acumulados) y vocabulario. Las tablas de un snapshot
+     * mapeado cuentan aunque estén fuera del heap.
+     */
+    public long memoryBytes() {
+        long ints = states.keys().limit() + states.slots().limit() + offsets.limit() + stateTotals.limit()
+                + suffixes.sorted().limit() + (long) TRANSITION_INTS * successorWords.limit();
+        return Integer.BYTES * ints + (long) Long.BYTES * suffixes.cumulativeTotals().limit() + vocabulary.memoryBytes();
+    }
+
+    /** Parte de {@link #memoryBytes()} en buffers directos o mapeados, fuera del heap. */
+    public long offHeapBytes() {
+        return OffHeap.bytes(states.keys()) + OffHeap.bytes(states.slots()) + OffHeap.bytes(offsets)
+                + OffHeap.bytes(successorWords) + OffHeap.bytes(successorCounts) + OffHeap.bytes(stateTotals)
+                + OffHeap.bytes(aliasThresholds) + OffHeap.bytes(aliases) + OffHeap.bytes(nextStates)
+                + OffHeap.bytes(suffixes.sorted()) + OffHeap.bytes(suffixes.cumulativeTotals())
+                + vocabulary.offHeapBytes();
+    }
+
+    /**
+     * Copia de la cadena con todas las tablas y el vocabulario en buffers
+     * directos, en estructuras de arrays planas: el heap sólo guarda los objetos
+     * que las envuelven, así que una cadena grande residente apenas añade
+     * trabajo al GC. La memoria directa se devuelve con {@link #free()}.
+     */
+    public MarkovChain toOffHeap() {
+        OffHeap direct = new OffHeap();
+        StateIndex directStates = new StateIndex(order, states.size(),
+                direct.copyOf(states.keys()), direct.copyOf(states.slots()));
+        SuffixIndex directSuffixes = new SuffixIndex(directStates,
+                direct.copyOf(suffixes.sorted()), direct.copyOf(suffixes.cumulativeTotals()));
+        return new MarkovChain(order, OffHeapVocabulary.copyOf(vocabulary, direct), directStates,
+                direct.copyOf(offsets), direct.copyOf(successorWords), direct.copyOf(successorCounts),
+                direct.copyOf(stateTotals), direct.copyOf(aliasThresholds), direct.copyOf(aliases),
+                direct.copyOf(nextStates), directSuffixes, tokenCount, exactCounts, direct);
+    }
+
+    /**
+     * Devuelve ya, sin esperar al GC, la memoria directa de {@link #toOffHeap()} o
+     * el mapeo de {@link ChainSnapshot#map}. Después la cadena no debe usarse, ni
+     * las que comparten sus tablas ({@link ChainCompactor}): leerlas puede tumbar
+     * la JVM. En una cadena del heap no hace nada.
+     */
+    public void free() {
+        if (memory != null) memory.free();
+    }
+}
@@ -0,0 +1,104 @@
+package com.ova.platform.markov.engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memoria fuera del heap de una cadena: reserva y copia de tablas en buffers
+ * directos en el orden de bytes nativo. Recuerda cada buffer que reserva, y el
+ * mapeo del snapshot si lo adopta, para devolverlos de una vez con {@link #free()}
+ * en lugar de esperar a que el GC recoja sus envoltorios: la memoria directa
+ * cuenta contra {@code -XX:MaxDirectMemorySize} hasta que se libera, y un modelo
+ * reemplazado o desalojado apenas deja basura en el heap que fuerce un GC.
+ */
+final class OffHeap {
+
+    // Unsafe.invokeCleaner (jdk.unsupported): libera un buffer directo o deshace un mapeo en el acto.
+    // Si la JVM no lo expone, free() sólo suelta las referencias y la memoria vuelve con el GC
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private final List<ByteBuffer> owned = new ArrayList<>();
+    private boolean freed;
+
+    synchronized ByteBuffer allocate(int bytes) {
+        if (freed) throw new IllegalStateException("Memoria fuera del heap ya liberada");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        owned.add(buffer);
+        return buffer;
+    }
+
+    IntBuffer allocateInts(int length) {
+        return allocate(length * Integer.BYTES).asIntBuffer();
+    }
+
+    LongBuffer allocateLongs(int length) {
+        return allocate(length * Long.BYTES).asLongBuffer();
+    }
+
+    IntBuffer copyOf(IntBuffer source) {
+        IntBuffer copy = allocateInts(source.limit());
+        copy.put(0, source, 0, source.limit());
+        return copy;
+    }
+
+    LongBuffer copyOf(LongBuffer source) {
+        LongBuffer copy = allocateLongs(source.limit());
+        copy.put(0, source, 0, source.limit());
+        return copy;
+    }
+
+    /** Se hace cargo de un mapeo completo (no de una vista suya): {@link #free()} lo deshace. */
+    synchronized void adopt(ByteBuffer mapping) {
+        if (freed) throw new IllegalStateException("Memoria fuera del heap ya liberada");
+        owned.add(mapping);
+    }
+
+    /**
+     * Libera todos los buffers y el mapeo. Quien llama garantiza que nadie lee ya
+     * las tablas: acceder después a una vista suya puede tumbar la JVM.
+     */
+    synchronized void free() {
+        if (freed) return;
+        freed = true;
+        if (INVOKE_CLEANER != null) {
+            for (ByteBuffer buffer : owned) {
+                try {
+                    INVOKE_CLEANER.invokeExact(buffer);
+                } catch (Throwable e) {
+                    // Queda para el GC
+                }
+            }
+        }
+        owned.clear();
+    }
+
+    /** Bytes fuera del heap de la tabla: 0 si es un array del heap envuelto. */
+    static long bytes(Buffer buffer) {
+        if (!buffer.isDirect()) return 0;
+        if (buffer instanceof IntBuffer) return (long) Integer.BYTES * buffer.capacity();
+        if (buffer instanceof LongBuffer) return (long) Long.BYTES * buffer.capacity();
+        return buffer.capacity();
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.ova.platform.markov.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Vocabulario congelado fuera del heap: los bytes UTF-8 de todas las palabras
+ * seguidos en un único buffer, sus offsets y una tabla hash de ids
+ * (direccionamiento abierto, sondeo lineal). El heap sólo guarda este objeto y
+ * las vistas, sin un String ni una entrada de mapa por palabra; {@link #word}
+ * decodifica la palabra cuando se pide.
+ *
+ * <p>Los buffers pueden ser directos o secciones de un snapshot mapeado: sólo se
+ * leen con accesos absolutos, así que varios hilos lo comparten sin
+ * sincronización.</p>
+ */
+final class OffHeapVocabulary implements Lexicon {
+
+    private static final int EMPTY = -1;
+
+    private final ByteBuffer bytes;
+    private final IntBuffer offsets;
+    private final IntBuffer slots;
+    private final int mask;
+
+    private OffHeapVocabulary(ByteBuffer bytes, IntBuffer offsets, IntBuffer slots) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.slots = slots;
+        this.mask = slots.limit() - 1;
+    }
+
+    /**
+     * Vocabulario sobre bytes y offsets ya existentes (p. ej. las secciones de un
+     * snapshot mapeado); sólo el índice hash se construye, en memoria directa
+     * reservada en {@code memory}.
+     */
+    static OffHeapVocabulary over(ByteBuffer bytes, IntBuffer offsets, OffHeap memory) {
+        int size = offsets.limit() - 1;
+        int capacity = 16;
+        while (capacity < 2 * size) capacity <<= 1;
+        IntBuffer slots = memory.allocateInts(capacity);
+        for (int i = 0; i < capacity; i++) slots.put(i, EMPTY);
+
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(bytes, offsets.get(id), offsets.get(id + 1)) & mask;
+            while (slots.get(slot) != EMPTY) slot = (slot + 1) & mask;
+            slots.put(slot, id);
+        }
+        return new OffHeapVocabulary(bytes, offsets, slots);
+    }
+
+    /** Copia en buffers directos de {@code memory} de las palabras de {@code words}. */
+    static OffHeapVocabulary copyOf(Lexicon words, OffHeap memory) {
+        int size = words.size();
+        byte[][] encoded = new byte[size][];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            encoded[i] = words.word(i).getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+        }
+
+        ByteBuffer bytes = memory.allocate(total);
+        IntBuffer offsets = memory.allocateInts(size + 1);
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            offsets.put(i, position);
+            bytes.put(position, encoded[i]);
+            position += encoded[i].length;
+        }
+        offsets.put(size, position);
+        return over(bytes, offsets, memory);
+    }
+
+    @Override
+    public int idOf(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(key) & mask;
+        while (true) {
+            int id = slots.get(slot);
+            if (id == EMPTY) return -1;
+            if (matches(id, key)) return id;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public String word(int id) {
+        int from = offsets.get(id);
+        byte[] word = new byte[offsets.get(id + 1) - from];
+        bytes.get(from, word);
+        return new String(word, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return offsets.limit() - 1;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return bytes.capacity() + (long) Integer.BYTES * (offsets.limit() + slots.limit());
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return OffHeap.bytes(bytes) + OffHeap.bytes(offsets) + OffHeap.bytes(slots);
+    }
+
+    @Override
+    public Vocabulary copy() {
+        Vocabulary copy = new Vocabulary(size());
+        for (int i = 0; i < size(); i++) {
+            copy.intern(word(i));
+        }
+        return copy;
+    }
+
+    private boolean matches(int id, byte[] key) {
+        int from = offsets.get(id);
+        if (offsets.get(id + 1) - from != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (bytes.get(from + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    // FNV-1a sobre los bytes UTF-8: el mismo valor para la palabra guardada y para la buscada
+    private static int hash(ByteBuffer buffer, int from, int to) {
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(byte[] key) {
+        int hash = 0x811C9DC5;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
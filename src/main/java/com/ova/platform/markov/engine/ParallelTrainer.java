@@ -0,0 +1,146 @@
+package com.ova.platform.markov.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Entrenamiento en paralelo sobre un {@link ForkJoinPool}.
+ *
+ * <p>El texto se lee por rondas de tantos fragmentos ({@link TextShards}) como
+ * hilos tiene el pool. En cada ronda:</p>
+ * <ol>
+ *   <li>cada fragmento se tokeniza en paralelo con un vocabulario local;</li>
+ *   <li>los vocabularios locales se funden en orden en el global y los tokens
+ *       pasan a ids globales;</li>
+ *   <li>cada fragmento cuenta sus n-gramas en un {@link ChainBuilder} propio,
+ *       empezando con los últimos {@code orden} tokens del anterior como
+ *       ventana (el solape que une los fragmentos);</li>
+ *   <li>los recuentos se funden en orden con {@link ChainBuilder#merge}.</li>
+ * </ol>
+ *
+ * <p>Como las palabras, estados y transiciones nuevos se añaden en el orden en
+ * que aparecen en el texto, el modelo resultante es idéntico (mismos ids, mismas
+ * frecuencias, mismo orden de sucesores) al de {@link ChainBuilder#addText(Reader)}
+ * en un solo hilo. La memoria extra es la de una ronda de fragmentos.</p>
+ */
+public final class ParallelTrainer {
+
+    public static final int DEFAULT_SHARD_CHARS = 1 << 20;
+
+    private final ForkJoinPool pool;
+    private final int shardChars;
+
+    public ParallelTrainer(ForkJoinPool pool) {
+        this(pool, DEFAULT_SHARD_CHARS);
+    }
+
+    public ParallelTrainer(ForkJoinPool pool, int shardChars) {
+        this.pool = pool;
+        this.shardChars = shardChars;
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Equivalente en paralelo a {@link ChainBuilder#addText(Reader)}: cuenta el
+     * texto como un documento y lo cierra.
+     *
+     * @return caracteres leídos
+     */
+    public long addText(ChainBuilder builder, Reader text) throws IOException {
+        int order = builder.order();
+        TextShards shards = new TextShards(text, shardChars);
+        int[] window = new int[order];
+        int windowFill = builder.copyWindow(window);
+
+        List<String> round;
+        while (!(round = shards.next(pool.getParallelism())).isEmpty()) {
+            List<ForkJoinTask<ShardTokens>> tokenizing = new ArrayList<>(round.size());
+            for (String shard : round) {
+                tokenizing.add(pool.submit(() -> ShardTokens.of(shard)));
+            }
+
+            // Vocabulario global en orden de aparición y ventana inicial de cada fragmento
+            List<int[]> tokens = new ArrayList<>(round.size());
+            List<int[]> contexts = new ArrayList<>(round.size());
+            int[] contextLengths = new int[round.size()];
+            for (int i = 0; i < round.size(); i++) {
+                int[] ids = tokenizing.get(i).join().toGlobal(builder.vocabulary());
+                tokens.add(ids);
+                contexts.add(window.clone());
+                contextLengths[i] = windowFill;
+                windowFill = advance(window, windowFill, ids);
+            }
+
+            List<ForkJoinTask<ChainBuilder>> counting = new ArrayList<>(round.size());
+            for (int i = 0; i < round.size(); i++) {
+                int[] ids = tokens.get(i);
+                int[] context = contexts.get(i);
+                int contextLength = contextLengths[i];
+                counting.add(pool.submit(() -> {
+                    ChainBuilder shard = builder.shard(context, contextLength, ids.length);
+                    for (int id : ids) shard.addToken(id);
+                    return shard;
+                }));
+            }
+            for (ForkJoinTask<ChainBuilder> task : counting) {
+                builder.merge(task.join());
+            }
+            builder.setWindow(window, windowFill);
+        }
+
+        builder.endDocument();
+        return shards.charactersRead();
+    }
+
+    // Ventana tras añadir `tokens`: los últimos `order` tokens del documento
+    private static int advance(int[] window, int fill, int[] tokens) {
+        int order = window.length;
+        int n = tokens.length;
+        if (n >= order) {
+            System.arraycopy(tokens, n - order, window, 0, order);
+            return order;
+        }
+        int keep = Math.min(fill, order - n);
+        System.arraycopy(window, fill - keep, window, 0, keep);
+        System.arraycopy(tokens, 0, window, keep, n);
+        return keep + n;
+    }
+
+    /** Tokens de un fragmento con ids de su vocabulario local. */
+    private static final class ShardTokens {
+        private final Vocabulary vocabulary = new Vocabulary();
+        private int[] ids = new int[1024];
+        private int size;
+
+        static ShardTokens of(String text) {
+            ShardTokens tokens = new ShardTokens();
+            Tokenizer.forEachToken(text, tokens::add);
+            return tokens;
+        }
+
+        private void add(String word) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = vocabulary.intern(word);
+        }
+
+        int[] toGlobal(Vocabulary global) {
+            int[] mapping = new int[vocabulary.size()];
+            for (int i = 0; i < mapping.length; i++) {
+                mapping[i] = global.intern(vocabulary.word(i));
+            }
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = mapping[ids[i]];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.ova.platform.markov.engine;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Índice de estados congelado de una {@link MarkovChain}: las mismas claves
+ * empaquetadas y slots que {@link IntNgramTable}, pero de sólo lectura y sobre
+ * {@link IntBuffer}, de modo que puede vivir en el heap o directamente sobre un
+ * snapshot mapeado en memoria.
+ */
+final class StateIndex {
+
+    private final int order;
+    private final int size;
+    private final IntBuffer keys;
+    private final IntBuffer slots;
+    private final int mask;
+
+    StateIndex(int order, int size, IntBuffer keys, IntBuffer slots) {
+        int capacity = slots.limit();
+        if (order < 1 || Integer.bitCount(capacity) != 1 || (long) size * order > keys.limit() || size >= capacity) {
+            throw new IllegalArgumentException("Índice de estados inconsistente");
+        }
+        this.order = order;
+        this.size = size;
+        this.keys = keys;
+        this.slots = slots;
+        this.mask = capacity - 1;
+    }
+
+    /** Copia congelada de la tabla de entrenamiento. */
+    static StateIndex of(IntNgramTable table) {
+        int size = table.size();
+        return new StateIndex(table.order(), size,
+                IntBuffer.wrap(Arrays.copyOf(table.keys(), size * table.order())),
+                IntBuffer.wrap(table.slots().clone()));
+    }
+
+    /** Tabla de entrenamiento con los mismos estados (para seguir entrenando). */
+    IntNgramTable toTable() {
+        int[] keyArray = new int[size * order];
+        keys.get(0, keyArray);
+        int[] slotArray = new int[slots.limit()];
+        slots.get(0, slotArray);
+        return IntNgramTable.wrap(order, keyArray, slotArray, size);
+    }
+
+    /** Id del estado cuyo n-grama es {@code key[offset..offset+order)}, o -1 si no existe. */
+    int find(int[] key, int offset) {
+        int slot = IntNgramTable.hash(key, offset, order) & mask;
+        while (true) {
+            int id = slots.get(slot);
+            if (id == IntNgramTable.EMPTY) return -1;
+            if (matches(id, key, offset)) return id;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void copyKey(int state, int[] dest, int destOffset) {
+        keys.get(state * order, dest, destOffset, order);
+    }
+
+    /** Palabra {@code position} de la clave del estado. */
+    int word(int state, int position) {
+        return keys.get(state * order + position);
+    }
+
+    int order() {
+        return order;
+    }
+
+    int size() {
+        return size;
+    }
+
+    IntBuffer keys() {
+        return keys;
+    }
+
+    IntBuffer slots() {
+        return slots;
+    }
+
+    private boolean matches(int id, int[] key, int offset) {
+        int base = id * order;
+        for (int i = 0; i < order; i++) {
+            if (keys.get(base + i) != key[offset + i]) return false;
+        }
+        return true;
+    }
+}
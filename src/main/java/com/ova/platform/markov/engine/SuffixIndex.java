@@ -0,0 +1,161 @@
+package com.ova.platform.markov.engine;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Índice de sufijos sobre las claves de un {@link StateIndex}, para resolver el
+ * estado inicial a partir de un texto con menos de {@code order} palabras o
+ * cuyo último n-grama no se vio al entrenar.
+ *
+ * <p>Es la lista de ids de estado ordenada por la clave leída al revés
+ * ({@code w[order-1]}, ..., {@code w[0]}), así que los estados que terminan en
+ * las mismas {@code k} palabras ocupan un rango contiguo. Buscar el sufijo más
+ * largo del texto es estrechar ese rango palabra a palabra, de la última hacia
+ * atrás, con una búsqueda binaria por palabra: {@code O(order · log estados)},
+ * sin recorrer la tabla de estados.</p>
+ *
+ * <p>El mismo rango responde a órdenes menores que el de la cadena: los
+ * sucesores del contexto de {@code k} palabras son la unión de los sucesores de
+ * los estados del rango. Elegir un estado del rango con probabilidad
+ * proporcional a su total ({@link #sampleWeighted}) y luego un sucesor suyo da
+ * exactamente la distribución de orden {@code k}, sin guardar un modelo por
+ * orden.</p>
+ */
+final class SuffixIndex {
+
+    private final StateIndex states;
+    private final IntBuffer sorted;
+    // Totales acumulados en el orden de `sorted` (estados + 1), para sampleWeighted. Sólo se
+    // calculan al construir el índice en memoria; un snapshot los guarda como sección propia
+    private final LongBuffer cumulativeTotals;
+
+    SuffixIndex(StateIndex states, IntBuffer sorted, LongBuffer cumulativeTotals) {
+        if (sorted.limit() != states.size() || cumulativeTotals.limit() != states.size() + 1) {
+            throw new IllegalArgumentException("Índice de sufijos inconsistente");
+        }
+        this.states = states;
+        this.sorted = sorted;
+        this.cumulativeTotals = cumulativeTotals;
+    }
+
+    /** Índice construido en memoria para los estados dados. */
+    static SuffixIndex of(StateIndex states, int vocabularySize, IntBuffer stateTotals) {
+        int[] sorted = sort(states, vocabularySize);
+        long[] cumulative = new long[sorted.length + 1];
+        for (int i = 0; i < sorted.length; i++) {
+            cumulative[i + 1] = cumulative[i] + stateTotals.get(sorted[i]);
+        }
+        return new SuffixIndex(states, IntBuffer.wrap(sorted), LongBuffer.wrap(cumulative));
+    }
+
+    /**
+     * Ids de estado ordenados por clave invertida. Radix sort LSD: una pasada
+     * estable de conteo por posición de la clave, de la primera palabra (la menos
+     * significativa) a la última; {@code O(order · (estados + vocabulario))}.
+     */
+    static int[] sort(StateIndex states, int vocabularySize) {
+        int size = states.size();
+        int order = states.order();
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) ids[i] = i;
+        int[] buffer = new int[size];
+        int[] counts = new int[vocabularySize + 1];
+
+        for (int position = 0; position < order; position++) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) counts[states.word(ids[i], position) + 1]++;
+            for (int w = 0; w < vocabularySize; w++) counts[w + 1] += counts[w];
+            for (int i = 0; i < size; i++) buffer[counts[states.word(ids[i], position)]++] = ids[i];
+            int[] swap = ids;
+            ids = buffer;
+            buffer = swap;
+        }
+        return ids;
+    }
+
+    /**
+     * Estado que termina en el sufijo más largo posible de
+     * {@code context[0..length)} (ids en orden del texto, {@code length <= order}).
+     * Si varios estados lo comparten se elige uno al azar con {@code random};
+     * si sólo hay uno no se consume aleatoriedad.
+     *
+     * @return id del estado, o -1 si ningún estado termina en la última palabra
+     */
+    int longestSuffix(int[] context, int length, RandomGenerator random) {
+        int[] range = new int[2];
+        if (match(context, length, range) == 0) return -1;
+        int lo = range[0];
+        int hi = range[1];
+        return sorted.get(hi - lo == 1 ? lo : lo + random.nextInt(hi - lo));
+    }
+
+    /**
+     * Rango {@code [range[0], range[1])} de posiciones de los estados que terminan
+     * en el sufijo más largo de {@code context[0..length)}.
+     *
+     * @return palabras del sufijo encontrado (0 si ningún estado termina en la última)
+     */
+    int match(int[] context, int length, int[] range) {
+        int order = states.order();
+        int lo = 0;
+        int hi = states.size();
+        int matched = 0;
+        for (int k = 1; k <= length; k++) {
+            int word = context[length - k];
+            int position = order - k;
+            int from = lowerBound(lo, hi, position, word);
+            int to = lowerBound(from, hi, position, word + 1);
+            if (from == to) break;
+            lo = from;
+            hi = to;
+            matched = k;
+        }
+        range[0] = lo;
+        range[1] = hi;
+        return matched;
+    }
+
+    /** Estado de las posiciones {@code [lo, hi)} elegido con probabilidad proporcional a su total. */
+    int sampleWeighted(int lo, int hi, RandomGenerator random) {
+        if (hi - lo == 1) return sorted.get(lo);
+        LongBuffer cumulative = cumulativeTotals;
+        if (cumulative.get(hi) == cumulative.get(lo)) return sorted.get(lo);
+        long r = cumulative.get(lo) + random.nextLong(cumulative.get(hi) - cumulative.get(lo));
+        // Última posición i de [lo, hi) con cumulative[i] <= r
+        int a = lo;
+        int b = hi - 1;
+        while (a < b) {
+            int mid = (a + b + 1) >>> 1;
+            if (cumulative.get(mid) <= r) {
+                a = mid;
+            } else {
+                b = mid - 1;
+            }
+        }
+        return sorted.get(a);
+    }
+
+    IntBuffer sorted() {
+        return sorted;
+    }
+
+    LongBuffer cumulativeTotals() {
+        return cumulativeTotals;
+    }
+
+    // Primera posición de [lo, hi) cuya palabra en `position` es >= word
+    private int lowerBound(int lo, int hi, int position, int word) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (states.word(sorted.get(mid), position) < word) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,83 @@
+package com.ova.platform.markov.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parte un texto leído de un {@link Reader} en fragmentos de unos
+ * {@code shardChars} caracteres. Cada fragmento (salvo el último) termina en un
+ * delimitador de {@link Tokenizer}, así que ninguna palabra queda partida entre
+ * dos fragmentos y tokenizarlos por separado da los mismos tokens.
+ */
+public final class TextShards {
+
+    private final Reader reader;
+    private char[] buffer;
+    private int filled;
+    private boolean eof;
+    private long charactersRead;
+
+    public TextShards(Reader reader, int shardChars) {
+        if (shardChars < 1) throw new IllegalArgumentException("El tamaño de fragmento debe ser positivo");
+        this.reader = reader;
+        this.buffer = new char[shardChars];
+    }
+
+    /** Siguiente fragmento, o null al terminar el texto. */
+    public String next() throws IOException {
+        int cut;
+        while (true) {
+            fill();
+            if (eof) {
+                cut = filled;
+                break;
+            }
+            cut = lastDelimiter() + 1;
+            if (cut > 0) break;
+            // Una sola palabra ocupa todo el buffer: se amplía hasta encontrar su final
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        if (cut == 0) return null;
+
+        String shard = new String(buffer, 0, cut);
+        System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+        filled -= cut;
+        return shard;
+    }
+
+    /** Hasta {@code count} fragmentos seguidos; vacía al terminar el texto. */
+    public List<String> next(int count) throws IOException {
+        List<String> shards = new ArrayList<>(count);
+        String shard;
+        while (shards.size() < count && (shard = next()) != null) {
+            shards.add(shard);
+        }
+        return shards;
+    }
+
+    public long charactersRead() {
+        return charactersRead;
+    }
+
+    private void fill() throws IOException {
+        while (!eof && filled < buffer.length) {
+            int read = reader.read(buffer, filled, buffer.length - filled);
+            if (read == -1) {
+                eof = true;
+            } else {
+                filled += read;
+                charactersRead += read;
+            }
+        }
+    }
+
+    private int lastDelimiter() {
+        for (int i = filled - 1; i >= 0; i--) {
+            if (Tokenizer.isDelimiter(buffer[i])) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ova.platform.markov.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tokenizador equivalente a {@code tokenize_text} de la librería nativa:
+ * separa por espacios y signos de puntuación y pasa a minúsculas sólo las
+ * letras ASCII, como la librería, que trabaja byte a byte sobre UTF-8. "Árbol"
+ * y "árbol" son palabras distintas en los dos motores.
+ */
+public final class Tokenizer {
+
+    private static final String DELIMITADORES = " \t\n\r,.;:!?\"'()[]{}";
+    private static final boolean[] ES_DELIMITADOR = new boolean[128];
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static {
+        for (char c : DELIMITADORES.toCharArray()) {
+            ES_DELIMITADOR[c] = true;
+        }
+    }
+
+    private Tokenizer() {
+    }
+
+    public static boolean isDelimiter(char c) {
+        return c < 128 && ES_DELIMITADOR[c];
+    }
+
+    public static void forEachToken(CharSequence text, Consumer<String> consumer) {
+        if (text == null) return;
+
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i < length; i++) {
+            if (isDelimiter(text.charAt(i))) {
+                if (start >= 0) {
+                    consumer.accept(normalize(text, start, i));
+                    start = -1;
+                }
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+        if (start >= 0) {
+            consumer.accept(normalize(text, start, length));
+        }
+    }
+
+    /**
+     * Tokeniza leyendo por bloques: una palabra partida entre dos bloques se
+     * conserva hasta el siguiente, así que nunca se materializa el texto completo.
+     *
+     * @return caracteres leídos
+     */
+    public static long forEachToken(Reader reader, Consumer<String> consumer) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder pending = new StringBuilder(32);
+        long total = 0;
+
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            total += read;
+            int start = -1;
+            for (int i = 0; i < read; i++) {
+                if (isDelimiter(buffer[i])) {
+                    if (start >= 0) {
+                        pending.append(buffer, start, i - start);
+                        start = -1;
+                    }
+                    if (pending.length() > 0) {
+                        consumer.accept(normalize(pending, 0, pending.length()));
+                        pending.setLength(0);
+                    }
+                } else if (start < 0) {
+                    start = i;
+                }
+            }
+            if (start >= 0) {
+                pending.append(buffer, start, read - start);
+            }
+        }
+        if (pending.length() > 0) {
+            consumer.accept(normalize(pending, 0, pending.length()));
+        }
+        return total;
+    }
+
+    public static List<String> tokenize(CharSequence text) {
+        List<String> tokens = new ArrayList<>();
+        forEachToken(text, tokens::add);
+        return tokens;
+    }
+
+    // Minúsculas A-Z -> a-z; el resto de caracteres (tildes, Ñ) no cambian
+    private static String normalize(CharSequence text, int start, int end) {
+        char[] word = new char[end - start];
+        for (int i = 0; i < word.length; i++) {
+            char c = text.charAt(start + i);
+            word[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return new String(word);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ova.platform.markov.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Vocabulario que interna cada palabra en un id entero denso (0..size-1).
+ * El resto del motor trabaja únicamente con estos ids.
+ */
+public final class Vocabulary implements Lexicon {
+
+    // Por palabra: cabeceras del String y su array, nodo del mapa, Integer y referencias
+    private static final int WORD_OVERHEAD = 96;
+
+    private final Map<String, Integer> ids;
+    private String[] words;
+    private int size;
+
+    public Vocabulary() {
+        this(1024);
+    }
+
+    public Vocabulary(int expectedWords) {
+        this.ids = new HashMap<>(Math.max(16, expectedWords * 4 / 3));
+        this.words = new String[Math.max(16, expectedWords)];
+    }
+
+    public int intern(String word) {
+        Integer id = ids.get(word);
+        if (id != null) return id;
+
+        if (size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+        }
+        words[size] = word;
+        ids.put(word, size);
+        return size++;
+    }
+
+    @Override
+    public int idOf(String word) {
+        Integer id = ids.get(word);
+        return id != null ? id : -1;
+    }
+
+    @Override
+    public String word(int id) {
+        return words[id];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Memoria aproximada en el heap (palabras de un byte por carácter). */
+    @Override
+    public long memoryBytes() {
+        long bytes = (long) WORD_OVERHEAD * size;
+        for (int i = 0; i < size; i++) {
+            bytes += words[i].length();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return 0;
+    }
+
+    @Override
+    public Vocabulary copy() {
+        Vocabulary copy = new Vocabulary(size);
+        for (int i = 0; i < size; i++) {
+            copy.intern(words[i]);
+        }
+        return copy;
+    }
+}
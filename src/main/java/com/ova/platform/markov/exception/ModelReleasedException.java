@@ -0,0 +1,12 @@
+package com.ova.platform.markov.exception;
+
+/**
+ * El modelo fue reemplazado o desalojado y liberado antes de poder usarlo.
+ * Quien la recibe debe volver a leer el modelo vigente y reintentar.
+ */
+public class ModelReleasedException extends IllegalStateException {
+
+    public ModelReleasedException(String message) {
+        super(message);
+    }
+}
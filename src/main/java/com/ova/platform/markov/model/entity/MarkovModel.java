@@ -34,6 +34,14 @@ public class MarkovModel {
     @Column(name = "fecha_actualizacion")
     private LocalDateTime fechaActualizacion;
 
+    // Snapshot binario del modelo entrenado (motor Java); null si no hay
+    @Column(name = "snapshot_path")
+    private String snapshotPath;
+
+    // Última generación o entrenamiento con el modelo (con resolución de minutos); ordena el warm-up
+    @Column(name = "fecha_ultimo_uso")
+    private LocalDateTime fechaUltimoUso;
+
     @Column(name = "estado")
     private String estado = "ACTIVO"; // ACTIVO, INACTIVO, ENTRENANDO
 
@@ -82,6 +90,12 @@ public class MarkovModel {
         this.fechaActualizacion = fechaActualizacion;
     }
 
+    public String getSnapshotPath() { return snapshotPath; }
+    public void setSnapshotPath(String snapshotPath) { this.snapshotPath = snapshotPath; }
+
+    public LocalDateTime getFechaUltimoUso() { return fechaUltimoUso; }
+    public void setFechaUltimoUso(LocalDateTime fechaUltimoUso) { this.fechaUltimoUso = fechaUltimoUso; }
+
     public String getEstado() { return estado; }
     public void setEstado(String estado) { this.estado = estado; }
 
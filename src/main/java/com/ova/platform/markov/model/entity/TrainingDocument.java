@@ -0,0 +1,51 @@
+package com.ova.platform.markov.model.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Texto añadido a un modelo con entrenamiento incremental. Cada uno es un
+ * documento aparte: al reconstruir el modelo se entrena por separado, después
+ * del texto de entrenamiento original, igual que se contó al añadirlo.
+ */
+@Entity
+@Table(name = "markov_training_documents", indexes = @Index(columnList = "modelo_id"))
+public class TrainingDocument {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "modelo_id", nullable = false)
+    private Long modeloId;
+
+    @Column(name = "texto", columnDefinition = "TEXT", nullable = false)
+    private String texto;
+
+    @Column(name = "fecha_creacion")
+    private LocalDateTime fechaCreacion;
+
+
+    public TrainingDocument() {
+        this.fechaCreacion = LocalDateTime.now();
+    }
+
+    public TrainingDocument(Long modeloId, String texto) {
+        this();
+        this.modeloId = modeloId;
+        this.texto = texto;
+    }
+
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getModeloId() { return modeloId; }
+    public void setModeloId(Long modeloId) { this.modeloId = modeloId; }
+
+    public String getTexto() { return texto; }
+    public void setTexto(String texto) { this.texto = texto; }
+
+    public LocalDateTime getFechaCreacion() { return fechaCreacion; }
+    public void setFechaCreacion(LocalDateTime fechaCreacion) { this.fechaCreacion = fechaCreacion; }
+}
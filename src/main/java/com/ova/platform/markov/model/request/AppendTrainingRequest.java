@@ -0,0 +1,23 @@
+package com.ova.platform.markov.model.request;
+
+import jakarta.validation.constraints.NotBlank;
+
+public class AppendTrainingRequest {
+
+    @NotBlank(message = "El texto de entrenamiento es requerido")
+    private String textoEntrenamiento;
+
+    public AppendTrainingRequest() {}
+
+    public AppendTrainingRequest(String textoEntrenamiento) {
+        this.textoEntrenamiento = textoEntrenamiento;
+    }
+
+    public String getTextoEntrenamiento() {
+        return textoEntrenamiento;
+    }
+
+    public void setTextoEntrenamiento(String textoEntrenamiento) {
+        this.textoEntrenamiento = textoEntrenamiento;
+    }
+}
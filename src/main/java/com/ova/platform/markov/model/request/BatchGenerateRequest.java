@@ -0,0 +1,96 @@
+package com.ova.platform.markov.model.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class BatchGenerateRequest {
+
+    // Id de un MarkovModel persistido; si es null se usa el último modelo entrenado con /train
+    private Long modeloId;
+
+    @NotEmpty(message = "El lote debe tener al menos un elemento")
+    @Size(max = 10000, message = "El lote no puede exceder 10000 elementos")
+    @Valid
+    private List<Elemento> elementos;
+
+    public static class Elemento {
+
+        @Size(max = 500, message = "El texto de inicio no puede exceder 500 caracteres")
+        private String textoInicio;
+
+        @Min(value = 1, message = "La longitud debe ser al menos 1 palabra")
+        @Max(value = 500, message = "La longitud no puede exceder 500 palabras")
+        private int longitud = 50;
+
+        // Palabras de contexto, de 1 al orden del modelo; si es null se usa el del modelo
+        @Min(value = 1, message = "El orden debe ser al menos 1")
+        @Max(value = 5, message = "El orden no puede exceder 5")
+        private Integer orden;
+
+        // Semilla del muestreo; si es null se elige una y se devuelve en el resultado
+        private Long semilla;
+
+        public Elemento() {}
+
+        public Elemento(String textoInicio, int longitud, Long semilla) {
+            this.textoInicio = textoInicio;
+            this.longitud = longitud;
+            this.semilla = semilla;
+        }
+
+        public String getTextoInicio() {
+            return textoInicio;
+        }
+
+        public void setTextoInicio(String textoInicio) {
+            this.textoInicio = textoInicio;
+        }
+
+        public int getLongitud() {
+            return longitud;
+        }
+
+        public void setLongitud(int longitud) {
+            this.longitud = longitud;
+        }
+
+        public Integer getOrden() {
+            return orden;
+        }
+
+        public void setOrden(Integer orden) {
+            this.orden = orden;
+        }
+
+        public Long getSemilla() {
+            return semilla;
+        }
+
+        public void setSemilla(Long semilla) {
+            this.semilla = semilla;
+        }
+    }
+
+    public BatchGenerateRequest() {}
+
+    public Long getModeloId() {
+        return modeloId;
+    }
+
+    public void setModeloId(Long modeloId) {
+        this.modeloId = modeloId;
+    }
+
+    public List<Elemento> getElementos() {
+        return elementos;
+    }
+
+    public void setElementos(List<Elemento> elementos) {
+        this.elementos = elementos;
+    }
+}
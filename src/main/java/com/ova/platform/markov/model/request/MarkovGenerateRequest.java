@@ -13,9 +13,19 @@ public class MarkovGenerateRequest {
     @Max(value = 500, message = "La longitud no puede exceder 500 palabras")
     private int longitud = 50;
 
+    // Palabras de contexto, de 1 al orden con que se entrenó el modelo; si es null se usa el del modelo
     @Min(value = 1, message = "El orden debe ser al menos 1")
     @Max(value = 5, message = "El orden no puede exceder 5")
-    private int orden = 2;
+    private Integer orden;
+
+    // Id de un MarkovModel persistido; si es null se usa el último modelo entrenado con /train
+    private Long modeloId;
+
+    // Semilla del generador aleatorio: mismo modelo + misma semilla = mismo texto. Si es null se elige una al azar
+    private Long semilla;
+
+    // Devuelve en la respuesta los nanosegundos de cada etapa (tiemposNs); sólo para diagnóstico
+    private boolean debugTimings;
 
 
     public MarkovGenerateRequest() {
@@ -44,11 +54,35 @@ public class MarkovGenerateRequest {
         this.longitud = longitud;
     }
 
-    public int getOrden() {
+    public Integer getOrden() {
         return orden;
     }
 
-    public void setOrden(int orden) {
+    public void setOrden(Integer orden) {
         this.orden = orden;
     }
+
+    public Long getModeloId() {
+        return modeloId;
+    }
+
+    public void setModeloId(Long modeloId) {
+        this.modeloId = modeloId;
+    }
+
+    public Long getSemilla() {
+        return semilla;
+    }
+
+    public void setSemilla(Long semilla) {
+        this.semilla = semilla;
+    }
+
+    public boolean isDebugTimings() {
+        return debugTimings;
+    }
+
+    public void setDebugTimings(boolean debugTimings) {
+        this.debugTimings = debugTimings;
+    }
 }
\ No newline at end of file
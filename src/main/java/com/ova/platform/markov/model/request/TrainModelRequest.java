@@ -15,6 +15,9 @@ public class TrainModelRequest {
     @Max(value = 5, message = "El orden no puede exceder 5")
     private int orden = 2;
 
+    // Devuelve en la respuesta los nanosegundos de cada etapa (tiemposNs); sólo para diagnóstico
+    private boolean debugTimings;
+
     // Constructores
     public TrainModelRequest() {}
 
@@ -39,4 +42,12 @@ public class TrainModelRequest {
     public void setOrden(int orden) {
         this.orden = orden;
     }
+
+    public boolean isDebugTimings() {
+        return debugTimings;
+    }
+
+    public void setDebugTimings(boolean debugTimings) {
+        this.debugTimings = debugTimings;
+    }
 }
\ No newline at end of file
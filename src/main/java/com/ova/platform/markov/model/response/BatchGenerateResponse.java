@@ -0,0 +1,160 @@
+package com.ova.platform.markov.model.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchGenerateResponse {
+    private List<Resultado> resultados;
+    private int totalElementos;
+    private long totalPalabras;
+    private long tiempoProcesamientoMs;
+    private double elementosPorSegundo;
+    private double palabrasPorSegundo;
+    private int particiones;
+    private String modeloUtilizado;
+    private boolean exito;
+    private String mensaje;
+
+    public static class Resultado {
+        private String textoInicio;
+        private int longitudSolicitada;
+        private long semilla;
+        private String textoGenerado;
+        private int longitudGenerada;
+
+        public Resultado() {}
+
+        public Resultado(String textoInicio, int longitudSolicitada, long semilla,
+                         String textoGenerado, int longitudGenerada) {
+            this.textoInicio = textoInicio;
+            this.longitudSolicitada = longitudSolicitada;
+            this.semilla = semilla;
+            this.textoGenerado = textoGenerado;
+            this.longitudGenerada = longitudGenerada;
+        }
+
+        public String getTextoInicio() {
+            return textoInicio;
+        }
+
+        public void setTextoInicio(String textoInicio) {
+            this.textoInicio = textoInicio;
+        }
+
+        public int getLongitudSolicitada() {
+            return longitudSolicitada;
+        }
+
+        public void setLongitudSolicitada(int longitudSolicitada) {
+            this.longitudSolicitada = longitudSolicitada;
+        }
+
+        public long getSemilla() {
+            return semilla;
+        }
+
+        public void setSemilla(long semilla) {
+            this.semilla = semilla;
+        }
+
+        public String getTextoGenerado() {
+            return textoGenerado;
+        }
+
+        public void setTextoGenerado(String textoGenerado) {
+            this.textoGenerado = textoGenerado;
+        }
+
+        public int getLongitudGenerada() {
+            return longitudGenerada;
+        }
+
+        public void setLongitudGenerada(int longitudGenerada) {
+            this.longitudGenerada = longitudGenerada;
+        }
+    }
+
+    public BatchGenerateResponse() {}
+
+    public List<Resultado> getResultados() {
+        return resultados;
+    }
+
+    public void setResultados(List<Resultado> resultados) {
+        this.resultados = resultados;
+    }
+
+    public int getTotalElementos() {
+        return totalElementos;
+    }
+
+    public void setTotalElementos(int totalElementos) {
+        this.totalElementos = totalElementos;
+    }
+
+    public long getTotalPalabras() {
+        return totalPalabras;
+    }
+
+    public void setTotalPalabras(long totalPalabras) {
+        this.totalPalabras = totalPalabras;
+    }
+
+    public long getTiempoProcesamientoMs() {
+        return tiempoProcesamientoMs;
+    }
+
+    public void setTiempoProcesamientoMs(long tiempoProcesamientoMs) {
+        this.tiempoProcesamientoMs = tiempoProcesamientoMs;
+    }
+
+    public double getElementosPorSegundo() {
+        return elementosPorSegundo;
+    }
+
+    public void setElementosPorSegundo(double elementosPorSegundo) {
+        this.elementosPorSegundo = elementosPorSegundo;
+    }
+
+    public double getPalabrasPorSegundo() {
+        return palabrasPorSegundo;
+    }
+
+    public void setPalabrasPorSegundo(double palabrasPorSegundo) {
+        this.palabrasPorSegundo = palabrasPorSegundo;
+    }
+
+    public int getParticiones() {
+        return particiones;
+    }
+
+    public void setParticiones(int particiones) {
+        this.particiones = particiones;
+    }
+
+    public String getModeloUtilizado() {
+        return modeloUtilizado;
+    }
+
+    public void setModeloUtilizado(String modeloUtilizado) {
+        this.modeloUtilizado = modeloUtilizado;
+    }
+
+    public boolean isExito() {
+        return exito;
+    }
+
+    public void setExito(boolean exito) {
+        this.exito = exito;
+    }
+
+    public String getMensaje() {
+        return mensaje;
+    }
+
+    public void setMensaje(String mensaje) {
+        this.mensaje = mensaje;
+    }
+}
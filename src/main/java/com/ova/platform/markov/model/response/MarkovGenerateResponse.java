@@ -2,6 +2,8 @@ package com.ova.platform.markov.model.response;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import java.util.Map;
+
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class MarkovGenerateResponse {
     private String textoGenerado;
@@ -10,8 +12,12 @@ public class MarkovGenerateResponse {
     private int longitudGenerada;
     private long tiempoProcesamientoMs;
     private String modeloUtilizado;
+    private Integer ordenUtilizado;
+    private Long semilla;
     private boolean exito;
     private String mensaje;
+    // Nanosegundos por etapa, sólo si la petición trae debugTimings
+    private Map<String, Long> tiemposNs;
 
 
     public MarkovGenerateResponse() {
@@ -71,6 +77,22 @@ public class MarkovGenerateResponse {
         this.modeloUtilizado = modeloUtilizado;
     }
 
+    public Integer getOrdenUtilizado() {
+        return ordenUtilizado;
+    }
+
+    public void setOrdenUtilizado(Integer ordenUtilizado) {
+        this.ordenUtilizado = ordenUtilizado;
+    }
+
+    public Long getSemilla() {
+        return semilla;
+    }
+
+    public void setSemilla(Long semilla) {
+        this.semilla = semilla;
+    }
+
     public boolean isExito() {
         return exito;
     }
@@ -86,4 +108,12 @@ public class MarkovGenerateResponse {
     public void setMensaje(String mensaje) {
         this.mensaje = mensaje;
     }
+
+    public Map<String, Long> getTiemposNs() {
+        return tiemposNs;
+    }
+
+    public void setTiemposNs(Map<String, Long> tiemposNs) {
+        this.tiemposNs = tiemposNs;
+    }
 }
\ No newline at end of file
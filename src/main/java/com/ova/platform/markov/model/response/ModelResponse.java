@@ -12,6 +12,8 @@ public class ModelResponse {
     private LocalDateTime fechaCreacion;
     private LocalDateTime fechaActualizacion;
     private String estado;
+    // Sólo si el modelo está residente y el motor lo informa
+    private Long bytesFueraDelHeap;
 
 
     public Long getId() { return id; }
@@ -40,4 +42,7 @@ public class ModelResponse {
 
     public String getEstado() { return estado; }
     public void setEstado(String estado) { this.estado = estado; }
+
+    public Long getBytesFueraDelHeap() { return bytesFueraDelHeap; }
+    public void setBytesFueraDelHeap(Long bytesFueraDelHeap) { this.bytesFueraDelHeap = bytesFueraDelHeap; }
 }
\ No newline at end of file
@@ -2,16 +2,24 @@ package com.ova.platform.markov.model.response;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import java.util.Map;
+
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class TrainModelResponse {
     private boolean exito;
     private String mensaje;
     private int ordenModelo;
-    private int longitudTexto;
+    private long longitudTexto;
     private int vocabularioSize;
     private int estadosCount;
     private long tiempoEntrenamientoMs;
     private String modeloId;
+    // Memoria aproximada del modelo antes y después de compactarlo (null si el motor no la informa)
+    private Long bytesAntesCompactacion;
+    private Long bytesEnMemoria;
+    private Long bytesFueraDelHeap;
+    // Nanosegundos por etapa, sólo si la petición trae debugTimings
+    private Map<String, Long> tiemposNs;
 
     // Constructores
     public TrainModelResponse() {}
@@ -31,8 +39,8 @@ public class TrainModelResponse {
     public int getOrdenModelo() { return ordenModelo; }
     public void setOrdenModelo(int ordenModelo) { this.ordenModelo = ordenModelo; }
 
-    public int getLongitudTexto() { return longitudTexto; }
-    public void setLongitudTexto(int longitudTexto) { this.longitudTexto = longitudTexto; }
+    public long getLongitudTexto() { return longitudTexto; }
+    public void setLongitudTexto(long longitudTexto) { this.longitudTexto = longitudTexto; }
 
     public int getVocabularioSize() { return vocabularioSize; }
     public void setVocabularioSize(int vocabularioSize) { this.vocabularioSize = vocabularioSize; }
@@ -45,4 +53,16 @@ public class TrainModelResponse {
 
     public String getModeloId() { return modeloId; }
     public void setModeloId(String modeloId) { this.modeloId = modeloId; }
+
+    public Long getBytesAntesCompactacion() { return bytesAntesCompactacion; }
+    public void setBytesAntesCompactacion(Long bytesAntesCompactacion) { this.bytesAntesCompactacion = bytesAntesCompactacion; }
+
+    public Long getBytesEnMemoria() { return bytesEnMemoria; }
+    public void setBytesEnMemoria(Long bytesEnMemoria) { this.bytesEnMemoria = bytesEnMemoria; }
+
+    public Long getBytesFueraDelHeap() { return bytesFueraDelHeap; }
+    public void setBytesFueraDelHeap(Long bytesFueraDelHeap) { this.bytesFueraDelHeap = bytesFueraDelHeap; }
+
+    public Map<String, Long> getTiemposNs() { return tiemposNs; }
+    public void setTiemposNs(Map<String, Long> tiemposNs) { this.tiemposNs = tiemposNs; }
 }
\ No newline at end of file
@@ -2,9 +2,13 @@ package com.ova.platform.markov.repository;
 
 import com.ova.platform.markov.model.entity.MarkovModel;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,4 +23,10 @@ public interface MarkovModelRepository extends JpaRepository<MarkovModel, Long>
     List<MarkovModel> findActiveModels();
 
     boolean existsByNombre(String nombre);
+
+    // No pasa por @PreUpdate: usar un modelo no cambia su fecha de actualización
+    @Modifying
+    @Transactional
+    @Query("UPDATE MarkovModel m SET m.fechaUltimoUso = :fecha WHERE m.id = :id")
+    int updateLastUsed(@Param("id") Long id, @Param("fecha") LocalDateTime fecha);
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.ova.platform.markov.repository;
+
+import com.ova.platform.markov.model.entity.TrainingDocument;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface TrainingDocumentRepository extends JpaRepository<TrainingDocument, Long> {
+
+    // En el orden en que se añadieron
+    List<TrainingDocument> findByModeloIdOrderByIdAsc(Long modeloId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TrainingDocument d WHERE d.modeloId = :modeloId")
+    int deleteByModeloId(@Param("modeloId") Long modeloId);
+}
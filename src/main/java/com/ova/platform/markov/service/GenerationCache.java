@@ -0,0 +1,165 @@
+package com.ova.platform.markov.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché LRU en memoria de los textos generados con semilla, delante de
+ * {@link MarkovService#generarTexto}. Con la misma semilla el motor da siempre el
+ * mismo texto, así que una petición repetida se responde sin llegar al motor.
+ *
+ * <p>La clave es (modelo, versión, textoInicio, longitud, orden, semilla). La versión de
+ * cada modelo sube con {@link #invalidate}, que se llama después de publicar un
+ * modelo reentrenado: una generación que empezó con el modelo anterior captura la
+ * versión vieja y su resultado ya no se guarda. El tamaño está acotado por
+ * {@code markov.cache.max-bytes} (estimación de lo que ocupan textos y claves).</p>
+ *
+ * <p>Métricas en {@code /actuator/metrics}: {@code markov.generation.cache.gets}
+ * (tag {@code result} hit/miss), {@code .evictions}, {@code .invalidations},
+ * {@code .size} y {@code .bytes}.</p>
+ */
+@Service
+public class GenerationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenerationCache.class);
+
+    // Cabeceras de objetos, referencias y nodo del mapa por entrada
+    private static final int BYTES_POR_ENTRADA = 160;
+
+    private static final String MODELO_POR_DEFECTO = "default";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${markov.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${markov.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    private record Clave(String modelo, long version, String textoInicio, int longitud, int orden, long semilla) {
+    }
+
+    /** Texto generado y su número de palabras. */
+    public record Entrada(String texto, int palabras) {
+    }
+
+    // Orden de acceso: el primero es el menos usado recientemente. Protegido por `this`
+    private final LinkedHashMap<Clave, Entrada> entradas = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Long> versiones = new HashMap<>();
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @PostConstruct
+    void registrarMetricas() {
+        FunctionCounter.builder("markov.generation.cache.gets", hits, LongAdder::sum)
+                .tag("result", "hit").description("Generaciones servidas desde la caché").register(meterRegistry);
+        FunctionCounter.builder("markov.generation.cache.gets", misses, LongAdder::sum)
+                .tag("result", "miss").description("Generaciones con semilla que llegaron al motor").register(meterRegistry);
+        FunctionCounter.builder("markov.generation.cache.evictions", evictions, LongAdder::sum)
+                .description("Entradas desalojadas por el límite de bytes").register(meterRegistry);
+        FunctionCounter.builder("markov.generation.cache.invalidations", invalidations, LongAdder::sum)
+                .description("Entradas descartadas al reentrenar un modelo").register(meterRegistry);
+        Gauge.builder("markov.generation.cache.size", this, GenerationCache::size).register(meterRegistry);
+        Gauge.builder("markov.generation.cache.bytes", this, GenerationCache::bytes)
+                .baseUnit("bytes").register(meterRegistry);
+        logger.info("Caché de generación {} (límite {} bytes)", enabled ? "activada" : "desactivada", maxBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled && maxBytes > 0;
+    }
+
+    /** Nombre del modelo en la caché: el persistido {@code modeloId} o el de /train. */
+    public static String modelo(Long modeloId) {
+        return modeloId != null ? "model-" + modeloId : MODELO_POR_DEFECTO;
+    }
+
+    /** Versión vigente del modelo; se captura antes de resolver el modelo y generar. */
+    public synchronized long version(String modelo) {
+        return versiones.getOrDefault(modelo, 0L);
+    }
+
+    public synchronized Optional<Entrada> get(String modelo, long version, String textoInicio, int longitud,
+                                              int orden, long semilla) {
+        Entrada entrada = entradas.get(new Clave(modelo, version, textoInicio, longitud, orden, semilla));
+        (entrada != null ? hits : misses).increment();
+        return Optional.ofNullable(entrada);
+    }
+
+    /** Guarda el resultado si el modelo no cambió desde que se capturó {@code version}. */
+    public synchronized void put(String modelo, long version, String textoInicio, int longitud, int orden,
+                                 long semilla, Entrada entrada) {
+        if (version != versiones.getOrDefault(modelo, 0L)) return;
+
+        Clave clave = new Clave(modelo, version, textoInicio, longitud, orden, semilla);
+        long peso = peso(clave, entrada);
+        if (peso > maxBytes) return;
+
+        Entrada anterior = entradas.put(clave, entrada);
+        if (anterior != null) bytes -= peso(clave, anterior);
+        bytes += peso;
+
+        Iterator<Map.Entry<Clave, Entrada>> lru = entradas.entrySet().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            Map.Entry<Clave, Entrada> eldest = lru.next();
+            bytes -= peso(eldest.getKey(), eldest.getValue());
+            lru.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Descarta las entradas del modelo y sube su versión. Se llama después de
+     * publicar el modelo nuevo (registro o /train), no antes.
+     */
+    public synchronized void invalidate(String modelo) {
+        versiones.merge(modelo, 1L, Long::sum);
+        int descartadas = 0;
+        Iterator<Map.Entry<Clave, Entrada>> it = entradas.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Clave, Entrada> entry = it.next();
+            if (entry.getKey().modelo().equals(modelo)) {
+                bytes -= peso(entry.getKey(), entry.getValue());
+                it.remove();
+                descartadas++;
+            }
+        }
+        invalidations.add(descartadas);
+        if (descartadas > 0) {
+            logger.debug("Caché de generación: {} entradas descartadas del modelo {}", descartadas, modelo);
+        }
+    }
+
+    public synchronized int size() {
+        return entradas.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    private static long peso(Clave clave, Entrada entrada) {
+        long caracteres = entrada.texto().length() + clave.modelo().length()
+                + (clave.textoInicio() != null ? clave.textoInicio().length() : 0);
+        return BYTES_POR_ENTRADA + 2 * caracteres;
+    }
+}
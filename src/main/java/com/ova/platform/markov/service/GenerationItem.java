@@ -0,0 +1,9 @@
+package com.ova.platform.markov.service;
+
+/**
+ * Elemento de una generación por lotes ({@link MarkovEngine#generateBatch}).
+ * Con la misma semilla y el mismo modelo el resultado es reproducible.
+ * {@code order} va de 1 al orden del modelo.
+ */
+public record GenerationItem(String startText, int length, int order, long seed) {
+}
@@ -0,0 +1,161 @@
+package com.ova.platform.markov.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Motor de Cadenas de Markov. Existen dos implementaciones: la librería nativa
+ * vía JNA ({@link MarkovNativeService}) y el motor en la JVM
+ * ({@link MarkovJavaService}). Se elige con la propiedad {@code markov.engine}.
+ *
+ * <p>Cada entrenamiento produce un {@link MarkovModelHandle} independiente e
+ * inmutable, de modo que pueden convivir varios modelos. Quien crea el handle es
+ * responsable de liberarlo con {@link #freeModel(MarkovModelHandle)}.</p>
+ *
+ * <p>{@link #generateText} es seguro desde varios hilos a la vez sobre el mismo
+ * modelo y no toma locks: cada generación tiene su propio generador aleatorio,
+ * inicializado con la semilla recibida, así que el mismo modelo con la misma
+ * semilla da el mismo texto. Si el modelo ya fue liberado lanza
+ * {@link com.ova.platform.markov.exception.ModelReleasedException}.</p>
+ *
+ * <p>Un modelo de orden {@code n} genera con cualquier orden de 1 a {@code n}
+ * sin reentrenar: el contexto de menos palabras se resuelve sobre los mismos
+ * estados (ver {@link com.ova.platform.markov.engine.MarkovChain}).</p>
+ */
+public interface MarkovEngine {
+
+    /** Nombre corto del motor: {@code native} o {@code java}. */
+    String getNombre();
+
+    /**
+     * Entrena un modelo nuevo leyendo el texto por bloques, sin cargarlo
+     * completo en memoria.
+     */
+    MarkovModelHandle trainModel(int order, Reader trainingText) throws IOException;
+
+    /**
+     * Igual que {@link #trainModel(int, Reader)} registrando en {@code timings}
+     * el tiempo de cada etapa del motor. Por defecto todo el entrenamiento es
+     * una sola etapa {@code motor}.
+     */
+    default MarkovModelHandle trainModel(int order, Reader trainingText, StageTimings timings) throws IOException {
+        long start = timings.now();
+        MarkovModelHandle model = trainModel(order, trainingText);
+        timings.since("motor", start);
+        return model;
+    }
+
+    default MarkovModelHandle trainModel(int order, String trainingText) {
+        try {
+            return trainModel(order, new StringReader(trainingText));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Entrena un modelo nuevo con varios documentos, en orden: la ventana de
+     * contexto no pasa de uno al siguiente. Da las mismas frecuencias que
+     * entrenar el primero y seguir con {@link #continueTraining} para cada uno
+     * de los demás, y es como se reconstruye un modelo ampliado por partes.
+     */
+    MarkovModelHandle trainModel(int order, List<String> documents);
+
+    /**
+     * Devuelve un modelo nuevo con las frecuencias de {@code model} más las del
+     * texto nuevo, sin reprocesar el corpus original. {@code model} no cambia y
+     * sigue perteneciendo a quien lo creó.
+     *
+     * @throws IllegalArgumentException si {@code model} no tiene
+     *         {@link MarkovModelHandle#hasExactCounts() recuentos exactos}
+     */
+    MarkovModelHandle continueTraining(MarkovModelHandle model, Reader trainingText) throws IOException;
+
+    /**
+     * @param order contexto en palabras, de 1 a {@link MarkovModelHandle#getOrden()}
+     */
+    String generateText(MarkovModelHandle model, int length, String startText, int order, long seed);
+
+    /**
+     * Igual que {@link #generateText(MarkovModelHandle, int, String, int, long)}
+     * registrando en {@code timings} el tiempo de cada etapa del motor (búsqueda
+     * del estado inicial, muestreo y, en el motor JNA, el marshalling y la
+     * transición a código nativo). Por defecto es una sola etapa {@code motor}.
+     */
+    default String generateText(MarkovModelHandle model, int length, String startText, int order, long seed,
+                                StageTimings timings) {
+        long start = timings.now();
+        String text = generateText(model, length, startText, order, seed);
+        timings.since("motor", start);
+        return text;
+    }
+
+    /** Generación con el orden del modelo. */
+    default String generateText(MarkovModelHandle model, int length, String startText, long seed) {
+        return generateText(model, length, startText, model.getOrden(), seed);
+    }
+
+    /** Generación con el orden del modelo y una semilla aleatoria. */
+    default String generateText(MarkovModelHandle model, int length, String startText) {
+        return generateText(model, length, startText, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Generación por palabras: cada palabra se entrega a {@code onWord} en cuanto
+     * está disponible y la generación se detiene si devuelve false. Por defecto
+     * genera el texto completo y luego lo entrega palabra a palabra; los motores
+     * que muestrean de forma incremental lo sobrescriben.
+     *
+     * @return palabras entregadas
+     */
+    default int generateText(MarkovModelHandle model, int length, String startText, int order, long seed,
+                             Predicate<String> onWord) {
+        String text = generateText(model, length, startText, order, seed);
+        int emitted = 0;
+        for (String word : text.trim().split("\\s+")) {
+            if (word.isEmpty()) continue;
+            emitted++;
+            if (!onWord.test(word)) break;
+        }
+        return emitted;
+    }
+
+    /**
+     * Genera todos los elementos del lote sobre el mismo modelo en una sola
+     * pasada por el motor (una única llamada nativa en el motor JNA). Cada
+     * elemento usa su propio orden y su propia semilla.
+     *
+     * @return el texto de cada elemento, en el mismo orden
+     */
+    List<String> generateBatch(MarkovModelHandle model, List<GenerationItem> items);
+
+    /**
+     * Suelta la referencia del dueño. La memoria se libera cuando terminan las
+     * generaciones que todavía usan el modelo.
+     */
+    void freeModel(MarkovModelHandle model);
+
+    /**
+     * Si el motor puede volcar sus modelos a un snapshot binario y cargarlos de
+     * vuelta sin reentrenar ({@link #saveSnapshot}/{@link #loadSnapshot}).
+     */
+    default boolean supportsSnapshots() {
+        return false;
+    }
+
+    default void saveSnapshot(MarkovModelHandle model, Path file) throws IOException {
+        throw new UnsupportedOperationException("El motor " + getNombre() + " no soporta snapshots");
+    }
+
+    default MarkovModelHandle loadSnapshot(Path file) throws IOException {
+        throw new UnsupportedOperationException("El motor " + getNombre() + " no soporta snapshots");
+    }
+
+    String getLibraryStatus();
+}
@@ -0,0 +1,341 @@
+package com.ova.platform.markov.service;
+
+import com.ova.platform.markov.engine.ChainBuilder;
+import com.ova.platform.markov.engine.ChainCompactor;
+import com.ova.platform.markov.engine.ChainSnapshot;
+import com.ova.platform.markov.exception.ModelReleasedException;
+import com.ova.platform.markov.engine.MarkovChain;
+import com.ova.platform.markov.engine.ParallelTrainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+/**
+ * Motor Markov implementado íntegramente en la JVM. No depende de
+ * {@code libmarkovova.so} y evita el coste de marshalling de JNA.
+ *
+ * <p>Con {@code markov.java.off-heap} (por defecto) las tablas y el vocabulario
+ * de cada modelo residente viven en buffers directos o en el snapshot mapeado, de
+ * modo que los modelos grandes no agrandan el heap ni alargan las pausas del GC.
+ * Esa memoria se devuelve al liberar el último uso del modelo reemplazado o
+ * desalojado, sin esperar a un GC; mientras tanto los buffers directos cuentan
+ * contra {@code -XX:MaxDirectMemorySize}.</p>
+ */
+@Service
+public class MarkovJavaService implements MarkovEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarkovJavaService.class);
+
+    @Value("${markov.snapshots.mmap:true}")
+    private boolean mappedSnapshots;
+
+    @Autowired
+    private ForkJoinPool markovTrainingPool;
+
+    @Value("${markov.training.shard-chars:1048576}")
+    private int shardChars;
+
+    @Value("${markov.compaction.enabled:true}")
+    private boolean compactionEnabled;
+
+    @Value("${markov.compaction.min-count:1}")
+    private int compactionMinCount;
+
+    @Value("${markov.compaction.count-bits:0}")
+    private int compactionCountBits;
+
+    @Value("${markov.compaction.max-bytes:0}")
+    private long compactionMaxBytes;
+
+    @Value("${markov.java.off-heap:true}")
+    private boolean offHeap;
+
+    static final class JavaModelHandle extends ReferenceCountedHandle {
+        private final MarkovChain chain;
+        private final long caracteres;
+        private final long bytesAntesCompactacion;
+        private final long bytes;
+        private final long bytesFueraDelHeap;
+
+        JavaModelHandle(MarkovChain chain, long caracteres) {
+            this(chain, caracteres, chain.memoryBytes());
+        }
+
+        JavaModelHandle(MarkovChain chain, long caracteres, long bytesAntesCompactacion) {
+            this.chain = chain;
+            this.caracteres = caracteres;
+            this.bytesAntesCompactacion = bytesAntesCompactacion;
+            this.bytes = chain.memoryBytes();
+            this.bytesFueraDelHeap = chain.offHeapBytes();
+        }
+
+        MarkovChain chain() {
+            return chain;
+        }
+
+        @Override
+        public String getMotor() {
+            return "java";
+        }
+
+        @Override
+        protected void dispose() {
+            // Ya no hay generaciones en curso: los buffers directos y el mapeo se devuelven sin esperar al GC
+            chain.free();
+        }
+
+        @Override
+        public int getOrden() {
+            return chain.order();
+        }
+
+        @Override
+        public long getCaracteresEntrenados() {
+            return caracteres;
+        }
+
+        @Override
+        public boolean hasExactCounts() {
+            return chain.hasExactCounts();
+        }
+
+        @Override
+        public int getVocabularioSize() {
+            return chain.vocabularySize();
+        }
+
+        @Override
+        public int getEstadosCount() {
+            return chain.stateCount();
+        }
+
+        @Override
+        public long getBytesEnMemoria() {
+            return bytes;
+        }
+
+        @Override
+        public long getBytesAntesCompactacion() {
+            return bytesAntesCompactacion;
+        }
+
+        @Override
+        public long getBytesFueraDelHeap() {
+            return bytesFueraDelHeap;
+        }
+    }
+
+    @Override
+    public String getNombre() {
+        return "java";
+    }
+
+    @Override
+    public MarkovModelHandle trainModel(int order, Reader trainingText) throws IOException {
+        return trainModel(order, trainingText, StageTimings.NONE);
+    }
+
+    // Etapas: conteo de n-gramas (incluye leer y tokenizar el texto), compilación de la cadena y compactación
+    @Override
+    public MarkovModelHandle trainModel(int order, Reader trainingText, StageTimings timings) throws IOException {
+        long t = timings.now();
+        ChainBuilder builder = new ChainBuilder(order);
+        long caracteres = addText(builder, trainingText);
+        t = timings.since("conteo", t);
+        MarkovChain chain = builder.compile();
+        t = timings.since("compilacion", t);
+
+        logger.info("Modelo Markov (motor Java) entrenado con texto de longitud: {} - Orden: {}, Vocabulario: {}, Estados: {}",
+                caracteres, order, chain.vocabularySize(), chain.stateCount());
+        JavaModelHandle handle = compactar(chain, caracteres);
+        timings.since("compactacion", t);
+        return handle;
+    }
+
+    // Un solo builder: cada addText es un documento aparte y se compila y compacta una vez al final
+    @Override
+    public MarkovModelHandle trainModel(int order, List<String> documents) {
+        ChainBuilder builder = new ChainBuilder(order);
+        long caracteres = 0;
+        try {
+            for (String document : documents) {
+                caracteres += addText(builder, new StringReader(document));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        MarkovChain chain = builder.compile();
+
+        logger.info("Modelo Markov (motor Java) entrenado con {} documentos ({} caracteres) - Orden: {}, Vocabulario: {}, Estados: {}",
+                documents.size(), caracteres, order, chain.vocabularySize(), chain.stateCount());
+        return compactar(chain, caracteres);
+    }
+
+    // Compacta la cadena recién compilada según markov.compaction.*; el handle recuerda los bytes previos
+    private JavaModelHandle compactar(MarkovChain chain, long caracteres) {
+        long antes = chain.memoryBytes();
+        ChainCompactor compactor = new ChainCompactor(compactionMinCount, compactionCountBits, compactionMaxBytes);
+        if (!compactionEnabled || !compactor.isLossy()) {
+            return new JavaModelHandle(residente(chain), caracteres, antes);
+        }
+
+        MarkovChain compacta = compactor.compact(chain);
+        JavaModelHandle handle = new JavaModelHandle(residente(compacta), caracteres, antes);
+        logger.info("Modelo compactado (motor Java) - Transiciones: {} -> {}, Bytes: {} -> {}",
+                chain.transitionCount(), compacta.transitionCount(), antes, handle.getBytesEnMemoria());
+        if (compactionMaxBytes > 0 && handle.getBytesEnMemoria() > compactionMaxBytes) {
+            logger.warn("El modelo ocupa {} bytes aun conservando sólo el sucesor principal de cada estado (presupuesto {})",
+                    handle.getBytesEnMemoria(), compactionMaxBytes);
+        }
+        return handle;
+    }
+
+    // Con markov.java.off-heap las tablas y el vocabulario pasan a buffers directos: el heap sólo guarda los envoltorios
+    private MarkovChain residente(MarkovChain chain) {
+        return offHeap ? chain.toOffHeap() : chain;
+    }
+
+    // Con un solo hilo se cuenta directamente, sin fragmentos ni fusión
+    private long addText(ChainBuilder builder, Reader trainingText) throws IOException {
+        if (markovTrainingPool.getParallelism() <= 1) {
+            return builder.addText(trainingText);
+        }
+        return new ParallelTrainer(markovTrainingPool, shardChars).addText(builder, trainingText);
+    }
+
+    @Override
+    public MarkovModelHandle continueTraining(MarkovModelHandle model, Reader trainingText) throws IOException {
+        JavaModelHandle base = asJavaHandle(model);
+        if (!base.retain()) {
+            throw new ModelReleasedException("El modelo fue liberado antes de continuar su entrenamiento");
+        }
+        try {
+            ChainBuilder builder = ChainBuilder.from(base.chain());
+            long caracteres = addText(builder, trainingText);
+            MarkovChain chain = builder.compile();
+
+            logger.info("Modelo Markov (motor Java) ampliado con {} caracteres - Vocabulario: {} -> {}, Estados: {} -> {}",
+                    caracteres, base.chain().vocabularySize(), chain.vocabularySize(),
+                    base.chain().stateCount(), chain.stateCount());
+            return compactar(chain, base.getCaracteresEntrenados() + caracteres);
+        } finally {
+            base.release();
+        }
+    }
+
+    @Override
+    public String generateText(MarkovModelHandle model, int length, String startText, int order, long seed) {
+        return generateText(model, length, startText, order, seed, StageTimings.NONE);
+    }
+
+    @Override
+    public String generateText(MarkovModelHandle model, int length, String startText, int order, long seed,
+                               StageTimings timings) {
+        JavaModelHandle handle = asJavaHandle(model);
+        if (!handle.retain()) {
+            throw new ModelReleasedException("El modelo fue liberado antes de generar texto");
+        }
+        try {
+            long[] stageNanos = timings.isEnabled() ? new long[2] : null;
+            String text = handle.chain().generate(length, startText, order, new SplittableRandom(seed), stageNanos);
+            if (stageNanos != null) {
+                timings.add("busquedaEstadoInicial", stageNanos[0]);
+                timings.add("muestreo", stageNanos[1]);
+            }
+            return text;
+        } finally {
+            handle.release();
+        }
+    }
+
+    @Override
+    public int generateText(MarkovModelHandle model, int length, String startText, int order, long seed,
+                            Predicate<String> onWord) {
+        JavaModelHandle handle = asJavaHandle(model);
+        if (!handle.retain()) {
+            throw new ModelReleasedException("El modelo fue liberado antes de generar texto");
+        }
+        try {
+            return handle.chain().generate(length, startText, order, new SplittableRandom(seed), onWord);
+        } finally {
+            handle.release();
+        }
+    }
+
+    @Override
+    public List<String> generateBatch(MarkovModelHandle model, List<GenerationItem> items) {
+        JavaModelHandle handle = asJavaHandle(model);
+        if (!handle.retain()) {
+            throw new ModelReleasedException("El modelo fue liberado antes de generar texto");
+        }
+        try {
+            List<String> texts = new ArrayList<>(items.size());
+            for (GenerationItem item : items) {
+                texts.add(handle.chain().generate(item.length(), item.startText(), item.order(),
+                        new SplittableRandom(item.seed())));
+            }
+            return texts;
+        } finally {
+            handle.release();
+        }
+    }
+
+    @Override
+    public void freeModel(MarkovModelHandle model) {
+        asJavaHandle(model).release();
+    }
+
+    @Override
+    public boolean supportsSnapshots() {
+        return true;
+    }
+
+    @Override
+    public void saveSnapshot(MarkovModelHandle model, Path file) throws IOException {
+        JavaModelHandle handle = asJavaHandle(model);
+        if (!handle.retain()) {
+            throw new ModelReleasedException("El modelo fue liberado antes de guardar su snapshot");
+        }
+        try {
+            ChainSnapshot.write(handle.chain(), handle.getCaracteresEntrenados(), file);
+        } finally {
+            handle.release();
+        }
+    }
+
+    @Override
+    public MarkovModelHandle loadSnapshot(Path file) throws IOException {
+        // Mapeado: las tablas no ocupan heap y las réplicas del host comparten las páginas
+        ChainSnapshot snapshot = mappedSnapshots ? ChainSnapshot.map(file) : ChainSnapshot.read(file);
+        MarkovChain chain = snapshot.isMapped() ? snapshot.chain() : residente(snapshot.chain());
+        logger.debug("Snapshot {} {} - Estados: {}, Transiciones: {}, Bytes fuera del heap: {}", file,
+                snapshot.isMapped() ? "mapeado en memoria" : "leído al heap",
+                chain.stateCount(), chain.transitionCount(), chain.offHeapBytes());
+        return new JavaModelHandle(chain, snapshot.trainedCharacters());
+    }
+
+    @Override
+    public String getLibraryStatus() {
+        return "JAVA";
+    }
+
+    private JavaModelHandle asJavaHandle(MarkovModelHandle model) {
+        if (model instanceof JavaModelHandle javaHandle) {
+            return javaHandle;
+        }
+        throw new IllegalArgumentException("El modelo no pertenece al motor Java: " + model.getMotor());
+    }
+}
@@ -0,0 +1,125 @@
+package com.ova.platform.markov.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas de entrenamiento y generación en {@code /actuator/metrics} (y en
+ * {@code /actuator/prometheus}), etiquetadas con {@code model} (id del modelo
+ * persistido o {@code default} para el de /train), {@code engine} y {@code order}:
+ *
+ * <ul>
+ *   <li>{@code markov.train.duration}: duración de cada entrenamiento.</li>
+ *   <li>{@code markov.train.throughput}: caracteres de entrenamiento por segundo.</li>
+ *   <li>{@code markov.train.errors}: entrenamientos fallidos.</li>
+ *   <li>{@code markov.generate.latency}: latencia de cada generación (tags
+ *       {@code mode} single/stream/batch y {@code source} engine/cache).</li>
+ *   <li>{@code markov.generate.words}: palabras generadas por petición.</li>
+ *   <li>{@code markov.generate.throughput}: palabras (tokens) generadas por segundo.</li>
+ *   <li>{@code markov.generate.errors}: generaciones fallidas.</li>
+ *   <li>{@code markov.native.calls}: tiempo de cada llamada JNA (tag {@code function}).</li>
+ * </ul>
+ *
+ * <p>Los percentiles para alertas salen de los histogramas de los timers que
+ * activa {@code management.metrics.distribution.percentiles-histogram}.</p>
+ */
+@Service
+public class MarkovMetrics {
+
+    /** Valor de {@code model} para el modelo entrenado con /train. */
+    public static final String MODELO_POR_DEFECTO = "default";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, Timer> llamadasNativas = new ConcurrentHashMap<>();
+
+    /** Valor del tag {@code model}: el id persistido o {@value #MODELO_POR_DEFECTO}. */
+    public static String modelo(Long modeloId) {
+        return modeloId != null ? modeloId.toString() : MODELO_POR_DEFECTO;
+    }
+
+    public void entrenamiento(String modelo, MarkovModelHandle handle, long nanos) {
+        entrenamiento(modelo, handle, nanos, handle.getCaracteresEntrenados());
+    }
+
+    /** @param caracteres los del texto de esta llamada (al continuar un entrenamiento, sólo el nuevo) */
+    public void entrenamiento(String modelo, MarkovModelHandle handle, long nanos, long caracteres) {
+        Tags tags = tags(modelo, handle.getMotor(), handle.getOrden());
+        Timer.builder("markov.train.duration")
+                .description("Duración del entrenamiento de un modelo")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("markov.train.throughput")
+                .description("Caracteres de entrenamiento procesados por segundo")
+                .baseUnit("chars.per.second")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(caracteres * 1e9 / Math.max(1, nanos));
+    }
+
+    public void entrenamientoFallido(String modelo, String motor, int orden) {
+        Counter.builder("markov.train.errors")
+                .description("Entrenamientos que terminaron con error")
+                .tags(tags(modelo, motor, orden))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * @param modo   single, stream o batch
+     * @param cache  si el texto salió de {@link GenerationCache} sin llegar al motor
+     */
+    public void generacion(String modelo, String motor, int orden, String modo, boolean cache,
+                           long nanos, long palabras) {
+        Tags tags = tags(modelo, motor, orden).and("mode", modo);
+        Timer.builder("markov.generate.latency")
+                .description("Latencia de generación de texto")
+                .tags(tags.and("source", cache ? "cache" : "engine"))
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("markov.generate.words")
+                .description("Palabras generadas por petición")
+                .baseUnit("words")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(palabras);
+        if (!cache) {
+            DistributionSummary.builder("markov.generate.throughput")
+                    .description("Palabras generadas por segundo en el motor")
+                    .baseUnit("tokens.per.second")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .record(palabras * 1e9 / Math.max(1, nanos));
+        }
+    }
+
+    public void generacionFallida(String modelo, String motor, String modo) {
+        Counter.builder("markov.generate.errors")
+                .description("Generaciones que terminaron con error o sin modelo")
+                .tags(Tags.of("model", modelo, "engine", motor, "mode", modo))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /** Timer de una función de la librería nativa ({@code markov_<función>}). */
+    public Timer llamadaNativa(String funcion) {
+        return llamadasNativas.computeIfAbsent(funcion, f -> Timer.builder("markov.native.calls")
+                .description("Duración de las llamadas JNA a la librería nativa")
+                .tag("function", f)
+                .register(meterRegistry));
+    }
+
+    private static Tags tags(String modelo, String motor, int orden) {
+        return Tags.of("model", modelo, "engine", motor, "order", Integer.toString(orden));
+    }
+}
@@ -0,0 +1,59 @@
+package com.ova.platform.markov.service;
+
+/**
+ * Referencia a un modelo entrenado y residente en un {@link MarkovEngine}.
+ * Un modelo entrenado es inmutable: reentrenar produce un handle nuevo.
+ */
+public interface MarkovModelHandle {
+
+    /** Toma una referencia al modelo; devuelve false si ya fue liberado. */
+    boolean retain();
+
+    /** Suelta una referencia tomada con {@link #retain()} (o la del dueño). */
+    void release();
+
+    /** Nombre del motor que creó el modelo. */
+    String getMotor();
+
+    int getOrden();
+
+    /** Caracteres de texto con los que se entrenó el modelo. */
+    long getCaracteresEntrenados();
+
+    /**
+     * Si las frecuencias son las del texto de entrenamiento. Un modelo compactado
+     * con poda o recuentos reescalados ({@code markov.compaction.*}) devuelve
+     * false y no sirve de base para {@link MarkovEngine#continueTraining}.
+     */
+    default boolean hasExactCounts() {
+        return true;
+    }
+
+    /** Palabras distintas del modelo, o -1 si el motor no lo puede informar. */
+    default int getVocabularioSize() {
+        return -1;
+    }
+
+    /** Estados (n-gramas) del modelo, o -1 si el motor no lo puede informar. */
+    default int getEstadosCount() {
+        return -1;
+    }
+
+    /** Memoria aproximada del modelo en bytes, o -1 si el motor no la puede informar. */
+    default long getBytesEnMemoria() {
+        return -1;
+    }
+
+    /** Memoria aproximada antes de compactarlo tras el entrenamiento (igual si no se compactó). */
+    default long getBytesAntesCompactacion() {
+        return getBytesEnMemoria();
+    }
+
+    /**
+     * Parte de {@link #getBytesEnMemoria()} fuera del heap de la JVM (buffers
+     * directos, snapshots mapeados o memoria de la librería nativa), o -1.
+     */
+    default long getBytesFueraDelHeap() {
+        return -1;
+    }
+}
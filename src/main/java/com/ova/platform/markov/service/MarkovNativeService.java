@@ -1,17 +1,35 @@
 package com.ova.platform.markov.service;
 
-import com.sun.jna.Library;
+import com.ova.platform.markov.engine.ChainCompactor;
+import com.ova.platform.markov.engine.TextShards;
+import com.ova.platform.markov.engine.Tokenizer;
+import com.ova.platform.markov.exception.ModelReleasedException;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
 import com.sun.jna.Pointer;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 
 @Service
-public class MarkovNativeService {
+public class MarkovNativeService implements MarkovEngine {
 
     private static final Logger logger = LoggerFactory.getLogger(MarkovNativeService.class);
 
@@ -28,54 +46,176 @@ public class MarkovNativeService {
     @Value("${markov.native.debug-mode:true}")
     private boolean debugMode;
 
-    private boolean modeloInicializado = false;
-    private int ordenModeloActual = -1;
+    @Autowired
+    private ForkJoinPool markovTrainingPool;
+
+    // Tiempo de cada llamada JNA en markov.native.calls
+    @Autowired
+    private MarkovMetrics metrics;
+
+    @Value("${markov.training.shard-chars:1048576}")
+    private int shardChars;
+
+    @Value("${markov.compaction.enabled:true}")
+    private boolean compactionEnabled;
+
+    @Value("${markov.compaction.min-count:1}")
+    private int compactionMinCount;
+
+    @Value("${markov.compaction.count-bits:0}")
+    private int compactionCountBits;
+
+    @Value("${markov.compaction.max-bytes:0}")
+    private long compactionMaxBytes;
+
+
+    // Caracteres por fragmento enviado a markov_train_chunk
+    private static final int TRAIN_CHUNK_CHARS = 64 * 1024;
+
+    // Buffer de salida inicial de cada hilo; sólo crece si un único texto no cabe
+    private static final int OUTPUT_BUFFER_BYTES = 256 * 1024;
+
+    private static final String MODELO_NO_ENTRENADO = "Modelo no entrenado. Entrene el modelo primero.";
+
+    /**
+     * Funciones de la librería con mapeo directo de JNA ({@link Native#register}):
+     * llamadas JNI sin el proxy reflexivo de {@code Library}.
+     *
+     * <p>La librería no devuelve memoria propia: el texto generado se escribe en un
+     * {@link ByteBuffer} directo del llamador. Los modelos son lo único que reserva
+     * y se liberan explícitamente con {@code markov_free_model}.</p>
+     */
+    static final class MarkovLibrary {
+        static native Pointer markov_create_model(int order);
+        static native Pointer markov_clone_model(Pointer model);
+        static native void markov_train_chunk(Pointer model, byte[] chunk, int length);
+        static native void markov_train_finish(Pointer model);
+        static native int markov_merge_model(Pointer target, Pointer source);
+        static native int markov_state_count(Pointer model);
+        static native long markov_model_bytes(Pointer model);
+        static native long markov_compact_model(Pointer model, int minCount, int countBits, long maxBytes);
+        static native int markov_generate_into(Pointer model, int length, byte[] start, int order, long seed,
+                                               ByteBuffer out, int outCapacity);
+        static native int markov_generate_timed(Pointer model, int length, byte[] start, int order, long seed,
+                                                ByteBuffer out, int outCapacity, long[] stageNanos);
+        static native int markov_generate_batch(Pointer model, int count, int[] lengths, int[] orders, byte[] starts,
+                                                long[] seeds, ByteBuffer out, int outCapacity, int[] outOffsets,
+                                                int[] outLengths);
+        static native void markov_free_model(Pointer model);
+
+        private MarkovLibrary() {
+        }
+    }
 
+    // Buffer directo por hilo: la librería escribe en él y se decodifica sin copias intermedias
+    private final ThreadLocal<ByteBuffer> outputBuffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(OUTPUT_BUFFER_BYTES));
+
+    /**
+     * Handle de un modelo nativo; {@code pointer} es null en modo simulación.
+     * {@code markov_free_model} se invoca al soltar la última referencia.
+     */
+    final class NativeModelHandle extends ReferenceCountedHandle {
+        private final int orden;
+        private final Pointer pointer;
+        private final long caracteres;
+        private final int estados;
+        private final long bytesAntesCompactacion;
+        private final long bytes;
+        private final boolean recuentosExactos;
+
+        NativeModelHandle(int orden, Pointer pointer, long caracteres, int estados,
+                          long bytesAntesCompactacion, long bytes) {
+            this(orden, pointer, caracteres, estados, bytesAntesCompactacion, bytes, true);
+        }
 
-    public interface MarkovLibrary extends Library {
-        Pointer markov_create_model(int order);
-        void markov_train_model(Pointer model, String text);
-        String markov_generate_text(Pointer model, int length, String start);
-        void markov_free_model(Pointer model);
-    }
+        NativeModelHandle(int orden, Pointer pointer, long caracteres, int estados,
+                          long bytesAntesCompactacion, long bytes, boolean recuentosExactos) {
+            this.orden = orden;
+            this.pointer = pointer;
+            this.caracteres = caracteres;
+            this.estados = estados;
+            this.bytesAntesCompactacion = bytesAntesCompactacion;
+            this.bytes = bytes;
+            this.recuentosExactos = recuentosExactos;
+        }
 
-    private MarkovLibrary nativeLibrary;
-    private Pointer model;
-    private boolean libraryLoaded = false;
+        @Override
+        protected void dispose() {
+            if (pointer != null) {
+                markov_free_model(pointer);
+                logger.debug("Modelo Markov nativo liberado (orden {})", orden);
+            }
+        }
+
+        @Override
+        public String getMotor() {
+            return "native";
+        }
+
+        @Override
+        public int getOrden() {
+            return orden;
+        }
+
+        @Override
+        public long getCaracteresEntrenados() {
+            return caracteres;
+        }
+
+        @Override
+        public boolean hasExactCounts() {
+            return recuentosExactos;
+        }
+
+        @Override
+        public int getEstadosCount() {
+            return estados;
+        }
+
+        @Override
+        public long getBytesEnMemoria() {
+            return bytes;
+        }
 
-    public MarkovNativeService() {
-        loadNativeLibrary();
+        @Override
+        public long getBytesAntesCompactacion() {
+            return bytesAntesCompactacion;
+        }
+
+        // El modelo entero vive en memoria de la librería, fuera del heap
+        @Override
+        public long getBytesFueraDelHeap() {
+            return bytes;
+        }
     }
 
-    private void loadNativeLibrary() {
+    private boolean libraryLoaded = false;
+
+    // Se carga tras la inyección de las propiedades @Value (en el constructor aún son null)
+    @PostConstruct
+    void loadNativeLibrary() {
         try {
             if (debugMode) {
                 logger.info("Buscando librería nativa en: {}", libraryPath);
             }
 
+            // JNA abre la misma librería que se encontró (por ruta o, si no, por nombre)
+            NativeLibrary library;
             File libraryFile = new File(libraryPath);
             if (libraryFile.exists()) {
-                System.load(libraryFile.getAbsolutePath());
-                libraryLoaded = true;
+                library = NativeLibrary.getInstance(libraryFile.getAbsolutePath());
                 logger.info("✅ Librería nativa Markov cargada: {}", libraryPath);
             } else {
                 logger.warn("⚠️  Librería nativa no encontrada en: {}", libraryPath);
-
-
-                try {
-                    System.loadLibrary(libraryName);
-                    libraryLoaded = true;
-                    logger.info("✅ Librería nativa cargada por nombre: {}", libraryName);
-                } catch (UnsatisfiedLinkError e) {
-                    logger.warn("❌ No se pudo cargar la librería nativa. Modo simulación activado.");
-                }
+                library = NativeLibrary.getInstance(libraryName);
+                logger.info("✅ Librería nativa cargada por nombre: {}", libraryName);
             }
 
-            // ✅ CORRECCIÓN: Crear la instancia después de cargar la librería
-            if (libraryLoaded) {
-                nativeLibrary = Native.load(libraryName, MarkovLibrary.class);
-                logger.info("✅ Interfaz JNA inicializada para: {}", libraryName);
-            }
+            // Falla aquí, y no en la primera petición, si a la librería le falta alguna función
+            Native.register(MarkovLibrary.class, library);
+            libraryLoaded = true;
+            logger.info("✅ Funciones nativas registradas (mapeo directo) desde: {}", library.getFile());
 
         } catch (UnsatisfiedLinkError e) {
             logger.warn("❌ Error cargando librería nativa. Modo simulación: {}", e.getMessage());
@@ -84,70 +224,331 @@ public class MarkovNativeService {
         }
     }
 
-    public void initializeModel(int order) {
-        if (libraryLoaded && nativeLibrary != null) {
+    @Override
+    public String getNombre() {
+        return "native";
+    }
+
+    @Override
+    public MarkovModelHandle trainModel(int order, Reader trainingText) throws IOException {
+        return trainModel(order, trainingText, StageTimings.NONE);
+    }
+
+    /**
+     * Etapas: {@code conteoNativo} ({@code markov_train_chunk}; en paralelo, la
+     * suma de todos los hilos), {@code fusion} ({@code markov_merge_model}),
+     * {@code finalizacion} ({@code markov_train_finish}) y {@code compactacion}.
+     */
+    @Override
+    public MarkovModelHandle trainModel(int order, Reader trainingText, StageTimings timings) throws IOException {
+        if (!isNativeLibraryLoaded()) {
+            long caracteres = trainingText.skip(Long.MAX_VALUE);
+            logger.info("Modo simulación: Modelo entrenado con texto de {} caracteres (orden {})", caracteres, order);
+            return new NativeModelHandle(order, null, caracteres, -1, -1, -1);
+        }
+
+        Pointer model = MarkovLibrary.markov_create_model(order);
+        if (model == null) {
+            throw new IllegalStateException("La librería nativa no pudo crear el modelo de orden " + order);
+        }
+        try {
+            long caracteres = train(model, order, trainingText, timings);
+            nativa("train_finish", "finalizacion", timings, () -> MarkovLibrary.markov_train_finish(model));
+            int estados = MarkovLibrary.markov_state_count(model);
+            logger.info("Modelo Markov entrenado con texto de longitud: {} (orden {}, estados {})", caracteres, order, estados);
+            return compactar(order, model, caracteres, estados, timings);
+        } catch (IOException | RuntimeException e) {
+            markov_free_model(model);
+            throw e;
+        }
+    }
+
+    // markov_train_finish cierra cada documento (reinicia la ventana); se compacta una vez al final
+    @Override
+    public MarkovModelHandle trainModel(int order, List<String> documents) {
+        if (!isNativeLibraryLoaded()) {
+            long caracteres = documents.stream().mapToLong(String::length).sum();
+            logger.info("Modo simulación: Modelo entrenado con {} documentos ({} caracteres, orden {})",
+                    documents.size(), caracteres, order);
+            return new NativeModelHandle(order, null, caracteres, -1, -1, -1);
+        }
+
+        Pointer model = MarkovLibrary.markov_create_model(order);
+        if (model == null) {
+            throw new IllegalStateException("La librería nativa no pudo crear el modelo de orden " + order);
+        }
+        try {
+            long caracteres = 0;
+            for (String document : documents) {
+                caracteres += train(model, order, new StringReader(document), StageTimings.NONE);
+                metrics.llamadaNativa("train_finish").record(() -> MarkovLibrary.markov_train_finish(model));
+            }
+            int estados = MarkovLibrary.markov_state_count(model);
+            logger.info("Modelo Markov entrenado con {} documentos ({} caracteres, orden {}, estados {})",
+                    documents.size(), caracteres, order, estados);
+            return compactar(order, model, caracteres, estados, StageTimings.NONE);
+        } catch (IOException e) {
+            markov_free_model(model);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            markov_free_model(model);
+            throw e;
+        }
+    }
+
+    @Override
+    public MarkovModelHandle continueTraining(MarkovModelHandle handle, Reader trainingText) throws IOException {
+        NativeModelHandle base = asNativeHandle(handle);
+        if (base.pointer == null) {
+            long caracteres = trainingText.skip(Long.MAX_VALUE);
+            logger.info("Modo simulación: Modelo ampliado con texto de {} caracteres", caracteres);
+            return new NativeModelHandle(base.orden, null, base.caracteres + caracteres, -1, -1, -1);
+        }
+
+        if (!base.hasExactCounts()) {
+            throw new IllegalArgumentException("El modelo se compactó con pérdida de recuentos: hay que reentrenar");
+        }
+
+        // Se entrena una copia: el modelo original puede estar generando texto en otros hilos
+        if (!base.retain()) {
+            throw new ModelReleasedException("El modelo nativo fue liberado antes de continuar su entrenamiento");
+        }
+        Pointer model;
+        try {
+            model = metrics.llamadaNativa("clone_model").record(() -> MarkovLibrary.markov_clone_model(base.pointer));
+        } finally {
+            base.release();
+        }
+        if (model == null) {
+            throw new IllegalStateException("La librería nativa no pudo copiar el modelo");
+        }
+
+        try {
+            long caracteres = train(model, base.orden, trainingText, StageTimings.NONE);
+            metrics.llamadaNativa("train_finish").record(() -> MarkovLibrary.markov_train_finish(model));
+            int estados = MarkovLibrary.markov_state_count(model);
+            logger.info("Modelo Markov ampliado con {} caracteres (estados {} -> {})", caracteres, base.estados, estados);
+            return compactar(base.orden, model, base.caracteres + caracteres, estados, StageTimings.NONE);
+        } catch (IOException | RuntimeException e) {
+            markov_free_model(model);
+            throw e;
+        }
+    }
+
+    /**
+     * Compacta el modelo recién entrenado según {@code markov.compaction.*}. Aun
+     * sin poda ni recuentos reducidos, empaquetar palabras y sucesores en bloques
+     * contiguos ahorra las reservas por estado y por palabra; el resultado ya no
+     * se entrena en el sitio (continueTraining trabaja sobre una copia). Con poda
+     * o recuentos reducidos configurados el modelo se marca sin recuentos exactos
+     * aunque la librería no llegue a descartar nada: no se puede preguntar.
+     */
+    private NativeModelHandle compactar(int orden, Pointer model, long caracteres, int estados, StageTimings timings) {
+        long antes = MarkovLibrary.markov_model_bytes(model);
+        if (!compactionEnabled) {
+            return new NativeModelHandle(orden, model, caracteres, estados, antes, antes);
+        }
+
+        int countBits = ChainCompactor.checkCountBits(compactionCountBits);
+        boolean exactos = !new ChainCompactor(compactionMinCount, countBits, compactionMaxBytes).isLossy();
+        long despues = nativa("compact_model", "compactacion", timings, () -> MarkovLibrary.markov_compact_model(model,
+                Math.max(1, compactionMinCount), countBits, compactionMaxBytes));
+        if (despues < 0) {
+            // Sin memoria para empaquetarlo: el modelo sigue siendo válido, sólo sin compactar
+            despues = MarkovLibrary.markov_model_bytes(model);
+            logger.warn("⚠️  No se pudo empaquetar el modelo nativo; ocupa {} bytes", despues);
+        }
+        logger.info("Modelo compactado (motor nativo) - Bytes: {} -> {}", antes, despues);
+        if (compactionMaxBytes > 0 && despues > compactionMaxBytes) {
+            logger.warn("El modelo ocupa {} bytes aun conservando sólo el sucesor principal de cada estado (presupuesto {})",
+                    despues, compactionMaxBytes);
+        }
+        return new NativeModelHandle(orden, model, caracteres, estados, antes, despues, exactos);
+    }
+
+    // Con un solo hilo el texto va directo al modelo, sin modelos por fragmento ni fusión
+    private long train(Pointer model, int order, Reader trainingText, StageTimings timings) throws IOException {
+        if (markovTrainingPool.getParallelism() <= 1) {
+            return trainChunks(model, trainingText, timings);
+        }
+        return trainShards(model, order, trainingText, timings);
+    }
+
+    // Llamada JNA medida en markov.native.calls y, si la petición pide tiempos, como etapa
+    private <T> T nativa(String funcion, String etapa, StageTimings timings, Supplier<T> call) {
+        long start = timings.now();
+        T result = metrics.llamadaNativa(funcion).record(call);
+        timings.since(etapa, start);
+        return result;
+    }
+
+    private void nativa(String funcion, String etapa, StageTimings timings, Runnable call) {
+        long start = timings.now();
+        metrics.llamadaNativa(funcion).record(call);
+        timings.since(etapa, start);
+    }
+
+    /**
+     * Entrenamiento en paralelo sobre el pool fork/join: cada fragmento del texto
+     * ({@link TextShards}) se entrena en un modelo propio, precedido de las
+     * últimas {@code order} palabras del anterior, y los modelos se funden en
+     * orden con {@code markov_merge_model}. El resultado es idéntico a entrenar el
+     * texto entero en un hilo.
+     */
+    private long trainShards(Pointer model, int order, Reader trainingText, StageTimings timings) throws IOException {
+        TextShards shards = new TextShards(trainingText, shardChars);
+        String context = "";
+        List<String> round;
+        while (!(round = shards.next(markovTrainingPool.getParallelism())).isEmpty()) {
+            List<ForkJoinTask<Pointer>> tasks = new ArrayList<>(round.size());
+            int next = 0;
+            RuntimeException failure = null;
             try {
-                // ✅ SOLO inicializar si es diferente al orden actual
-                if (modeloInicializado && ordenModeloActual == order) {
-                    logger.debug("Modelo ya inicializado con orden {}. Saltando inicialización.", order);
-                    return;
+                for (String shard : round) {
+                    String prefix = context;
+                    tasks.add(markovTrainingPool.submit(() -> trainShard(order, prefix, shard, timings)));
+                    context = lastWords(prefix, shard, order);
                 }
 
-                // Liberar modelo anterior si existe
-                if (model != null) {
-                    markov_free_model(model);
+                // Se funden en orden; los modelos de fragmento se liberan aunque algo falle
+                while (next < tasks.size()) {
+                    ForkJoinTask<Pointer> task = tasks.get(next++);
+                    Pointer shardModel;
+                    try {
+                        shardModel = task.join();
+                    } catch (RuntimeException e) {
+                        failure = failure != null ? failure : e;
+                        continue;
+                    }
+                    try {
+                        if (failure == null && nativa("merge_model", "fusion", timings,
+                                () -> MarkovLibrary.markov_merge_model(model, shardModel)) == 0) {
+                            failure = new IllegalStateException("La librería nativa no pudo fundir un fragmento del entrenamiento");
+                        }
+                    } finally {
+                        MarkovLibrary.markov_free_model(shardModel);
+                    }
                 }
-
-                // Crear nuevo modelo
-                model = nativeLibrary.markov_create_model(order);
-                ordenModeloActual = order;
-                modeloInicializado = true;
-
-                logger.info("Modelo Markov inicializado con orden: {}", order);
-            } catch (Exception e) {
-                logger.error("Error inicializando modelo Markov nativo", e);
-                modeloInicializado = false;
+            } finally {
+                // Una excepción a medias (al lanzar tareas o al fundir) deja fragmentos sin recoger
+                freeShards(tasks, next);
+            }
+            if (failure != null) {
+                throw failure;
             }
-        } else {
-            logger.info("Modo simulación: Modelo Markov inicializado (orden {})", order);
-            modeloInicializado = true;
-            ordenModeloActual = order;
         }
+        return shards.charactersRead();
     }
 
-    public void trainModel(String trainingText) {
-        if (libraryLoaded && model != null && nativeLibrary != null && modeloInicializado) {
+    // Cancela las tareas desde `from` que no han empezado y libera los modelos de las que terminaron
+    private static void freeShards(List<ForkJoinTask<Pointer>> tasks, int from) {
+        for (int i = from; i < tasks.size(); i++) {
+            ForkJoinTask<Pointer> task = tasks.get(i);
+            task.cancel(false);
             try {
-                nativeLibrary.markov_train_model(model, trainingText);
-                logger.info("Modelo Markov entrenado con texto de longitud: {}", trainingText.length());
-            } catch (Exception e) {
-                logger.error("Error entrenando modelo Markov", e);
+                MarkovLibrary.markov_free_model(task.join());
+            } catch (RuntimeException e) {
+                // Cancelada o fallida: trainShard ya liberó su modelo
             }
-        } else if (modeloInicializado) {
-            logger.info("Modo simulación: Modelo entrenado con texto de {} caracteres", trainingText.length());
-        } else {
-            logger.warn("Intento de entrenar modelo no inicializado");
         }
     }
 
-    public String generateText(int length, String startText) {
-        // ✅ VERIFICAR que el modelo esté listo
-        if (!modeloInicializado) {
-            logger.warn("Intento de generar texto con modelo no inicializado");
-            return "Error: Modelo no inicializado. Entrene un modelo primero.";
+    private Pointer trainShard(int order, String prefix, String shard, StageTimings timings) {
+        Pointer shardModel = MarkovLibrary.markov_create_model(order);
+        if (shardModel == null) {
+            throw new IllegalStateException("La librería nativa no pudo crear el modelo de un fragmento");
+        }
+        try {
+            // El espacio final cierra la última palabra del fragmento
+            byte[] bytes = (prefix + " " + shard + " ").getBytes(StandardCharsets.UTF_8);
+            trainChunk(shardModel, bytes, timings);
+            return shardModel;
+        } catch (RuntimeException | Error e) {
+            MarkovLibrary.markov_free_model(shardModel);
+            throw e;
+        }
+    }
+
+    // Últimas `count` palabras de prefix + shard, para el solape con el siguiente fragmento
+    private static String lastWords(String prefix, String shard, int count) {
+        int found = 0;
+        int i = shard.length();
+        while (found < count) {
+            while (i > 0 && Tokenizer.isDelimiter(shard.charAt(i - 1))) i--;
+            if (i == 0) break;
+            while (i > 0 && !Tokenizer.isDelimiter(shard.charAt(i - 1))) i--;
+            found++;
+        }
+        if (found == count) return shard.substring(i);
+        return found == 0 ? lastWords("", prefix, count) : lastWords("", prefix, count - found) + " " + shard;
+    }
+
+    /**
+     * Envía el texto a la librería en fragmentos UTF-8 de tamaño fijo; la librería
+     * conserva las palabras y n-gramas partidos entre fragmentos.
+     */
+    private long trainChunks(Pointer model, Reader trainingText, StageTimings timings) throws IOException {
+        char[] buffer = new char[TRAIN_CHUNK_CHARS];
+        long total = 0;
+        int carry = 0;
+        int read;
+        while ((read = trainingText.read(buffer, carry, buffer.length - carry)) != -1) {
+            total += read;
+            int length = carry + read;
+            // No partir un par sustituto entre dos fragmentos
+            int usable = Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+            byte[] bytes = new String(buffer, 0, usable).getBytes(StandardCharsets.UTF_8);
+            trainChunk(model, bytes, timings);
+            carry = length - usable;
+            if (carry > 0) {
+                buffer[0] = buffer[length - 1];
+            }
+        }
+        if (carry > 0) {
+            byte[] bytes = new String(buffer, 0, carry).getBytes(StandardCharsets.UTF_8);
+            trainChunk(model, bytes, timings);
         }
+        return total;
+    }
+
+    private void trainChunk(Pointer model, byte[] bytes, StageTimings timings) {
+        nativa("train_chunk", "conteoNativo", timings, () -> MarkovLibrary.markov_train_chunk(model, bytes, bytes.length));
+    }
+
+    @Override
+    public String generateText(MarkovModelHandle handle, int length, String startText, int order, long seed) {
+        return generateText(handle, length, startText, order, seed, StageTimings.NONE);
+    }
 
-        if (libraryLoaded && model != null && nativeLibrary != null) {
+    /**
+     * Etapas: {@code marshallingJna} (texto inicial a UTF-8 y decodificación del
+     * resultado), {@code transicionJna} (la llamada nativa menos lo que mide la
+     * propia librería), {@code busquedaEstadoInicial} y {@code muestreo} (medidas
+     * dentro de {@code markov_generate_timed}).
+     */
+    @Override
+    public String generateText(MarkovModelHandle handle, int length, String startText, int order, long seed,
+                               StageTimings timings) {
+        NativeModelHandle nativeHandle = asNativeHandle(handle);
+        Pointer model = nativeHandle.pointer;
+
+        if (libraryLoaded && model != null) {
+            // La referencia impide que un reentrenamiento libere el modelo en uso
+            if (!nativeHandle.retain()) {
+                throw new ModelReleasedException("El modelo nativo fue liberado antes de generar texto");
+            }
             try {
-                String result = nativeLibrary.markov_generate_text(model, length, startText);
+                String result = generateInto(model, length, startText, order, seed, timings);
                 if (debugMode) {
                     logger.debug("Texto generado ({} chars) desde '{}': {}",
                             result != null ? result.length() : 0, startText, result);
                 }
                 return result;
-            } catch (Exception e) {
-                logger.error("Error generando texto con Markov", e);
-                return "Error en generación: " + e.getMessage();
+            } catch (RuntimeException e) {
+                // Como excepción y no como texto: quien llama no lo toma por una generación válida (ni lo cachea)
+                throw new IllegalStateException("Error en generación: " + e.getMessage(), e);
+            } finally {
+                nativeHandle.release();
             }
         } else {
             logger.info("Usando modo simulación para generación de texto desde: '{}'", startText);
@@ -155,10 +556,164 @@ public class MarkovNativeService {
         }
     }
 
+    /** Genera en el buffer del hilo; si el texto no cabe se repite con el doble de capacidad. */
+    private String generateInto(Pointer model, int length, String startText, int order, long seed,
+                                StageTimings timings) {
+        long t = timings.now();
+        byte[] start = toCString(startText);
+        t = timings.since("marshallingJna", t);
+        ByteBuffer out = outputBuffers.get();
+        while (true) {
+            ByteBuffer target = out;
+            int written;
+            if (timings.isEnabled()) {
+                // Variante que lee el reloj dentro de la librería; la normal no paga esas lecturas
+                long[] stageNanos = new long[2];
+                written = metrics.llamadaNativa("generate_timed").record(() -> MarkovLibrary.markov_generate_timed(
+                        model, length, start, order, seed, target, target.capacity(), stageNanos));
+                long llamada = System.nanoTime() - t;
+                timings.add("transicionJna", llamada - stageNanos[0] - stageNanos[1]);
+                timings.add("busquedaEstadoInicial", stageNanos[0]);
+                timings.add("muestreo", stageNanos[1]);
+                t += llamada;
+            } else {
+                written = metrics.llamadaNativa("generate_into").record(() ->
+                        MarkovLibrary.markov_generate_into(model, length, start, order, seed, target, target.capacity()));
+            }
+            if (written == -1) {
+                throw new IllegalStateException(MODELO_NO_ENTRENADO);
+            }
+            if (written >= 0) {
+                String text = decode(out, 0, written);
+                timings.since("marshallingJna", t);
+                return text;
+            }
+            out = growOutputBuffer(out);
+            t = timings.now();
+        }
+    }
+
+    private ByteBuffer growOutputBuffer(ByteBuffer current) {
+        if (current.capacity() > Integer.MAX_VALUE / 2) {
+            throw new IllegalStateException("El texto generado no cabe en el buffer de salida");
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(current.capacity() * 2);
+        outputBuffers.set(grown);
+        return grown;
+    }
+
+    private static String decode(ByteBuffer out, int offset, int length) {
+        byte[] bytes = new byte[length];
+        out.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // UTF-8 terminado en '\0'; null o vacío = estado aleatorio
+    private static byte[] toCString(String text) {
+        if (text == null) return new byte[1];
+        byte[] bytes = text.replace('\0', ' ').getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(bytes, bytes.length + 1);
+    }
+
+    @Override
+    public List<String> generateBatch(MarkovModelHandle handle, List<GenerationItem> items) {
+        NativeModelHandle nativeHandle = asNativeHandle(handle);
+        if (!isNativeLibraryLoaded() || nativeHandle.pointer == null) {
+            List<String> texts = new ArrayList<>(items.size());
+            for (GenerationItem item : items) {
+                texts.add(generateSimulatedText(item.length(), item.startText()));
+            }
+            return texts;
+        }
+
+        if (!nativeHandle.retain()) {
+            throw new ModelReleasedException("El modelo nativo fue liberado antes de generar texto");
+        }
+        try {
+            return generateBatchNative(nativeHandle.pointer, items);
+        } finally {
+            nativeHandle.release();
+        }
+    }
+
+    /**
+     * Genera el lote con {@code markov_generate_batch} sobre el buffer del hilo.
+     * Cuando el buffer se llena se decodifica lo completado y se sigue con los
+     * elementos que faltan; sólo crece si no cabe ni un elemento.
+     */
+    private List<String> generateBatchNative(Pointer model, List<GenerationItem> items) {
+        int count = items.size();
+        int[] lengths = new int[count];
+        int[] orders = new int[count];
+        long[] seeds = new long[count];
+        byte[][] starts = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            GenerationItem item = items.get(i);
+            lengths[i] = item.length();
+            orders[i] = item.order();
+            seeds[i] = item.seed();
+            String start = item.startText() == null ? "" : item.startText().replace('\0', ' ');
+            starts[i] = start.getBytes(StandardCharsets.UTF_8);
+        }
+
+        String[] texts = new String[count];
+        ByteBuffer out = outputBuffers.get();
+        int done = 0;
+        while (done < count) {
+            int pending = count - done;
+            int[] offsets = new int[pending];
+            int[] outLengths = new int[pending];
+            int[] batchLengths = Arrays.copyOfRange(lengths, done, count);
+            int[] batchOrders = Arrays.copyOfRange(orders, done, count);
+            byte[] batchStarts = joinStarts(starts, done);
+            long[] batchSeeds = Arrays.copyOfRange(seeds, done, count);
+            ByteBuffer target = out;
+            int completed = metrics.llamadaNativa("generate_batch").record(() -> MarkovLibrary.markov_generate_batch(
+                    model, pending, batchLengths, batchOrders, batchStarts, batchSeeds, target, target.capacity(),
+                    offsets, outLengths));
+            if (completed < 0) {
+                throw new IllegalStateException("El modelo nativo no tiene estados entrenados");
+            }
+            for (int i = 0; i < completed; i++) {
+                texts[done + i] = decode(out, offsets[i], outLengths[i]);
+            }
+            done += completed;
+            if (completed == 0) {
+                out = growOutputBuffer(out);
+            }
+        }
+        return Arrays.asList(texts);
+    }
+
+    // Textos iniciales desde `from`, seguidos y terminados en '\0' como espera la librería
+    private static byte[] joinStarts(byte[][] starts, int from) {
+        int size = 0;
+        for (int i = from; i < starts.length; i++) size += starts[i].length + 1;
+        byte[] joined = new byte[size];
+        int position = 0;
+        for (int i = from; i < starts.length; i++) {
+            System.arraycopy(starts[i], 0, joined, position, starts[i].length);
+            position += starts[i].length + 1;
+        }
+        return joined;
+    }
+
+    @Override
+    public void freeModel(MarkovModelHandle handle) {
+        asNativeHandle(handle).release();
+    }
+
+    private NativeModelHandle asNativeHandle(MarkovModelHandle handle) {
+        if (handle instanceof NativeModelHandle nativeHandle) {
+            return nativeHandle;
+        }
+        throw new IllegalArgumentException("El modelo no pertenece al motor nativo: " + handle.getMotor());
+    }
+
     private void markov_free_model(Pointer model) {
-        if (libraryLoaded && model != null && nativeLibrary != null) {
+        if (libraryLoaded && model != null) {
             try {
-                nativeLibrary.markov_free_model(model);
+                MarkovLibrary.markov_free_model(model);
             } catch (Exception e) {
                 logger.error("Error liberando modelo Markov", e);
             }
@@ -189,27 +744,12 @@ public class MarkovNativeService {
         return result;
     }
 
-    public int getOrdenModeloActual() {
-        return ordenModeloActual;
-    }
-
-    public boolean isModeloListo() {
-        return modeloInicializado && (libraryLoaded ? model != null : true);
-    }
-
     public boolean isNativeLibraryLoaded() {
-        return libraryLoaded && nativeLibrary != null;
+        return libraryLoaded;
     }
 
+    @Override
     public String getLibraryStatus() {
-        return (libraryLoaded && nativeLibrary != null) ? "ACTIVA" : "SIMULACIÓN";
-    }
-
-    public void cleanup() {
-        if (libraryLoaded && model != null) {
-            markov_free_model(model);
-            model = null;
-            logger.info("Modelo Markov liberado");
-        }
+        return libraryLoaded ? "ACTIVA" : "SIMULACIÓN";
     }
 }
\ No newline at end of file
@@ -1,14 +1,35 @@
 package com.ova.platform.markov.service;
 
+import com.ova.platform.markov.exception.ModelReleasedException;
+import com.ova.platform.markov.model.request.BatchGenerateRequest;
 import com.ova.platform.markov.model.request.MarkovGenerateRequest;
 import com.ova.platform.markov.model.request.TrainModelRequest;
+import com.ova.platform.markov.model.response.BatchGenerateResponse;
 import com.ova.platform.markov.model.response.MarkovGenerateResponse;
 import com.ova.platform.markov.model.response.TrainModelResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
 @Service
 public class MarkovService {
 
@@ -17,132 +38,570 @@ public class MarkovService {
     @Autowired
     private MarkovNativeService nativeService;
 
-    // ✅ NUEVO: Estado compartido del modelo entrenado
-    private String ultimoTextoEntrenamiento;
-    private int ultimoOrdenEntrenado;
-    private boolean modeloEntrenado = false;
+    @Autowired
+    private MarkovEngine engine;
+
+    @Autowired
+    private ModelRegistry modelRegistry;
+
+    @Autowired
+    private ModelSnapshotStore snapshotStore;
+
+    @Autowired
+    private ExecutorService markovBatchExecutor;
+
+    @Autowired
+    private GenerationCache generationCache;
+
+    @Autowired
+    private MarkovMetrics metrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TimingTraces timingTraces;
+
+    // Elementos por llamada al motor; los lotes mayores se reparten entre hilos
+    @Value("${markov.batch.partition-size:256}")
+    private int batchPartitionSize;
+
+    // Reintentos si el modelo leído se libera (reentrenamiento/desalojo) antes de generar
+    private static final int MAX_INTENTOS_GENERACION = 3;
+
+    /** Modelo entrenado con /train junto con sus datos; se publica completo e inmutable. */
+    private record ModeloEntrenado(MarkovModelHandle handle, long longitudTexto, int orden) {
+    }
+
+    // ✅ NUEVO: Estado compartido del modelo entrenado con /train (modelo por defecto).
+    // La generación lee la instantánea sin locks; /train construye el modelo aparte y la sustituye.
+    private final AtomicReference<ModeloEntrenado> modeloActual = new AtomicReference<>();
+
+    // Serializa la publicación del modelo por defecto con su snapshot: dos /train simultáneos no
+    // escriben default.mkvs a la vez y el último publicado es el último guardado
+    private final Object publicacionPorDefecto = new Object();
+
+    @PostConstruct
+    void registrarMetricas() {
+        Gauge.builder("markov.models.resident", this, service -> service.getModelosResidentes()
+                        + (service.isModeloEntrenado() ? 1 : 0))
+                .description("Modelos residentes en el motor, incluido el de /train")
+                .tag("engine", engine.getNombre())
+                .register(meterRegistry);
+        Gauge.builder("markov.models.native.bytes", this, MarkovService::getBytesFueraDelHeap)
+                .description("Memoria de los modelos residentes fuera del heap (librería nativa o buffers directos)")
+                .baseUnit("bytes")
+                .tag("engine", engine.getNombre())
+                .register(meterRegistry);
+    }
 
     // ✅ METODO NUEVO - HU-301: ENTRENAR MODELO
     public TrainModelResponse entrenarModelo(TrainModelRequest request) {
-        long startTime = System.currentTimeMillis();
-        TrainModelResponse response = new TrainModelResponse();
+        return entrenarModelo(request, timingTraces.iniciar(request.isDebugTimings()));
+    }
 
-        try {
-            logger.info("Iniciando entrenamiento de modelo - Orden: {}, Longitud texto: {}",
-                    request.getOrden(), request.getTextoEntrenamiento().length());
+    /**
+     * @param tiempos etapas ya medidas por el llamador (p. ej. la deserialización);
+     *                la respuesta las incluye, con las del servicio y el motor, si
+     *                la petición trae {@code debugTimings}
+     */
+    public TrainModelResponse entrenarModelo(TrainModelRequest request, StageTimings tiempos) {
+        logger.info("Iniciando entrenamiento de modelo - Orden: {}, Longitud texto: {}",
+                request.getOrden(), request.getTextoEntrenamiento().length());
+
+        TrainModelResponse response = entrenar(request.getOrden(), new StringReader(request.getTextoEntrenamiento()),
+                request.getTextoEntrenamiento(), tiempos);
+        if (request.isDebugTimings()) {
+            response.setTiemposNs(tiempos.asMap());
+        }
+        return response;
+    }
 
-            // ✅ Entrenar modelo con parámetros proporcionados
-            nativeService.initializeModel(request.getOrden());
-            nativeService.trainModel(request.getTextoEntrenamiento());
+    // Entrenamiento por streaming: el corpus se tokeniza a medida que llega, sin cargarlo en memoria
+    public TrainModelResponse entrenarModeloStream(int orden, Reader texto) {
+        logger.info("Iniciando entrenamiento por streaming - Orden: {}", orden);
+        return entrenar(orden, texto, null, timingTraces.iniciar(false));
+    }
 
-            // ✅ GUARDAR ESTADO COMPARTIDO para usar en generación
-            this.ultimoTextoEntrenamiento = request.getTextoEntrenamiento();
-            this.ultimoOrdenEntrenado = request.getOrden();
-            this.modeloEntrenado = true;
+    /**
+     * @param textoCompleto el texto si ya está en memoria (para estimar estadísticas
+     *                      que el motor no informa); null en entrenamiento por streaming
+     * @param tiempos       etapas: las del motor, {@code publicacion}, {@code snapshot}
+     *                      y {@code servicio} (todo el método)
+     */
+    private TrainModelResponse entrenar(int orden, Reader texto, String textoCompleto, StageTimings tiempos) {
+        long startTime = System.nanoTime();
+        TrainModelResponse response = new TrainModelResponse();
 
-            long endTime = System.currentTimeMillis();
+        try {
+            // ✅ Entrenar modelo con parámetros proporcionados
+            MarkovModelHandle nuevoModelo = engine.trainModel(orden, texto, tiempos);
+            long nanos = System.nanoTime() - startTime;
+            metrics.entrenamiento(MarkovMetrics.MODELO_POR_DEFECTO, nuevoModelo, nanos);
+            long t = tiempos.now();
+
+            // ✅ PUBLICAR EL MODELO COMPLETO: las generaciones en curso terminan con el anterior
+            synchronized (publicacionPorDefecto) {
+                ModeloEntrenado anterior = modeloActual.getAndSet(new ModeloEntrenado(
+                        nuevoModelo, nuevoModelo.getCaracteresEntrenados(), orden));
+                if (anterior != null) {
+                    engine.freeModel(anterior.handle());
+                }
+                generationCache.invalidate(GenerationCache.modelo(null));
+                t = tiempos.since("publicacion", t);
+                // Para recuperarlo al reiniciar (ver restaurarModeloPorDefecto)
+                snapshotStore.saveDefault(nuevoModelo);
+                tiempos.since("snapshot", t);
+            }
 
-            // Estadísticas
-            int vocabularioSize = calcularTamanoVocabulario(request.getTextoEntrenamiento());
-            int estadosCount = calcularNumeroEstados(request.getTextoEntrenamiento(), request.getOrden());
+            // Estadísticas: las del motor si las informa, si no una estimación sobre el texto
+            int vocabularioSize = nuevoModelo.getVocabularioSize() >= 0 ? nuevoModelo.getVocabularioSize()
+                    : calcularTamanoVocabulario(textoCompleto);
+            int estadosCount = nuevoModelo.getEstadosCount() >= 0 ? nuevoModelo.getEstadosCount()
+                    : calcularNumeroEstados(textoCompleto, orden);
 
             response.setExito(true);
             response.setMensaje("Modelo entrenado exitosamente. Ahora puedes generar texto usando este modelo.");
-            response.setOrdenModelo(request.getOrden());
-            response.setLongitudTexto(request.getTextoEntrenamiento().length());
+            response.setOrdenModelo(orden);
+            response.setLongitudTexto(nuevoModelo.getCaracteresEntrenados());
             response.setVocabularioSize(vocabularioSize);
             response.setEstadosCount(estadosCount);
-            response.setTiempoEntrenamientoMs(endTime - startTime);
+            response.setTiempoEntrenamientoMs(nanos / 1_000_000);
             response.setModeloId("markov-model-" + System.currentTimeMillis());
+            if (nuevoModelo.getBytesEnMemoria() >= 0) {
+                response.setBytesAntesCompactacion(nuevoModelo.getBytesAntesCompactacion());
+                response.setBytesEnMemoria(nuevoModelo.getBytesEnMemoria());
+                response.setBytesFueraDelHeap(nuevoModelo.getBytesFueraDelHeap());
+            }
 
-            logger.info("Entrenamiento completado - Tiempo: {}ms, Vocabulario: {} palabras, Estados: {}",
-                    response.getTiempoEntrenamientoMs(), vocabularioSize, estadosCount);
+            logger.info("Entrenamiento completado - Tiempo: {}ms, Texto: {} caracteres, Vocabulario: {} palabras, Estados: {}, Bytes: {}",
+                    response.getTiempoEntrenamientoMs(), response.getLongitudTexto(), vocabularioSize, estadosCount,
+                    nuevoModelo.getBytesEnMemoria());
 
         } catch (Exception e) {
             logger.error("Error en entrenamiento de modelo Markov", e);
+            metrics.entrenamientoFallido(MarkovMetrics.MODELO_POR_DEFECTO, engine.getNombre(), orden);
             response.setExito(false);
             response.setMensaje("Error entrenando modelo: " + e.getMessage());
-            response.setTiempoEntrenamientoMs(System.currentTimeMillis() - startTime);
+            response.setTiempoEntrenamientoMs((System.nanoTime() - startTime) / 1_000_000);
         }
 
+        tiempos.since("servicio", startTime);
+        timingTraces.registrar("train", MarkovMetrics.MODELO_POR_DEFECTO, engine.getNombre(), orden, tiempos);
         return response;
     }
 
+    /** Modelo que atiende una generación y cómo describirlo en la respuesta. */
+    private record ModeloResuelto(MarkovModelHandle handle, String descripcion, String nombre) {
+    }
+
+    /**
+     * Modelo persistido ({@code modeloId}) o el último entrenado con /train. Si no
+     * hay ninguno devuelve null y entrega el motivo a {@code motivo}.
+     */
+    private ModeloResuelto resolverModelo(Long modeloId, Consumer<String> motivo) {
+        if (modeloId != null) {
+            Optional<MarkovModelHandle> registrado = modelRegistry.getOrLoad(modeloId);
+            if (registrado.isEmpty()) {
+                motivo.accept("Modelo " + modeloId + " no encontrado, inactivo o sin texto de entrenamiento");
+                return null;
+            }
+            MarkovModelHandle modelo = registrado.get();
+            return new ModeloResuelto(modelo, "Texto generado usando el modelo " + modeloId,
+                    "markov-model-" + modeloId + "-order-" + modelo.getOrden());
+        }
+
+        // ✅ VERIFICAR SI HAY MODELO ENTRENADO
+        ModeloEntrenado actual = modeloActual.get();
+        if (actual == null) {
+            motivo.accept("No hay modelo entrenado. Por favor, entrena un modelo primero usando el endpoint /api/markov/train");
+            return null;
+        }
+        return new ModeloResuelto(actual.handle(),
+                "Texto generado usando modelo entrenado con: " + actual.longitudTexto() + " caracteres",
+                "markov-order-" + actual.orden());
+    }
+
     // ✅ MÉTODO ACTUALIZADO - HU-302: GENERAR TEXTO USANDO EXCLUSIVAMENTE MODELO ENTRENADO
     public MarkovGenerateResponse generarTexto(MarkovGenerateRequest request) {
-        long startTime = System.currentTimeMillis();
+        return generarTexto(request, timingTraces.iniciar(request.isDebugTimings()));
+    }
+
+    /**
+     * @param tiempos etapas ya medidas por el llamador; se añaden
+     *                {@code resolucionModelo}, {@code cache}, las del motor,
+     *                {@code conteoPalabras} y {@code servicio} (todo el método), y
+     *                la respuesta las incluye si la petición trae {@code debugTimings}
+     */
+    public MarkovGenerateResponse generarTexto(MarkovGenerateRequest request, StageTimings tiempos) {
+        MarkovGenerateResponse response = generar(request, tiempos);
+        if (request.isDebugTimings()) {
+            response.setTiemposNs(tiempos.asMap());
+        }
+        return response;
+    }
+
+    private MarkovGenerateResponse generar(MarkovGenerateRequest request, StageTimings tiempos) {
+        long startTime = System.nanoTime();
         MarkovGenerateResponse response = new MarkovGenerateResponse();
+        String etiquetaModelo = MarkovMetrics.modelo(request.getModeloId());
+        String motor = engine.getNombre();
+        int orden = 0;
 
         try {
             logger.info("Iniciando generación de texto - Inicio: '{}', Longitud: {}",
                     request.getTextoInicio(), request.getLongitud());
 
-            // ✅ VERIFICAR SI HAY MODELO ENTRENADO
-            if (!modeloEntrenado) {
-                response.setExito(false);
-                response.setMensaje("No hay modelo entrenado. Por favor, entrena un modelo primero usando el endpoint /api/markov/train");
-                response.setTiempoProcesamientoMs(System.currentTimeMillis() - startTime);
-                return response;
+            // La semilla se devuelve siempre para poder reproducir el texto
+            long semilla = semillaDe(request);
+
+            // Sólo las peticiones con semilla son deterministas y se pueden cachear.
+            // La versión se captura antes de resolver el modelo (ver GenerationCache)
+            boolean cacheable = request.getSemilla() != null && generationCache.isEnabled();
+            String modeloCache = GenerationCache.modelo(request.getModeloId());
+            long version = cacheable ? generationCache.version(modeloCache) : 0;
+
+            // ✅ MODELO PERSISTIDO (modeloId) O EL ÚLTIMO ENTRENADO CON /train
+            ModeloResuelto modelo = null;
+            String textoGenerado = null;
+            int palabras = 0;
+            boolean desdeCache = false;
+            for (int intento = 1; textoGenerado == null; intento++) {
+                long t = tiempos.now();
+                modelo = resolverModelo(request.getModeloId(), response::setMensaje);
+                t = tiempos.since("resolucionModelo", t);
+                if (modelo == null) {
+                    metrics.generacionFallida(etiquetaModelo, motor, "single");
+                    response.setExito(false);
+                    response.setTiempoProcesamientoMs((System.nanoTime() - startTime) / 1_000_000);
+                    return response;
+                }
+                motor = modelo.handle().getMotor();
+
+                // ✅ ORDEN DE LA PETICIÓN (1..orden entrenado) SOBRE EL MISMO MODELO
+                orden = ordenEfectivo(request.getOrden(), modelo.handle(), intento == 1);
+
+                if (cacheable && intento == 1) {
+                    Optional<GenerationCache.Entrada> cacheada = generationCache.get(modeloCache, version,
+                            request.getTextoInicio(), request.getLongitud(), orden, semilla);
+                    tiempos.since("cache", t);
+                    if (cacheada.isPresent()) {
+                        textoGenerado = cacheada.get().texto();
+                        palabras = cacheada.get().palabras();
+                        desdeCache = true;
+                        break;
+                    }
+                }
+
+                // ✅ USAR EXCLUSIVAMENTE EL MODELO YA ENTRENADO - SIN RE-ENTRENAR
+                try {
+                    textoGenerado = engine.generateText(
+                            modelo.handle(),
+                            request.getLongitud(),
+                            request.getTextoInicio(),
+                            orden,
+                            semilla,
+                            tiempos
+                    );
+                } catch (ModelReleasedException e) {
+                    // Se reemplazó justo entre la lectura y la generación: leer el modelo vigente
+                    if (intento >= MAX_INTENTOS_GENERACION) throw e;
+                    logger.debug("Modelo reemplazado durante la generación, reintentando ({}/{})",
+                            intento, MAX_INTENTOS_GENERACION);
+                }
             }
 
-            // ✅ VERIFICAR COMPATIBILIDAD DE ORDEN
-            if (request.getOrden() != ultimoOrdenEntrenado) {
-                logger.warn("Orden solicitado ({}) diferente al orden entrenado ({}). Usando orden entrenado.",
-                        request.getOrden(), ultimoOrdenEntrenado);
+            if (!desdeCache) {
+                long t = tiempos.now();
+                palabras = contarPalabras(textoGenerado);
+                t = tiempos.since("conteoPalabras", t);
+                if (cacheable) {
+                    generationCache.put(modeloCache, version, request.getTextoInicio(), request.getLongitud(), orden,
+                            semilla, new GenerationCache.Entrada(textoGenerado, palabras));
+                    tiempos.since("cache", t);
+                }
             }
 
-            // ✅ USAR EXCLUSIVAMENTE EL MODELO YA ENTRENADO - SIN RE-ENTRENAR
-            logger.info("Generando texto con modelo previamente entrenado - Orden: {}, Texto entrenamiento: {} caracteres",
-                    ultimoOrdenEntrenado, ultimoTextoEntrenamiento.length());
-
-            // ✅ IMPORTANTE: No inicializar ni entrenar de nuevo - usar el modelo existente
-            // El modelo YA está listo desde el endpoint de entrenamiento
-
-            // Generar texto usando el modelo entrenado
-            String textoGenerado = nativeService.generateText(
-                    request.getLongitud(),
-                    request.getTextoInicio()
-            );
-
-            long endTime = System.currentTimeMillis();
+            long nanos = System.nanoTime() - startTime;
+            metrics.generacion(etiquetaModelo, motor, orden, "single", desdeCache, nanos, palabras);
 
             // Construir respuesta
             response.setExito(true);
             response.setTextoGenerado(textoGenerado);
             response.setTextoInicio(request.getTextoInicio());
             response.setLongitudSolicitada(request.getLongitud());
-            response.setLongitudGenerada(textoGenerado != null ? textoGenerado.split("\\s+").length : 0);
-            response.setTiempoProcesamientoMs(endTime - startTime);
-            response.setModeloUtilizado("markov-order-" + ultimoOrdenEntrenado);
-            response.setMensaje("Texto generado usando modelo entrenado con: " +
-                    ultimoTextoEntrenamiento.length() + " caracteres");
-
-            logger.info("Generación completada - Tiempo: {}ms, Longitud generada: {}, Texto: {}...",
-                    response.getTiempoProcesamientoMs(), response.getLongitudGenerada(),
+            response.setLongitudGenerada(palabras);
+            response.setTiempoProcesamientoMs(nanos / 1_000_000);
+            response.setModeloUtilizado(modelo.nombre());
+            response.setOrdenUtilizado(orden);
+            response.setSemilla(semilla);
+            response.setMensaje(modelo.descripcion());
+
+            logger.info("Generación completada{} - Tiempo: {}ms, Longitud generada: {}, Texto: {}...",
+                    desdeCache ? " (caché)" : "", response.getTiempoProcesamientoMs(), response.getLongitudGenerada(),
                     textoGenerado != null ? textoGenerado.substring(0, Math.min(50, textoGenerado.length())) : "null");
 
         } catch (Exception e) {
             logger.error("Error en generación de texto Markov", e);
+            metrics.generacionFallida(etiquetaModelo, engine.getNombre(), "single");
+            response.setExito(false);
+            response.setMensaje("Error generando texto: " + e.getMessage());
+            response.setTiempoProcesamientoMs((System.nanoTime() - startTime) / 1_000_000);
+        } finally {
+            tiempos.since("servicio", startTime);
+            timingTraces.registrar("generate", etiquetaModelo, motor, orden, tiempos);
+        }
+
+        return response;
+    }
+
+    /**
+     * Generación en streaming: cada palabra se entrega a {@code onWord} en cuanto
+     * el motor la muestrea; si devuelve false (cliente desconectado) se detiene.
+     * La respuesta resume la generación y no incluye {@code textoGenerado}.
+     */
+    public MarkovGenerateResponse generarTextoStream(MarkovGenerateRequest request, Predicate<String> onWord) {
+        long startTime = System.nanoTime();
+        String etiquetaModelo = MarkovMetrics.modelo(request.getModeloId());
+        MarkovGenerateResponse response = new MarkovGenerateResponse();
+        response.setTextoInicio(request.getTextoInicio());
+        response.setLongitudSolicitada(request.getLongitud());
+        long semilla = semillaDe(request);
+        response.setSemilla(semilla);
+
+        try {
+            for (int intento = 1; ; intento++) {
+                ModeloResuelto modelo = resolverModelo(request.getModeloId(), response::setMensaje);
+                if (modelo == null) {
+                    metrics.generacionFallida(etiquetaModelo, engine.getNombre(), "stream");
+                    response.setExito(false);
+                    break;
+                }
+                int orden = ordenEfectivo(request.getOrden(), modelo.handle(), intento == 1);
+
+                try {
+                    // La referencia se toma antes de la primera palabra: reintentar no duplica salida
+                    int palabras = engine.generateText(modelo.handle(), request.getLongitud(),
+                            request.getTextoInicio(), orden, semilla, onWord);
+                    metrics.generacion(etiquetaModelo, modelo.handle().getMotor(), orden, "stream", false,
+                            System.nanoTime() - startTime, palabras);
+                    response.setExito(true);
+                    response.setLongitudGenerada(palabras);
+                    response.setModeloUtilizado(modelo.nombre());
+                    response.setOrdenUtilizado(orden);
+                    response.setMensaje(modelo.descripcion());
+                    break;
+                } catch (ModelReleasedException e) {
+                    if (intento >= MAX_INTENTOS_GENERACION) throw e;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error en generación de texto Markov (streaming)", e);
+            metrics.generacionFallida(etiquetaModelo, engine.getNombre(), "stream");
             response.setExito(false);
             response.setMensaje("Error generando texto: " + e.getMessage());
-            response.setTiempoProcesamientoMs(System.currentTimeMillis() - startTime);
         }
 
+        response.setTiempoProcesamientoMs((System.nanoTime() - startTime) / 1_000_000);
+        logger.info("Generación en streaming terminada - Tiempo: {}ms, Palabras: {}",
+                response.getTiempoProcesamientoMs(), response.getLongitudGenerada());
+        return response;
+    }
+
+    private static long semillaDe(MarkovGenerateRequest request) {
+        return request.getSemilla() != null ? request.getSemilla() : ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Genera todos los elementos del lote sobre el mismo modelo. Los lotes grandes
+     * se parten en {@code markov.batch.partition-size} elementos y las particiones
+     * se generan en paralelo, cada una con una sola llamada al motor.
+     */
+    public BatchGenerateResponse generarLote(BatchGenerateRequest request) {
+        long startTime = System.nanoTime();
+        BatchGenerateResponse response = new BatchGenerateResponse();
+        List<BatchGenerateRequest.Elemento> elementos = request.getElementos();
+
+        // Las semillas se eligen una vez: un reintento con otro modelo repite las mismas
+        long[] semillas = new long[elementos.size()];
+        for (int i = 0; i < semillas.length; i++) {
+            Long semilla = elementos.get(i).getSemilla();
+            semillas[i] = semilla != null ? semilla : ThreadLocalRandom.current().nextLong();
+        }
+
+        try {
+            ModeloResuelto modelo = null;
+            List<GenerationItem> items = List.of();
+            List<String> textos = null;
+            int particiones = 0;
+            for (int intento = 1; textos == null; intento++) {
+                modelo = resolverModelo(request.getModeloId(), response::setMensaje);
+                if (modelo == null) {
+                    metrics.generacionFallida(MarkovMetrics.modelo(request.getModeloId()), engine.getNombre(), "batch");
+                    response.setExito(false);
+                    return response;
+                }
+                // El orden de cada elemento se acota al del modelo resuelto
+                items = new ArrayList<>(elementos.size());
+                int acotados = 0;
+                for (int i = 0; i < semillas.length; i++) {
+                    BatchGenerateRequest.Elemento elemento = elementos.get(i);
+                    int orden = ordenEfectivo(elemento.getOrden(), modelo.handle(), false);
+                    if (elemento.getOrden() != null && orden < elemento.getOrden()) acotados++;
+                    items.add(new GenerationItem(elemento.getTextoInicio(), elemento.getLongitud(), orden,
+                            semillas[i]));
+                }
+                if (acotados > 0 && intento == 1) {
+                    logger.warn("Lote: {} elementos piden un orden mayor que el entrenado ({}). Usando orden entrenado.",
+                            acotados, modelo.handle().getOrden());
+                }
+                // Una referencia para todo el lote: ninguna partición ve el modelo liberado a medias
+                if (!modelo.handle().retain()) {
+                    if (intento >= MAX_INTENTOS_GENERACION) {
+                        throw new ModelReleasedException("El modelo fue liberado antes de generar el lote");
+                    }
+                    continue;
+                }
+                try {
+                    List<List<GenerationItem>> partes = particionar(items);
+                    particiones = partes.size();
+                    textos = generarParticiones(modelo.handle(), partes);
+                } finally {
+                    modelo.handle().release();
+                }
+            }
+
+            List<BatchGenerateResponse.Resultado> resultados = new ArrayList<>(items.size());
+            long totalPalabras = 0;
+            for (int i = 0; i < items.size(); i++) {
+                GenerationItem item = items.get(i);
+                String texto = textos.get(i);
+                int palabras = contarPalabras(texto);
+                totalPalabras += palabras;
+                resultados.add(new BatchGenerateResponse.Resultado(item.startText(), item.length(), item.seed(),
+                        texto, palabras));
+            }
+
+            long nanos = Math.max(1, System.nanoTime() - startTime);
+            // Cada elemento puede pedir otro orden: el lote se etiqueta con el orden entrenado
+            metrics.generacion(MarkovMetrics.modelo(request.getModeloId()), modelo.handle().getMotor(),
+                    modelo.handle().getOrden(), "batch", false, nanos, totalPalabras);
+            response.setExito(true);
+            response.setResultados(resultados);
+            response.setTotalElementos(items.size());
+            response.setTotalPalabras(totalPalabras);
+            response.setParticiones(particiones);
+            response.setTiempoProcesamientoMs(nanos / 1_000_000);
+            response.setElementosPorSegundo(items.size() * 1e9 / nanos);
+            response.setPalabrasPorSegundo(totalPalabras * 1e9 / nanos);
+            response.setModeloUtilizado(modelo.nombre());
+            response.setMensaje("Lote de " + items.size() + " elementos generado");
+
+            logger.info("Lote generado - Elementos: {}, Palabras: {}, Particiones: {}, Tiempo: {}ms ({} palabras/s)",
+                    items.size(), totalPalabras, particiones, response.getTiempoProcesamientoMs(),
+                    Math.round(response.getPalabrasPorSegundo()));
+
+        } catch (Exception e) {
+            logger.error("Error en generación por lotes", e);
+            metrics.generacionFallida(MarkovMetrics.modelo(request.getModeloId()), engine.getNombre(), "batch");
+            response.setExito(false);
+            response.setMensaje("Error generando lote: " + e.getMessage());
+            response.setTiempoProcesamientoMs((System.nanoTime() - startTime) / 1_000_000);
+        }
         return response;
     }
 
+    private List<List<GenerationItem>> particionar(List<GenerationItem> items) {
+        if (items.size() <= batchPartitionSize) {
+            return List.of(items);
+        }
+        List<List<GenerationItem>> partes = new ArrayList<>();
+        for (int desde = 0; desde < items.size(); desde += batchPartitionSize) {
+            partes.add(items.subList(desde, Math.min(items.size(), desde + batchPartitionSize)));
+        }
+        return partes;
+    }
+
+    private List<String> generarParticiones(MarkovModelHandle modelo, List<List<GenerationItem>> partes) {
+        if (partes.size() == 1) {
+            return engine.generateBatch(modelo, partes.get(0));
+        }
+
+        List<CompletableFuture<List<String>>> futuros = new ArrayList<>(partes.size());
+        for (List<GenerationItem> parte : partes) {
+            futuros.add(CompletableFuture.supplyAsync(() -> engine.generateBatch(modelo, parte), markovBatchExecutor));
+        }
+        List<String> textos = new ArrayList<>();
+        for (CompletableFuture<List<String>> futuro : futuros) {
+            try {
+                textos.addAll(futuro.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return textos;
+    }
+
+    // Los motores separan las palabras con un único espacio
+    private static int contarPalabras(String texto) {
+        if (texto == null || texto.isBlank()) return 0;
+        String limpio = texto.strip();
+        int palabras = 1;
+        for (int i = 0; i < limpio.length(); i++) {
+            if (limpio.charAt(i) == ' ') palabras++;
+        }
+        return palabras;
+    }
+
+    /**
+     * Orden con el que se genera: el solicitado si el modelo lo cubre (un modelo
+     * de orden n genera con cualquier orden de 1 a n) o el entrenado si no se
+     * indicó o es mayor.
+     */
+    private int ordenEfectivo(Integer solicitado, MarkovModelHandle modelo, boolean advertir) {
+        if (solicitado == null) {
+            return modelo.getOrden();
+        }
+        if (solicitado > modelo.getOrden()) {
+            if (advertir) {
+                logger.warn("Orden solicitado ({}) mayor que el orden entrenado ({}). Usando orden entrenado.",
+                        solicitado, modelo.getOrden());
+            }
+            return modelo.getOrden();
+        }
+        return solicitado;
+    }
+
     // ✅ NUEVO METODO: Verificar estado del modelo
     public boolean isModeloEntrenado() {
-        return modeloEntrenado;
+        return modeloActual.get() != null;
     }
 
     // ✅ NUEVO METODO: Obtener información del modelo entrenado
     public String getInfoModeloEntrenado() {
-        if (!modeloEntrenado) {
+        ModeloEntrenado actual = modeloActual.get();
+        if (actual == null) {
             return "No hay modelo entrenado";
         }
         return String.format("Modelo orden-%d entrenado con %d caracteres",
-                ultimoOrdenEntrenado, ultimoTextoEntrenamiento.length());
+                actual.orden(), actual.longitudTexto());
+    }
+
+    /**
+     * Recupera el modelo por defecto desde su snapshot tras un reinicio, si nadie
+     * ha entrenado otro entretanto.
+     */
+    public boolean restaurarModeloPorDefecto() {
+        Optional<MarkovModelHandle> restaurado = snapshotStore.loadDefault();
+        if (restaurado.isEmpty()) return false;
+
+        MarkovModelHandle handle = restaurado.get();
+        if (!modeloActual.compareAndSet(null, new ModeloEntrenado(handle, handle.getCaracteresEntrenados(), handle.getOrden()))) {
+            engine.freeModel(handle);
+            return false;
+        }
+        logger.info("Modelo por defecto restaurado: orden {}, {} caracteres", handle.getOrden(), handle.getCaracteresEntrenados());
+        return true;
     }
 
     // Métodos auxiliares (sin cambios)
@@ -161,4 +620,27 @@ public class MarkovService {
     public boolean isNativeIntegrationActive() {
         return nativeService.isNativeLibraryLoaded();
     }
+
+    public String getMotorActivo() {
+        return engine.getNombre();
+    }
+
+    public int getModelosResidentes() {
+        return modelRegistry.getResidentCount();
+    }
+
+    /** Bytes fuera del heap de los modelos residentes y el de /train. */
+    public long getBytesFueraDelHeap() {
+        ModeloEntrenado actual = modeloActual.get();
+        long propio = actual != null ? Math.max(0, actual.handle().getBytesFueraDelHeap()) : 0;
+        return modelRegistry.getResidentOffHeapBytes() + propio;
+    }
+
+    @PreDestroy
+    public void liberarModeloActual() {
+        ModeloEntrenado actual = modeloActual.getAndSet(null);
+        if (actual != null) {
+            engine.freeModel(actual.handle());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,295 @@
+package com.ova.platform.markov.service;
+
+import com.ova.platform.markov.model.entity.MarkovModel;
+import com.ova.platform.markov.model.entity.TrainingDocument;
+import com.ova.platform.markov.repository.MarkovModelRepository;
+import com.ova.platform.markov.repository.TrainingDocumentRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Modelos entrenados residentes en el motor, indexados por {@code MarkovModel.id}.
+ *
+ * <p>Las lecturas ({@link #find}, {@link #getOrLoad} con el modelo residente) no
+ * toman locks: sólo consultan un {@link ConcurrentHashMap} y marcan el último
+ * acceso. Registrar un modelo reentrenado reemplaza el anterior de forma
+ * atómica; el anterior se libera cuando terminan sus generaciones en curso.</p>
+ *
+ * <p>El número de modelos residentes está acotado por
+ * {@code markov.registry.max-models}; al superarlo se libera el modelo usado
+ * hace más tiempo (LRU). Un modelo desalojado se vuelve a cargar desde su
+ * snapshot binario (o, si no lo tiene, desde sus textos persistidos) la próxima vez
+ * que se pide.</p>
+ *
+ * <p>Cargar un modelo no residente toma el mismo lock por modelo ({@link #lockFor})
+ * que {@link ModelService} al reentrenarlo, ampliarlo o borrarlo: una carga que leyó
+ * la fila antes de esos cambios no puede registrar después un modelo viejo ni
+ * resucitar uno borrado.</p>
+ */
+@Service
+public class ModelRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRegistry.class);
+
+    @Autowired
+    private MarkovEngine engine;
+
+    @Autowired
+    private MarkovModelRepository modelRepository;
+
+    @Autowired
+    private TrainingDocumentRepository documentRepository;
+
+    @Autowired
+    private ModelSnapshotStore snapshotStore;
+
+    @Autowired
+    private MarkovMetrics metrics;
+
+    @Value("${markov.registry.max-models:32}")
+    private int maxModels;
+
+    private static final class Entry {
+        final MarkovModelHandle handle;
+        volatile long lastAccess;
+
+        Entry(MarkovModelHandle handle, long lastAccess) {
+            this.handle = handle;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, CompletableFuture<Optional<MarkovModelHandle>>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentHashMap<Long, Long> lastUsePersisted = new ConcurrentHashMap<>();
+    // Serializa cargar, entrenar, actualizar y borrar un mismo modelo (la generación no se bloquea)
+    private final ConcurrentHashMap<Long, ReentrantLock> modelLocks = new ConcurrentHashMap<>();
+
+    private static final long USE_PERSIST_INTERVAL_MS = 60_000;
+
+    public void register(Long id, MarkovModelHandle handle) {
+        Entry previous = entries.put(id, new Entry(handle, clock.incrementAndGet()));
+        if (previous != null && previous.handle != handle) {
+            engine.freeModel(previous.handle);
+        }
+        evictOverflow();
+    }
+
+    /** Lock del modelo, compartido por sus cargas y por los cambios de {@link ModelService}. */
+    public ReentrantLock lockFor(Long id) {
+        return modelLocks.computeIfAbsent(id, key -> new ReentrantLock());
+    }
+
+    /** Olvida el lock de un modelo borrado; se llama con el lock tomado. */
+    public void discardLock(Long id) {
+        modelLocks.remove(id);
+    }
+
+    public Optional<MarkovModelHandle> find(Long id) {
+        Entry entry = entries.get(id);
+        if (entry == null) return Optional.empty();
+        entry.lastAccess = clock.incrementAndGet();
+        return Optional.of(entry.handle);
+    }
+
+    /**
+     * Devuelve el modelo residente o lo carga desde su snapshot o su texto si fue
+     * desalojado (o aún no se había cargado en esta instancia). Peticiones
+     * simultáneas del mismo modelo comparten una única carga.
+     */
+    public Optional<MarkovModelHandle> getOrLoad(Long id) {
+        markUsed(id);
+        return preload(id);
+    }
+
+    /**
+     * Como {@link #getOrLoad} pero sin contar como uso del modelo: el warm-up no
+     * debe alterar el orden por uso reciente que él mismo consulta.
+     */
+    public Optional<MarkovModelHandle> preload(Long id) {
+        Optional<MarkovModelHandle> resident = find(id);
+        if (resident.isPresent()) return resident;
+
+        // Quien ya tiene el lock del modelo (ModelService al ampliarlo) carga él mismo: la carga
+        // compartida en curso puede estar esperando ese lock
+        ReentrantLock held = modelLocks.get(id);
+        if (held != null && held.isHeldByCurrentThread()) {
+            return loadModel(id);
+        }
+
+        CompletableFuture<Optional<MarkovModelHandle>> load = new CompletableFuture<>();
+        CompletableFuture<Optional<MarkovModelHandle>> inFlight = loading.putIfAbsent(id, load);
+        if (inFlight != null) {
+            return join(inFlight);
+        }
+
+        try {
+            load.complete(loadModel(id));
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+        } finally {
+            loading.remove(id, load);
+        }
+        return join(load);
+    }
+
+    private Optional<MarkovModelHandle> loadModel(Long id) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            return loadLocked(id, lock);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<MarkovModelHandle> loadLocked(Long id, ReentrantLock lock) {
+        // Otro hilo pudo terminar la carga, o registrar el modelo reentrenado, mientras se esperaba el lock
+        Optional<MarkovModelHandle> resident = find(id);
+        if (resident.isPresent()) return resident;
+
+        Optional<MarkovModel> model = modelRepository.findById(id);
+        if (model.isEmpty()) {
+            // Un id inexistente no deja su lock en el mapa
+            modelLocks.remove(id, lock);
+            return Optional.empty();
+        }
+        if (!"ACTIVO".equals(model.get().getEstado())) {
+            return Optional.empty();
+        }
+
+        // Con snapshot válido basta leer el fichero; si no, se reentrena desde los textos guardados
+        Optional<MarkovModelHandle> snapshot = snapshotStore.load(model.get());
+        if (snapshot.isPresent()) {
+            register(id, snapshot.get());
+            return snapshot;
+        }
+
+        List<String> documentos = trainingDocuments(model.get());
+        if (documentos.isEmpty()) {
+            return Optional.empty();
+        }
+
+        logger.info("Cargando modelo {} ('{}') en el motor {}", id, model.get().getNombre(), engine.getNombre());
+        long inicio = System.nanoTime();
+        MarkovModelHandle handle = engine.trainModel(model.get().getOrden(), documentos);
+        metrics.entrenamiento(MarkovMetrics.modelo(id), handle, System.nanoTime() - inicio);
+        register(id, handle);
+        return Optional.of(handle);
+    }
+
+    /**
+     * Textos con los que se entrenó el modelo, cada uno como documento aparte:
+     * el texto de entrenamiento y después los añadidos con entrenamiento
+     * incremental, en orden.
+     */
+    public List<String> trainingDocuments(MarkovModel model) {
+        List<String> documentos = new ArrayList<>();
+        String texto = model.getTextoEntrenamiento();
+        if (texto != null && !texto.isBlank()) {
+            documentos.add(texto);
+        }
+        for (TrainingDocument documento : documentRepository.findByModeloIdOrderByIdAsc(model.getId())) {
+            documentos.add(documento.getTexto());
+        }
+        return documentos;
+    }
+
+    // Persiste el último uso como mucho una vez por minuto y modelo, no en cada generación
+    private void markUsed(Long id) {
+        long now = System.currentTimeMillis();
+        Long previous = lastUsePersisted.get(id);
+        if (previous != null && now - previous < USE_PERSIST_INTERVAL_MS) return;
+        if (previous == null ? lastUsePersisted.putIfAbsent(id, now) != null
+                : !lastUsePersisted.replace(id, previous, now)) {
+            return;
+        }
+        try {
+            modelRepository.updateLastUsed(id, LocalDateTime.now());
+        } catch (RuntimeException e) {
+            logger.debug("No se pudo registrar el uso del modelo {}: {}", id, e.getMessage());
+        }
+    }
+
+    private static Optional<MarkovModelHandle> join(CompletableFuture<Optional<MarkovModelHandle>> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public void remove(Long id) {
+        lastUsePersisted.remove(id);
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            engine.freeModel(entry.handle);
+            logger.debug("Modelo {} retirado del registro", id);
+        }
+    }
+
+    public int getResidentCount() {
+        return entries.size();
+    }
+
+    /** Bytes fuera del heap del modelo, si está residente y el motor los informa (no cuenta como uso). */
+    public OptionalLong getOffHeapBytes(Long id) {
+        Entry entry = entries.get(id);
+        if (entry == null || entry.handle.getBytesFueraDelHeap() < 0) return OptionalLong.empty();
+        return OptionalLong.of(entry.handle.getBytesFueraDelHeap());
+    }
+
+    /** Suma de los bytes fuera del heap de los modelos residentes. */
+    public long getResidentOffHeapBytes() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += Math.max(0, entry.handle.getBytesFueraDelHeap());
+        }
+        return total;
+    }
+
+    public int getMaxModels() {
+        return maxModels;
+    }
+
+    // Sólo los hilos que registran modelos desalojan; la generación nunca pasa por aquí
+    private synchronized void evictOverflow() {
+        while (entries.size() > maxModels) {
+            Map.Entry<Long, Entry> eldest = null;
+            for (Map.Entry<Long, Entry> candidate : entries.entrySet()) {
+                if (eldest == null || candidate.getValue().lastAccess < eldest.getValue().lastAccess) {
+                    eldest = candidate;
+                }
+            }
+            if (eldest == null) return;
+
+            if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                engine.freeModel(eldest.getValue().handle);
+                logger.info("Modelo {} desalojado por LRU (máximo residentes: {})", eldest.getKey(), maxModels);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void freeAll() {
+        List<Long> ids = new ArrayList<>(entries.keySet());
+        ids.forEach(this::remove);
+    }
+}
@@ -1,16 +1,24 @@
 package com.ova.platform.markov.service;
 
+import com.ova.platform.markov.exception.ModelReleasedException;
 import com.ova.platform.markov.model.entity.MarkovModel;
+import com.ova.platform.markov.model.entity.TrainingDocument;
 import com.ova.platform.markov.model.request.CreateModelRequest;
 import com.ova.platform.markov.model.response.ModelResponse;
 import com.ova.platform.markov.repository.MarkovModelRepository;
+import com.ova.platform.markov.repository.TrainingDocumentRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,7 +30,22 @@ public class ModelService {
     private MarkovModelRepository modelRepository;
 
     @Autowired
-    private MarkovNativeService nativeService;
+    private TrainingDocumentRepository documentRepository;
+
+    @Autowired
+    private MarkovEngine engine;
+
+    @Autowired
+    private ModelRegistry modelRegistry;
+
+    @Autowired
+    private ModelSnapshotStore snapshotStore;
+
+    @Autowired
+    private GenerationCache generationCache;
+
+    @Autowired
+    private MarkovMetrics metrics;
 
     public List<ModelResponse> getAllModels() {
         List<MarkovModel> models = modelRepository.findAll();
@@ -49,15 +72,17 @@ public class ModelService {
         model.setTextoEntrenamiento(request.getTextoEntrenamiento());
         model.setEstado("ACTIVO");
 
-        // Si hay texto de entrenamiento, entrenar el modelo nativo
+        // Si hay texto de entrenamiento, entrenar un modelo propio en el motor
+        MarkovModelHandle handle = null;
+        long nanos = 0;
         if (request.getTextoEntrenamiento() != null && !request.getTextoEntrenamiento().trim().isEmpty()) {
+            long inicio = System.nanoTime();
             try {
-                nativeService.initializeModel(request.getOrden());
-                nativeService.trainModel(request.getTextoEntrenamiento());
+                handle = engine.trainModel(request.getOrden(), request.getTextoEntrenamiento());
+                nanos = System.nanoTime() - inicio;
 
-                // Simular estadísticas (en una implementación real, obtendrías esto de la librería nativa)
-                model.setVocabularioSize(calculateVocabularySize(request.getTextoEntrenamiento()));
-                model.setEstadosCount(calculateStatesCount(request.getTextoEntrenamiento(), request.getOrden()));
+                model.setVocabularioSize(vocabularySize(handle, request.getTextoEntrenamiento()));
+                model.setEstadosCount(statesCount(handle, request.getTextoEntrenamiento(), request.getOrden()));
 
             } catch (Exception e) {
                 logger.error("Error entrenando modelo durante creación", e);
@@ -66,50 +91,176 @@ public class ModelService {
         }
 
         MarkovModel savedModel = modelRepository.save(model);
+        // El tag model es el id, que se conoce tras el primer save
+        if (handle != null) {
+            metrics.entrenamiento(MarkovMetrics.modelo(savedModel.getId()), handle, nanos);
+        } else if ("ERROR".equals(savedModel.getEstado())) {
+            metrics.entrenamientoFallido(MarkovMetrics.modelo(savedModel.getId()), engine.getNombre(), request.getOrden());
+        }
+        if (handle != null) {
+            modelRegistry.register(savedModel.getId(), handle);
+            // El id se conoce tras el primer save: el snapshot se guarda después
+            Optional<String> snapshot = snapshotStore.save(savedModel.getId(), handle);
+            if (snapshot.isPresent()) {
+                savedModel.setSnapshotPath(snapshot.get());
+                savedModel = modelRepository.save(savedModel);
+            }
+        }
         logger.info("Modelo creado exitosamente: {}", savedModel.getNombre());
 
         return convertToResponse(savedModel);
     }
 
     public Optional<ModelResponse> updateModel(Long id, CreateModelRequest request) {
-        return modelRepository.findById(id).map(existingModel -> {
-            existingModel.setNombre(request.getNombre());
-            existingModel.setDescripcion(request.getDescripcion());
-            existingModel.setOrden(request.getOrden());
+        ReentrantLock lock = modelRegistry.lockFor(id);
+        lock.lock();
+        try {
+            return modelRepository.findById(id).map(existingModel -> {
+                boolean ordenCambiado = !request.getOrden().equals(existingModel.getOrden());
+                existingModel.setNombre(request.getNombre());
+                existingModel.setDescripcion(request.getDescripcion());
+                existingModel.setOrden(request.getOrden());
 
-            if (request.getTextoEntrenamiento() != null) {
-                existingModel.setTextoEntrenamiento(request.getTextoEntrenamiento());
+                if (request.getTextoEntrenamiento() != null) {
+                    // El texto nuevo reemplaza también lo añadido con entrenamiento incremental
+                    existingModel.setTextoEntrenamiento(request.getTextoEntrenamiento());
+                    documentRepository.deleteByModeloId(id);
 
+                    long inicio = System.nanoTime();
+                    try {
+                        MarkovModelHandle handle = engine.trainModel(request.getOrden(), request.getTextoEntrenamiento());
+                        metrics.entrenamiento(MarkovMetrics.modelo(id), handle, System.nanoTime() - inicio);
+                        modelRegistry.register(id, handle);
+                        replaceSnapshot(existingModel, handle);
 
-                try {
-                    nativeService.initializeModel(request.getOrden());
-                    nativeService.trainModel(request.getTextoEntrenamiento());
+                        existingModel.setVocabularioSize(vocabularySize(handle, request.getTextoEntrenamiento()));
+                        existingModel.setEstadosCount(statesCount(handle, request.getTextoEntrenamiento(), request.getOrden()));
+                        existingModel.setEstado("ACTIVO");
+
+                    } catch (Exception e) {
+                        logger.error("Error re-entrenando modelo", e);
+                        metrics.entrenamientoFallido(MarkovMetrics.modelo(id), engine.getNombre(), request.getOrden());
+                        modelRegistry.remove(id);
+                        replaceSnapshot(existingModel, null);
+                        existingModel.setEstado("ERROR");
+                    }
+                } else if (ordenCambiado) {
+                    // El modelo residente (y su snapshot) tiene otro orden: se re-entrena bajo demanda
+                    modelRegistry.remove(id);
+                    replaceSnapshot(existingModel, null);
+                }
+
+                MarkovModel updatedModel = modelRepository.save(existingModel);
+                // Después de publicar el modelo nuevo: los textos cacheados del anterior ya no valen
+                generationCache.invalidate(GenerationCache.modelo(id));
+                logger.info("Modelo actualizado: {}", updatedModel.getNombre());
+
+                return convertToResponse(updatedModel);
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                    existingModel.setVocabularioSize(calculateVocabularySize(request.getTextoEntrenamiento()));
-                    existingModel.setEstadosCount(calculateStatesCount(request.getTextoEntrenamiento(), request.getOrden()));
-                    existingModel.setEstado("ACTIVO");
+    /**
+     * Entrena el modelo sólo con el texto nuevo, sumándolo a las frecuencias que
+     * ya tiene, y publica el resultado en el registro. El texto se guarda como un
+     * documento aparte ({@link TrainingDocument}) para poder reconstruir el mismo
+     * modelo si se desaloja sin snapshot.
+     */
+    public Optional<ModelResponse> appendTraining(Long id, String texto) {
+        ReentrantLock lock = modelRegistry.lockFor(id);
+        lock.lock();
+        try {
+            return modelRepository.findById(id).map(model -> {
+                long inicio = System.nanoTime();
+                MarkovModelHandle handle;
+                try {
+                    handle = continueTraining(model, texto);
+                } catch (RuntimeException e) {
+                    metrics.entrenamientoFallido(MarkovMetrics.modelo(id), engine.getNombre(), model.getOrden());
+                    throw e;
+                }
+                metrics.entrenamiento(MarkovMetrics.modelo(id), handle, System.nanoTime() - inicio, texto.length());
+                modelRegistry.register(id, handle);
+                replaceSnapshot(model, handle);
 
-                } catch (Exception e) {
-                    logger.error("Error re-entrenando modelo", e);
-                    existingModel.setEstado("ERROR");
+                documentRepository.save(new TrainingDocument(id, texto));
+                if (handle.getVocabularioSize() >= 0) {
+                    model.setVocabularioSize(handle.getVocabularioSize());
                 }
-            }
+                if (handle.getEstadosCount() >= 0) {
+                    model.setEstadosCount(handle.getEstadosCount());
+                }
+                model.setEstado("ACTIVO");
 
-            MarkovModel updatedModel = modelRepository.save(existingModel);
-            logger.info("Modelo actualizado: {}", updatedModel.getNombre());
+                MarkovModel updatedModel = modelRepository.save(model);
+                generationCache.invalidate(GenerationCache.modelo(id));
+                logger.info("Modelo {} ampliado con {} caracteres - Vocabulario: {}, Estados: {}",
+                        updatedModel.getNombre(), texto.length(), updatedModel.getVocabularioSize(),
+                        updatedModel.getEstadosCount());
+                return convertToResponse(updatedModel);
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            return convertToResponse(updatedModel);
-        });
+    private MarkovModelHandle continueTraining(MarkovModel model, String texto) {
+        for (int intento = 1; ; intento++) {
+            // Un modelo que no está ACTIVO no tiene modelo residente y uno compactado con pérdida no sirve
+            // de base: se reentrenan todos sus textos y el nuevo
+            Optional<MarkovModelHandle> base = "ACTIVO".equals(model.getEstado())
+                    ? modelRegistry.getOrLoad(model.getId()).filter(MarkovModelHandle::hasExactCounts)
+                    : Optional.empty();
+            try {
+                return base.isPresent()
+                        ? engine.continueTraining(base.get(), new StringReader(texto))
+                        : engine.trainModel(model.getOrden(), withDocument(modelRegistry.trainingDocuments(model), texto));
+            } catch (ModelReleasedException e) {
+                // Desalojado entre la lectura y la copia: se vuelve a cargar
+                if (intento >= 3) throw e;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static List<String> withDocument(List<String> documentos, String texto) {
+        List<String> todos = new ArrayList<>(documentos);
+        todos.add(texto);
+        return todos;
     }
 
     public boolean deleteModel(Long id) {
-        Optional<MarkovModel> model = modelRepository.findById(id);
-        if (model.isPresent()) {
-            modelRepository.deleteById(id);
-            logger.info("Modelo eliminado: {}", model.get().getNombre());
-            return true;
+        // Con el lock del modelo: una carga en curso termina antes y ninguna posterior ve la fila
+        ReentrantLock lock = modelRegistry.lockFor(id);
+        lock.lock();
+        try {
+            Optional<MarkovModel> model = modelRepository.findById(id);
+            if (model.isPresent()) {
+                modelRepository.deleteById(id);
+                documentRepository.deleteByModeloId(id);
+                modelRegistry.remove(id);
+                snapshotStore.delete(model.get().getSnapshotPath());
+                generationCache.invalidate(GenerationCache.modelo(id));
+                logger.info("Modelo eliminado: {}", model.get().getNombre());
+                return true;
+            }
+            return false;
+        } finally {
+            modelRegistry.discardLock(id);
+            lock.unlock();
         }
-        return false;
+    }
+
+    /** Escribe el snapshot del modelo nuevo, o borra el anterior si {@code handle} es null. */
+    private void replaceSnapshot(MarkovModel model, MarkovModelHandle handle) {
+        Optional<String> snapshot = handle != null ? snapshotStore.save(model.getId(), handle) : Optional.empty();
+        if (snapshot.isEmpty()) {
+            snapshotStore.delete(model.getSnapshotPath());
+        }
+        model.setSnapshotPath(snapshot.orElse(null));
     }
 
     private ModelResponse convertToResponse(MarkovModel model) {
@@ -123,9 +274,20 @@ public class ModelService {
         response.setFechaCreacion(model.getFechaCreacion());
         response.setFechaActualizacion(model.getFechaActualizacion());
         response.setEstado(model.getEstado());
+        modelRegistry.getOffHeapBytes(model.getId()).ifPresent(response::setBytesFueraDelHeap);
         return response;
     }
 
+    // Estadísticas reales del motor si las informa; si no (librería nativa), estimación sobre el texto
+    private int vocabularySize(MarkovModelHandle handle, String text) {
+        int size = handle.getVocabularioSize();
+        return size >= 0 ? size : calculateVocabularySize(text);
+    }
+
+    private int statesCount(MarkovModelHandle handle, String text, int order) {
+        int count = handle.getEstadosCount();
+        return count >= 0 ? count : calculateStatesCount(text, order);
+    }
 
     private int calculateVocabularySize(String text) {
         if (text == null || text.trim().isEmpty()) return 0;
@@ -0,0 +1,121 @@
+package com.ova.platform.markov.service;
+
+import com.ova.platform.markov.model.entity.MarkovModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Snapshots binarios de los modelos persistidos, uno por {@code MarkovModel.id}
+ * en {@code markov.snapshots.dir}.
+ *
+ * <p>Un modelo con snapshot se carga en el motor leyendo el fichero, sin volver a
+ * tokenizar su texto. Si el motor activo no soporta snapshots, o el fichero falta
+ * o está corrupto, quien llama recurre al texto de entrenamiento.</p>
+ */
+@Service
+public class ModelSnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelSnapshotStore.class);
+
+    private static final String DEFAULT_SNAPSHOT = "default.mkvs";
+
+    @Autowired
+    private MarkovEngine engine;
+
+    @Value("${markov.snapshots.enabled:true}")
+    private boolean enabled;
+
+    @Value("${markov.snapshots.dir:data/snapshots}")
+    private String directory;
+
+    public boolean isEnabled() {
+        return enabled && engine.supportsSnapshots();
+    }
+
+    /**
+     * Escribe el snapshot del modelo recién entrenado.
+     *
+     * @return la ruta del fichero, o vacío si no se pudo escribir
+     */
+    public Optional<String> save(Long id, MarkovModelHandle handle) {
+        return write(Paths.get(directory, "model-" + id + ".mkvs"), handle, "del modelo " + id);
+    }
+
+    /** Carga el modelo desde su snapshot, si tiene uno válido y del mismo orden. */
+    public Optional<MarkovModelHandle> load(MarkovModel model) {
+        if (model.getSnapshotPath() == null) return Optional.empty();
+
+        Optional<MarkovModelHandle> handle = read(Paths.get(model.getSnapshotPath()), "Modelo " + model.getId());
+        if (handle.isPresent() && handle.get().getOrden() != model.getOrden()) {
+            logger.warn("El snapshot {} es de orden {} y el modelo {} de orden {}: se ignora",
+                    model.getSnapshotPath(), handle.get().getOrden(), model.getId(), model.getOrden());
+            engine.freeModel(handle.get());
+            return Optional.empty();
+        }
+        return handle;
+    }
+
+    /**
+     * Snapshot del modelo por defecto (el de /api/markov/train), para recuperarlo
+     * tras reiniciar. Si no se puede escribir se borra el anterior: al reiniciar
+     * no debe volver un modelo más viejo que el último entrenado.
+     */
+    public void saveDefault(MarkovModelHandle handle) {
+        Path file = Paths.get(directory, DEFAULT_SNAPSHOT);
+        if (write(file, handle, "del modelo por defecto").isEmpty() && isEnabled()) {
+            delete(file.toString());
+        }
+    }
+
+    public Optional<MarkovModelHandle> loadDefault() {
+        Path file = Paths.get(directory, DEFAULT_SNAPSHOT);
+        return Files.exists(file) ? read(file, "Modelo por defecto") : Optional.empty();
+    }
+
+    private Optional<String> write(Path file, MarkovModelHandle handle, String descripcion) {
+        if (!isEnabled()) return Optional.empty();
+
+        long startTime = System.currentTimeMillis();
+        try {
+            engine.saveSnapshot(handle, file);
+            logger.info("Snapshot {} escrito en {} ({} bytes, {}ms)", descripcion, file, Files.size(file),
+                    System.currentTimeMillis() - startTime);
+            return Optional.of(file.toString());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("No se pudo escribir el snapshot {}: {}", descripcion, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Optional<MarkovModelHandle> read(Path file, String descripcion) {
+        if (!isEnabled()) return Optional.empty();
+
+        long startTime = System.currentTimeMillis();
+        try {
+            MarkovModelHandle handle = engine.loadSnapshot(file);
+            logger.info("{} cargado desde snapshot en {}ms", descripcion, System.currentTimeMillis() - startTime);
+            return Optional.of(handle);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("No se pudo cargar el snapshot {} ({}): {}", descripcion, file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void delete(String path) {
+        if (path == null) return;
+        try {
+            Files.deleteIfExists(Paths.get(path));
+        } catch (IOException e) {
+            logger.warn("No se pudo borrar el snapshot {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.ova.platform.markov.service;
+
+import com.ova.platform.markov.model.entity.MarkovModel;
+import com.ova.platform.markov.repository.MarkovModelRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carga en el motor, al arrancar, los modelos {@code ACTIVO} usados más
+ * recientemente (el "hot set") en paralelo sobre un pool acotado.
+ *
+ * <p>El arranque no espera al warm-up: el servidor ya acepta peticiones y el
+ * resto de modelos se cargan bajo demanda en {@link ModelRegistry#getOrLoad}.
+ * El grupo de health {@code readiness} informa OUT_OF_SERVICE hasta que termina
+ * (ver {@code WarmupHealthIndicator}).</p>
+ */
+@Service
+public class ModelWarmupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelWarmupService.class);
+
+    @Autowired
+    private MarkovModelRepository modelRepository;
+
+    @Autowired
+    private ModelRegistry modelRegistry;
+
+    @Autowired
+    private MarkovService markovService;
+
+    @Value("${markov.warmup.enabled:true}")
+    private boolean enabled;
+
+    // 0 = tantos como la capacidad del registro
+    @Value("${markov.warmup.hot-set-size:0}")
+    private int hotSetSize;
+
+    // 0 = min(4, procesadores)
+    @Value("${markov.warmup.threads:0}")
+    private int threads;
+
+    private volatile boolean completed;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void onApplicationStarted() {
+        if (!enabled) {
+            completed = true;
+            logger.info("Warm-up de modelos desactivado");
+            return;
+        }
+
+        int capacity = hotSetSize > 0 ? Math.min(hotSetSize, modelRegistry.getMaxModels()) : modelRegistry.getMaxModels();
+        List<MarkovModel> hotSet;
+        try {
+            hotSet = modelRepository.findActiveModels().stream()
+                    .sorted(Comparator.comparing(this::ultimoUso, Comparator.nullsLast(Comparator.reverseOrder())))
+                    .limit(capacity)
+                    .toList();
+        } catch (RuntimeException e) {
+            // Sin lista de modelos no hay warm-up, pero la carga bajo demanda sigue funcionando
+            logger.error("Warm-up: no se pudieron consultar los modelos activos", e);
+            completed = true;
+            return;
+        }
+        total.set(hotSet.size());
+
+        int poolSize = threads > 0 ? threads : Math.min(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "markov-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long startTime = System.currentTimeMillis();
+        logger.info("Warm-up: cargando {} modelos activos con {} hilos", hotSet.size(), poolSize);
+
+        CompletableFuture<?>[] tareas = new CompletableFuture<?>[hotSet.size() + 1];
+        tareas[0] = CompletableFuture.runAsync(markovService::restaurarModeloPorDefecto, executor);
+        for (int i = 0; i < hotSet.size(); i++) {
+            MarkovModel model = hotSet.get(i);
+            tareas[i + 1] = CompletableFuture.runAsync(() -> warmUp(model), executor);
+        }
+
+        CompletableFuture.allOf(tareas).whenComplete((ignored, error) -> {
+            completed = true;
+            executor.shutdown();
+            logger.info("✅ Warm-up completado en {}ms - Cargados: {}, Fallidos: {}",
+                    System.currentTimeMillis() - startTime, loaded.get(), failed.get());
+        });
+    }
+
+    private void warmUp(MarkovModel model) {
+        try {
+            if (modelRegistry.preload(model.getId()).isPresent()) {
+                loaded.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warn("Warm-up: no se pudo cargar el modelo {} ('{}'): {}", model.getId(), model.getNombre(), e.getMessage());
+        }
+    }
+
+    private LocalDateTime ultimoUso(MarkovModel model) {
+        return model.getFechaUltimoUso() != null ? model.getFechaUltimoUso() : model.getFechaActualizacion();
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    public int getLoaded() {
+        return loaded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+}
@@ -0,0 +1,38 @@
+package com.ova.platform.markov.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle con contador de referencias. Nace con una referencia (la del dueño,
+ * que la suelta con {@link MarkovEngine#freeModel}); cada generación toma una
+ * referencia adicional mientras dura. La memoria del modelo se libera sólo al
+ * soltar la última, así que reemplazar o desalojar un modelo nunca invalida
+ * una generación en curso.
+ */
+abstract class ReferenceCountedHandle implements MarkovModelHandle {
+
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    @Override
+    public final boolean retain() {
+        int current;
+        do {
+            current = references.get();
+            if (current == 0) return false;
+        } while (!references.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    @Override
+    public final void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            dispose();
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Modelo liberado más veces de las retenidas");
+        }
+    }
+
+    /** Libera los recursos del modelo; se invoca una única vez. */
+    protected abstract void dispose();
+}
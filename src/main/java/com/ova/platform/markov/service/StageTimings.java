@@ -0,0 +1,57 @@
+package com.ova.platform.markov.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Nanosegundos por etapa de una petición de generación o entrenamiento, en el
+ * orden en que se registraron. Las etapas repetidas se suman (p. ej. las
+ * llamadas a {@code markov_train_chunk} de varios hilos).
+ *
+ * <p>{@link #NONE} no mide nada y es lo que reciben los motores cuando la
+ * petición no pidió tiempos ni fue muestreada: {@link #now()} devuelve 0 sin
+ * leer el reloj, así que la ruta normal no paga la instrumentación.</p>
+ */
+public final class StageTimings {
+
+    /** Tiempos desactivados. */
+    public static final StageTimings NONE = new StageTimings(false);
+
+    private final boolean enabled;
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    private StageTimings(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static StageTimings start() {
+        return new StageTimings(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** {@link System#nanoTime()}, o 0 si los tiempos están desactivados. */
+    public long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public synchronized void add(String stage, long nanos) {
+        if (enabled) {
+            stages.merge(stage, nanos, Long::sum);
+        }
+    }
+
+    /** Registra el tiempo desde {@code start} (un valor de {@link #now()}) y devuelve el instante actual. */
+    public long since(String stage, long start) {
+        if (!enabled) return 0;
+        long now = System.nanoTime();
+        add(stage, now - start);
+        return now;
+    }
+
+    public synchronized Map<String, Long> asMap() {
+        return new LinkedHashMap<>(stages);
+    }
+}
@@ -0,0 +1,79 @@
+package com.ova.platform.markov.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Trazas con los tiempos por etapa de las últimas peticiones de generación y
+ * entrenamiento que los midieron: las que traen {@code debugTimings} y una
+ * muestra aleatoria del resto ({@code markov.timings.sample-rate}). Se guardan
+ * en un buffer circular de {@code markov.timings.ring-size} entradas que se
+ * consulta en {@code /actuator/markovtimings}.
+ *
+ * <p>Escribir una traza es un incremento atómico y una escritura en el array,
+ * sin locks; las trazas más antiguas se sobrescriben.</p>
+ */
+@Service
+public class TimingTraces {
+
+    /** Tiempos de una petición. */
+    public record Traza(Instant instante, String operacion, String modelo, String motor, int orden,
+                        Map<String, Long> tiemposNs) {
+    }
+
+    @Value("${markov.timings.sample-rate:0.01}")
+    private double sampleRate;
+
+    private final AtomicReferenceArray<Traza> ring;
+    private final AtomicLong siguiente = new AtomicLong();
+
+    public TimingTraces(@Value("${markov.timings.ring-size:256}") int ringSize) {
+        this.ring = new AtomicReferenceArray<>(Math.max(1, ringSize));
+    }
+
+    /**
+     * Tiempos para una petición: activos si el cliente los pidió o si cae en la
+     * muestra, {@link StageTimings#NONE} en otro caso.
+     */
+    public StageTimings iniciar(boolean solicitado) {
+        if (solicitado || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+            return StageTimings.start();
+        }
+        return StageTimings.NONE;
+    }
+
+    /** Guarda la traza si {@code tiempos} está activo. */
+    public void registrar(String operacion, String modelo, String motor, int orden, StageTimings tiempos) {
+        if (!tiempos.isEnabled()) return;
+        Traza traza = new Traza(Instant.now(), operacion, modelo, motor, orden, tiempos.asMap());
+        ring.set((int) (siguiente.getAndIncrement() % ring.length()), traza);
+    }
+
+    /** Trazas del buffer, de la más reciente a la más antigua. */
+    public List<Traza> recientes() {
+        long fin = siguiente.get();
+        int total = (int) Math.min(fin, ring.length());
+        List<Traza> trazas = new ArrayList<>(total);
+        for (long i = fin - 1; i >= fin - total; i--) {
+            Traza traza = ring.get((int) (i % ring.length()));
+            if (traza != null) trazas.add(traza);
+        }
+        return trazas;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getCapacidad() {
+        return ring.length();
+    }
+}
@@ -1,13 +1,19 @@
+#define _POSIX_C_SOURCE 200809L
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
 #include <time.h>
 #include <ctype.h>
+#include <limits.h>
 
-#define MAX_WORD_LENGTH 100
-#define MAX_WORDS 5000
-#define MAX_STATES 2000
-#define MAX_NEXT_WORDS 100
+// Capacidades iniciales: todas las tablas crecen bajo demanda
+#define INITIAL_TOKENS 1024
+#define INITIAL_STATES 1024
+#define INITIAL_NEXT_WORDS 4
+#define INITIAL_INDEX_SIZE 2048
+#define INITIAL_PENDING 64
+#define EMPTY_SLOT -1
+#define DELIMITERS " \t\n\r,.;:!?\"'()[]{}"
 
 // Estructura para un estado de Markov
 typedef struct {
@@ -15,23 +21,87 @@ typedef struct {
     int word_count;
     char** next_words;
     int next_count;
+    int next_capacity;
     int* frequencies;
+    unsigned int hash;
+    // Tabla alias (Walker/Vose) para muestrear el sucesor en O(1)
+    int total_freq;
+    int* alias;
+    int* thresholds;
+    int alias_dirty;
+    // Grafo compilado: next_state[j] es el estado al que lleva el sucesor j (-1 si no existe)
+    int* next_state;
 } MarkovState;
 
 // Estructura principal del modelo
 typedef struct {
     MarkovState* states;
     int state_count;
+    int state_capacity;
     int order;
+    // Índice hash de estados (direccionamiento abierto, sondeo lineal)
+    int* index;
+    int index_size;
+    // Índice de sufijos: ids de estado ordenados por sus palabras leídas al revés
+    // (la última primero); los estados que terminan igual quedan contiguos.
+    // suffix_totals[i] es la suma de total_freq de suffix_order[0..i)
+    int* suffix_order;
+    long long* suffix_totals;
+    // Entrenamiento por fragmentos: ventana de las últimas `order` palabras y
+    // palabra partida al final del fragmento anterior
+    char** window;
+    int window_fill;
+    char* pending;
+    size_t pending_length;
+    size_t pending_capacity;
+    // Modelo compactado (markov_compact_model): las palabras están internadas en
+    // `arena` y los sucesores de todos los estados son contiguos en arrays
+    // compartidos, a los que apuntan los punteros de cada MarkovState. Los
+    // recuentos van en packed_counts con count_bytes bytes (frequencies es NULL).
+    // Un modelo compactado ya no se entrena: se clona y se entrena la copia.
+    char* arena;
+    size_t arena_size;
+    char** packed_words;
+    char** packed_next;
+    void* packed_counts;
+    int count_bytes;
+    int* packed_ints;
+    // La compactación descartó sucesores o reescaló recuentos: las frecuencias
+    // ya no son las del texto y el modelo no sirve de base para seguir entrenando
+    int lossy;
 } MarkovModel;
 
+// Generador xorshift64*: cada generación tiene su propio estado, así que no
+// comparte el estado global de rand() entre hilos y admite semillas por petición
+typedef struct {
+    unsigned long long s;
+} MarkovRng;
+
+// Buffer de salida: crece bajo demanda o, si es del llamador, tiene tamaño fijo
+typedef struct {
+    char* data;
+    size_t length;
+    size_t capacity;
+    int growable;
+} OutputBuffer;
+
+// Minúsculas sólo ASCII, sin depender del locale del proceso: los bytes de
+// UTF-8 multibyte (tildes, ñ) se dejan como están, igual que Tokenizer en Java
+unsigned char ascii_lower(unsigned char c) {
+    return c >= 'A' && c <= 'Z' ? (unsigned char) (c + ('a' - 'A')) : c;
+}
+
 // Función para convertir a minúsculas
 void to_lowercase(char* str) {
     for (int i = 0; str[i]; i++) {
-        str[i] = tolower(str[i]);
+        str[i] = (char) ascii_lower((unsigned char) str[i]);
     }
 }
 
+int is_delimiter(unsigned char c) {
+    return c != '\0' && strchr(DELIMITERS, c) != NULL;
+}
+
 // Función para duplicar strings (como strdup pero portable)
 char* duplicate_string(const char* s) {
     if (s == NULL) return NULL;
@@ -56,7 +126,8 @@ char** tokenize_text(const char* text, int* word_count) {
         return NULL;
     }
     
-    char** tokens = malloc(MAX_WORDS * sizeof(char*));
+    int capacity = INITIAL_TOKENS;
+    char** tokens = malloc(capacity * sizeof(char*));
     if (tokens == NULL) {
         free(text_copy);
         *word_count = 0;
@@ -65,38 +136,500 @@ char** tokenize_text(const char* text, int* word_count) {
     
     *word_count = 0;
     
-    // Tokenización más robusta
-    char* token = strtok(text_copy, " \t\n\r,.;:!?\"'()[]{}");
-    while (token != NULL && *word_count < MAX_WORDS) {
+    // Tokenización más robusta (strtok_r: reentrante, varios hilos generan a la vez)
+    char* saveptr = NULL;
+    char* token = strtok_r(text_copy, DELIMITERS, &saveptr);
+    while (token != NULL) {
+        if (*word_count == capacity) {
+            char** grown = realloc(tokens, capacity * 2 * sizeof(char*));
+            if (grown == NULL) break;
+            tokens = grown;
+            capacity *= 2;
+        }
         to_lowercase(token);
         tokens[*word_count] = duplicate_string(token);
         if (tokens[*word_count] != NULL) {
             (*word_count)++;
         }
-        token = strtok(NULL, " \t\n\r,.;:!?\"'()[]{}");
+        token = strtok_r(NULL, DELIMITERS, &saveptr);
     }
     
     free(text_copy);
     return tokens;
 }
 
+// Hash FNV-1a de la tupla de palabras (con separador entre palabras)
+unsigned int hash_words(char** words, int count) {
+    unsigned int hash = 2166136261u;
+    for (int i = 0; i < count; i++) {
+        for (const unsigned char* p = (const unsigned char*) words[i]; *p; p++) {
+            hash ^= *p;
+            hash *= 16777619u;
+        }
+        hash ^= 0x1f;
+        hash *= 16777619u;
+    }
+    return hash;
+}
+
+int state_matches(MarkovState* state, char** words, int count) {
+    for (int j = 0; j < count; j++) {
+        if (strcmp(state->words[j], words[j]) != 0) return 0;
+    }
+    return 1;
+}
+
+// Posición del índice donde está (o debería insertarse) la tupla de palabras
+int find_slot(MarkovModel* model, char** words, int count, unsigned int hash) {
+    int mask = model->index_size - 1;
+    int slot = hash & mask;
+    while (model->index[slot] != EMPTY_SLOT) {
+        MarkovState* state = &model->states[model->index[slot]];
+        if (state->hash == hash && state_matches(state, words, count)) break;
+        slot = (slot + 1) & mask;
+    }
+    return slot;
+}
+
+// Duplica el tamaño del índice y reinserta los estados (factor de carga <= 0.5)
+int grow_index(MarkovModel* model) {
+    int new_size = model->index_size * 2;
+    int* new_index = malloc(new_size * sizeof(int));
+    if (new_index == NULL) return 0;
+    for (int i = 0; i < new_size; i++) new_index[i] = EMPTY_SLOT;
+
+    int mask = new_size - 1;
+    for (int i = 0; i < model->state_count; i++) {
+        int slot = model->states[i].hash & mask;
+        while (new_index[slot] != EMPTY_SLOT) slot = (slot + 1) & mask;
+        new_index[slot] = i;
+    }
+
+    free(model->index);
+    model->index = new_index;
+    model->index_size = new_size;
+    return 1;
+}
+
 // Buscar estado en el modelo
 int find_state_index(MarkovModel* model, char** words, int count) {
+    unsigned int hash = hash_words(words, count);
+    int slot = find_slot(model, words, count, hash);
+    return model->index[slot];
+}
+
+// Crea un estado nuevo para la tupla de palabras; devuelve su índice o -1
+int add_state(MarkovModel* model, char** words, unsigned int hash) {
+    if ((model->state_count + 1) * 2 > model->index_size && !grow_index(model)) {
+        return -1;
+    }
+    if (model->state_count == model->state_capacity) {
+        int new_capacity = model->state_capacity * 2;
+        MarkovState* grown = realloc(model->states, new_capacity * sizeof(MarkovState));
+        if (grown == NULL) return -1;
+        model->states = grown;
+        model->state_capacity = new_capacity;
+    }
+
+    int state_index = model->state_count;
+    MarkovState* state = &model->states[state_index];
+    state->words = malloc(model->order * sizeof(char*));
+    state->next_words = malloc(INITIAL_NEXT_WORDS * sizeof(char*));
+    state->frequencies = malloc(INITIAL_NEXT_WORDS * sizeof(int));
+    if (state->words == NULL || state->next_words == NULL || state->frequencies == NULL) {
+        free(state->words);
+        free(state->next_words);
+        free(state->frequencies);
+        return -1;
+    }
+
+    for (int j = 0; j < model->order; j++) {
+        state->words[j] = duplicate_string(words[j]);
+        if (state->words[j] == NULL) {
+            // Limpiar en caso de error
+            for (int k = 0; k < j; k++) free(state->words[k]);
+            free(state->words);
+            free(state->next_words);
+            free(state->frequencies);
+            return -1;
+        }
+    }
+    state->word_count = model->order;
+    state->next_count = 0;
+    state->next_capacity = INITIAL_NEXT_WORDS;
+    state->hash = hash;
+    state->total_freq = 0;
+    state->alias = NULL;
+    state->thresholds = NULL;
+    state->alias_dirty = 1;
+    state->next_state = NULL;
+
+    model->index[find_slot(model, words, model->order, hash)] = state_index;
+    model->state_count++;
+    return state_index;
+}
+
+// Suma `count` ocurrencias de next_word como sucesor del estado
+void add_next_word_count(MarkovState* state, const char* next_word, int count) {
+    state->alias_dirty = 1;
+    for (int j = 0; j < state->next_count; j++) {
+        if (strcmp(state->next_words[j], next_word) == 0) {
+            state->frequencies[j] += count;
+            return;
+        }
+    }
+
+    if (state->next_count == state->next_capacity) {
+        int new_capacity = state->next_capacity * 2;
+        char** words = realloc(state->next_words, new_capacity * sizeof(char*));
+        if (words == NULL) return;
+        state->next_words = words;
+        int* frequencies = realloc(state->frequencies, new_capacity * sizeof(int));
+        if (frequencies == NULL) return;
+        state->frequencies = frequencies;
+        state->next_capacity = new_capacity;
+    }
+
+    state->next_words[state->next_count] = duplicate_string(next_word);
+    if (state->next_words[state->next_count] != NULL) {
+        state->frequencies[state->next_count] = count;
+        state->next_count++;
+    }
+}
+
+// Suma una ocurrencia de next_word como sucesor del estado
+void add_next_word(MarkovState* state, const char* next_word) {
+    add_next_word_count(state, next_word, 1);
+}
+
+// Recuento del sucesor j, esté el modelo compactado o no
+int state_frequency(MarkovModel* model, MarkovState* state, int j) {
+    if (state->frequencies != NULL) return state->frequencies[j];
+    size_t t = (size_t) (state->next_words - model->packed_next) + j;
+    switch (model->count_bytes) {
+        case 1: return ((unsigned char*) model->packed_counts)[t];
+        case 2: return ((unsigned short*) model->packed_counts)[t];
+        default: return ((int*) model->packed_counts)[t];
+    }
+}
+
+// Construye la tabla alias del estado con aritmética entera (método de Vose).
+// Cada sucesor j es una "urna" con umbral thresholds[j] en [0, total_freq]:
+// se elige la urna uniformemente y un r en [0, total_freq); si r < umbral se
+// devuelve j, si no alias[j]. La probabilidad resultante es exactamente
+// frequencies[j] / total_freq.
+int build_alias_table(MarkovState* state) {
+    int n = state->next_count;
+    free(state->alias);
+    free(state->thresholds);
+    state->alias = malloc(n * sizeof(int));
+    state->thresholds = malloc(n * sizeof(int));
+    long long* scaled = malloc(n * sizeof(long long));
+    int* small = malloc(n * sizeof(int));
+    int* large = malloc(n * sizeof(int));
+    if (state->alias == NULL || state->thresholds == NULL || scaled == NULL || small == NULL || large == NULL) {
+        free(state->alias);
+        free(state->thresholds);
+        state->alias = NULL;
+        state->thresholds = NULL;
+        free(scaled);
+        free(small);
+        free(large);
+        return 0;
+    }
+
+    long long total = 0;
+    for (int j = 0; j < n; j++) total += state->frequencies[j];
+    state->total_freq = (int) total;
+
+    int small_count = 0, large_count = 0;
+    for (int j = 0; j < n; j++) {
+        scaled[j] = (long long) state->frequencies[j] * n;
+        state->alias[j] = j;
+        if (scaled[j] < total) small[small_count++] = j;
+        else large[large_count++] = j;
+    }
+
+    while (small_count > 0 && large_count > 0) {
+        int s = small[--small_count];
+        int l = large[large_count - 1];
+        state->thresholds[s] = (int) scaled[s];
+        state->alias[s] = l;
+        scaled[l] -= total - scaled[s];
+        if (scaled[l] < total) {
+            large_count--;
+            small[small_count++] = l;
+        }
+    }
+    while (large_count > 0) state->thresholds[large[--large_count]] = (int) total;
+    while (small_count > 0) state->thresholds[small[--small_count]] = (int) total;
+
+    free(scaled);
+    free(small);
+    free(large);
+    state->alias_dirty = 0;
+    return 1;
+}
+
+// Inicializa el generador con splitmix64: semillas próximas dan secuencias independientes
+void rng_seed(MarkovRng* rng, unsigned long long seed) {
+    unsigned long long z = seed + 0x9E3779B97F4A7C15ULL;
+    z = (z ^ (z >> 30)) * 0xBF58476D1CE4E5B9ULL;
+    z = (z ^ (z >> 27)) * 0x94D049BB133111EBULL;
+    z ^= z >> 31;
+    rng->s = z != 0 ? z : 0x9E3779B97F4A7C15ULL;
+}
+
+unsigned long long rng_next(MarkovRng* rng) {
+    unsigned long long x = rng->s;
+    x ^= x >> 12;
+    x ^= x << 25;
+    x ^= x >> 27;
+    rng->s = x;
+    return x * 0x2545F4914F6CDD1DULL;
+}
+
+// Entero uniforme en [0, n) (multiplicación en vez de módulo)
+int rng_below(MarkovRng* rng, int n) {
+    return (int) (((rng_next(rng) >> 32) * (unsigned long long) n) >> 32);
+}
+
+// Reloj monotónico en nanosegundos, para los tiempos por etapa
+static long long monotonic_ns(void) {
+    struct timespec now;
+    clock_gettime(CLOCK_MONOTONIC, &now);
+    return (long long) now.tv_sec * 1000000000LL + now.tv_nsec;
+}
+
+// Semilla para las generaciones sin semilla explícita
+unsigned long long next_seed(void) {
+    static unsigned long long counter = 0;
+    unsigned long long sequence = __atomic_fetch_add(&counter, 1, __ATOMIC_RELAXED);
+    struct timespec now;
+    clock_gettime(CLOCK_REALTIME, &now);
+    return ((unsigned long long) now.tv_sec << 32) ^ (unsigned long long) now.tv_nsec ^ (sequence * 0x9E3779B97F4A7C15ULL);
+}
+
+// Muestreo O(1) del sucesor usando la tabla alias; devuelve su posición
+int sample_next_index(MarkovState* state, MarkovRng* rng) {
+    int j = rng_below(rng, state->next_count);
+    int r = rng_below(rng, state->total_freq);
+    return r < state->thresholds[j] ? j : state->alias[j];
+}
+
+const char* sample_next_word(MarkovState* state, MarkovRng* rng) {
+    return state->next_words[sample_next_index(state, rng)];
+}
+
+// Reconstruye las tablas alias de los estados modificados por el último entrenamiento
+void build_alias_tables(MarkovModel* model) {
     for (int i = 0; i < model->state_count; i++) {
-        int match = 1;
-        for (int j = 0; j < count; j++) {
-            if (strcmp(model->states[i].words[j], words[j]) != 0) {
-                match = 0;
-                break;
-            }
+        MarkovState* state = &model->states[i];
+        if (state->alias_dirty && state->next_count > 0) {
+            build_alias_table(state);
+        }
+    }
+}
+
+// Compila el grafo de transiciones: para cada sucesor, el índice del estado
+// formado por las últimas order-1 palabras del estado y la palabra sucesora.
+// Se recalcula entero tras cada entrenamiento porque los estados nuevos pueden
+// ser destino de sucesores antiguos. Devuelve 0 si falta memoria.
+int link_states(MarkovModel* model) {
+    char** key = malloc(model->order * sizeof(char*));
+    if (key == NULL) return 0;
+
+    int ok = 1;
+    for (int i = 0; i < model->state_count; i++) {
+        MarkovState* state = &model->states[i];
+        free(state->next_state);
+        state->next_state = NULL;
+        if (state->next_count == 0) continue;
+
+        state->next_state = malloc(state->next_count * sizeof(int));
+        if (state->next_state == NULL) {
+            ok = 0;
+            continue;
+        }
+        memcpy(key, state->words + 1, (model->order - 1) * sizeof(char*));
+        for (int j = 0; j < state->next_count; j++) {
+            key[model->order - 1] = state->next_words[j];
+            state->next_state[j] = find_state_index(model, key, model->order);
         }
-        if (match) return i;
     }
-    return -1;
+    free(key);
+    return ok;
+}
+
+// Compara dos estados por sus palabras de la última a la primera
+int compare_suffixes(MarkovModel* model, int a, int b) {
+    for (int k = model->order - 1; k >= 0; k--) {
+        int c = strcmp(model->states[a].words[k], model->states[b].words[k]);
+        if (c != 0) return c;
+    }
+    return 0;
+}
+
+// Merge sort de ids[0..n) (qsort no admite contexto de forma portable)
+void sort_suffixes(MarkovModel* model, int* ids, int* buffer, int n) {
+    if (n < 2) return;
+    int half = n / 2;
+    sort_suffixes(model, ids, buffer, half);
+    sort_suffixes(model, ids + half, buffer, n - half);
+    int i = 0, j = half, k = 0;
+    while (i < half && j < n) {
+        buffer[k++] = compare_suffixes(model, ids[j], ids[i]) < 0 ? ids[j++] : ids[i++];
+    }
+    while (i < half) buffer[k++] = ids[i++];
+    while (j < n) buffer[k++] = ids[j++];
+    memcpy(ids, buffer, n * sizeof(int));
+}
+
+// Reconstruye el índice de sufijos; sin memoria queda NULL y el inicio sin
+// n-grama completo vuelve a ser un estado aleatorio. Devuelve 0 si falta memoria.
+int build_suffix_index(MarkovModel* model) {
+    free(model->suffix_order);
+    free(model->suffix_totals);
+    model->suffix_order = NULL;
+    model->suffix_totals = NULL;
+    if (model->state_count == 0) return 1;
+
+    int* ids = malloc(model->state_count * sizeof(int));
+    int* buffer = malloc(model->state_count * sizeof(int));
+    long long* totals = malloc((model->state_count + 1) * sizeof(long long));
+    if (ids == NULL || buffer == NULL || totals == NULL) {
+        free(ids);
+        free(buffer);
+        free(totals);
+        return 0;
+    }
+    for (int i = 0; i < model->state_count; i++) ids[i] = i;
+    sort_suffixes(model, ids, buffer, model->state_count);
+    free(buffer);
+    totals[0] = 0;
+    for (int i = 0; i < model->state_count; i++) {
+        totals[i + 1] = totals[i] + model->states[ids[i]].total_freq;
+    }
+    model->suffix_order = ids;
+    model->suffix_totals = totals;
+    return 1;
+}
+
+// Primera posición de suffix_order[lo..hi) cuya palabra `position` es >= word
+// (o > word con `after`)
+int suffix_bound(MarkovModel* model, int lo, int hi, int position, const char* word, int after) {
+    while (lo < hi) {
+        int mid = (lo + hi) / 2;
+        int c = strcmp(model->states[model->suffix_order[mid]].words[position], word);
+        if (c < 0 || (after && c == 0)) {
+            lo = mid + 1;
+        } else {
+            hi = mid;
+        }
+    }
+    return lo;
+}
+
+// Rango [*lo, *hi) de suffix_order con los estados que terminan en el sufijo más
+// largo de words[0..count) (count <= order). Cada palabra del sufijo estrecha el
+// rango con dos búsquedas binarias: O(order · log estados), sin recorrer la
+// tabla. Devuelve las palabras del sufijo encontrado (0 si ninguna).
+int match_suffix(MarkovModel* model, char** words, int count, int* lo, int* hi) {
+    int from_all = 0, to_all = model->state_count, matched = 0;
+    for (int k = 1; k <= model->order && k <= count; k++) {
+        const char* word = words[count - k];
+        int position = model->order - k;
+        int from = suffix_bound(model, from_all, to_all, position, word, 0);
+        int to = suffix_bound(model, from, to_all, position, word, 1);
+        if (from == to) break;
+        from_all = from;
+        to_all = to;
+        matched = k;
+    }
+    *lo = from_all;
+    *hi = to_all;
+    return matched;
+}
+
+// Estado inicial para las palabras `words[0..count)`: el de las últimas `order`
+// si existe y, si no, uno que termine en el sufijo más largo posible (backoff),
+// elegido al azar entre los que lo comparten. Devuelve -1 si ningún estado
+// termina en la última palabra.
+int resolve_start_state(MarkovModel* model, char** words, int count, MarkovRng* rng) {
+    if (count >= model->order) {
+        int state_index = find_state_index(model, words + count - model->order, model->order);
+        if (state_index != EMPTY_SLOT) return state_index;
+    }
+    if (model->suffix_order == NULL) return -1;
+
+    int lo, hi;
+    if (match_suffix(model, words, count, &lo, &hi) == 0) return -1;
+    return model->suffix_order[hi - lo == 1 ? lo : lo + rng_below(rng, hi - lo)];
+}
+
+// Estado de suffix_order[lo..hi) elegido con probabilidad proporcional a su
+// total_freq: elegir así el estado y luego su sucesor da la distribución del
+// contexto común (de orden menor que el del modelo)
+int sample_weighted_state(MarkovModel* model, int lo, int hi, MarkovRng* rng) {
+    long long base = model->suffix_totals[lo];
+    long long span = model->suffix_totals[hi] - base;
+    if (hi - lo == 1 || span <= 0) return model->suffix_order[lo];
+    long long r = base + (long long) (rng_next(rng) % (unsigned long long) span);
+    // Última posición i de [lo, hi) con suffix_totals[i] <= r
+    int a = lo, b = hi - 1;
+    while (a < b) {
+        int mid = (a + b + 1) / 2;
+        if (model->suffix_totals[mid] <= r) {
+            a = mid;
+        } else {
+            b = mid - 1;
+        }
+    }
+    return model->suffix_order[a];
+}
+
+// Cuenta una palabra completa (propiedad del modelo a partir de aquí)
+void train_token(MarkovModel* model, char* token) {
+    if (model->window_fill < model->order) {
+        model->window[model->window_fill++] = token;
+        return;
+    }
+
+    // Buscar o crear el estado de la ventana actual
+    unsigned int hash = hash_words(model->window, model->order);
+    int slot = find_slot(model, model->window, model->order, hash);
+    int state_index = model->index[slot];
+    if (state_index == EMPTY_SLOT) {
+        state_index = add_state(model, model->window, hash);
+    }
+
+    // Agregar palabra siguiente
+    if (state_index != -1) {
+        add_next_word(&model->states[state_index], token);
+    }
+
+    // Desplazar la ventana
+    free(model->window[0]);
+    memmove(model->window, model->window + 1, (model->order - 1) * sizeof(char*));
+    model->window[model->order - 1] = token;
+}
+
+// Emite la palabra acumulada en pending (si la hay)
+void flush_pending(MarkovModel* model) {
+    if (model->pending_length == 0) return;
+    char* token = malloc(model->pending_length + 1);
+    if (token != NULL) {
+        memcpy(token, model->pending, model->pending_length);
+        token[model->pending_length] = '\0';
+        train_token(model, token);
+    }
+    model->pending_length = 0;
 }
 
 // ========== API PÚBLICA - PARA JNI ==========
 
+void markov_free_model(MarkovModel* model);
+
 // Crear nuevo modelo Markov
 MarkovModel* markov_create_model(int order) {
     MarkovModel* model = malloc(sizeof(MarkovModel));
@@ -104,234 +637,450 @@ MarkovModel* markov_create_model(int order) {
     
     model->order = order;
     model->state_count = 0;
-    model->states = malloc(MAX_STATES * sizeof(MarkovState));
+    model->state_capacity = INITIAL_STATES;
+    model->states = malloc(INITIAL_STATES * sizeof(MarkovState));
+    model->index_size = INITIAL_INDEX_SIZE;
+    model->index = malloc(INITIAL_INDEX_SIZE * sizeof(int));
+    model->suffix_order = NULL;
+    model->suffix_totals = NULL;
+    model->window = malloc(order * sizeof(char*));
+    model->window_fill = 0;
+    model->pending = malloc(INITIAL_PENDING);
+    model->pending_length = 0;
+    model->pending_capacity = INITIAL_PENDING;
+    model->arena = NULL;
+    model->arena_size = 0;
+    model->packed_words = NULL;
+    model->packed_next = NULL;
+    model->packed_counts = NULL;
+    model->count_bytes = 0;
+    model->packed_ints = NULL;
+    model->lossy = 0;
     
-    if (model->states == NULL) {
+    if (model->states == NULL || model->index == NULL || model->window == NULL || model->pending == NULL) {
+        free(model->states);
+        free(model->index);
+        free(model->window);
+        free(model->pending);
         free(model);
         return NULL;
     }
+    for (int i = 0; i < model->index_size; i++) model->index[i] = EMPTY_SLOT;
     
     return model;
 }
 
+// Entrenar con un fragmento de texto UTF-8 (no necesita terminar en '\0').
+// Una palabra partida entre dos fragmentos y la ventana de n-gramas se
+// conservan hasta el siguiente fragmento, así que el corpus puede llegar en
+// trozos arbitrarios sin copiarse nunca completo en memoria.
+void markov_train_chunk(MarkovModel* model, const char* chunk, int length) {
+    if (model == NULL || chunk == NULL || model->packed_next != NULL) return;
+    
+    for (int i = 0; i < length; i++) {
+        unsigned char c = (unsigned char) chunk[i];
+        if (is_delimiter(c)) {
+            flush_pending(model);
+            continue;
+        }
+        if (model->pending_length == model->pending_capacity) {
+            char* grown = realloc(model->pending, model->pending_capacity * 2);
+            if (grown == NULL) continue;
+            model->pending = grown;
+            model->pending_capacity *= 2;
+        }
+        model->pending[model->pending_length++] = (char) ascii_lower(c);
+    }
+}
+
+// Cierra el documento en curso: emite la última palabra, reinicia la ventana,
+// congela los estados modificados en tablas alias y compila el grafo y el
+// índice de sufijos para la generación
+void markov_train_finish(MarkovModel* model) {
+    if (model == NULL || model->packed_next != NULL) return;
+    
+    flush_pending(model);
+    for (int i = 0; i < model->window_fill; i++) free(model->window[i]);
+    model->window_fill = 0;
+    
+    build_alias_tables(model);
+    link_states(model);
+    build_suffix_index(model);
+}
+
 // Entrenar modelo con texto
 void markov_train_model(MarkovModel* model, const char* text) {
     if (model == NULL || text == NULL) return;
     
-    int word_count;
-    char** tokens = tokenize_text(text, &word_count);
-    if (tokens == NULL || word_count <= model->order) {
-        if (tokens) {
-            for (int i = 0; i < word_count; i++) free(tokens[i]);
-            free(tokens);
+    markov_train_chunk(model, text, (int) strlen(text));
+    markov_train_finish(model);
+}
+
+// Copia profunda del modelo entrenado, para seguir entrenándolo sin tocar el
+// original (que puede estar generando texto en otros hilos). La copia empieza
+// sin ventana ni palabra pendiente: el siguiente texto es un documento nuevo.
+// La copia de un modelo compactado no lo está. Devuelve NULL si la compactación
+// perdió recuentos: hay que reentrenar desde el texto.
+MarkovModel* markov_clone_model(MarkovModel* model) {
+    if (model == NULL || model->lossy) return NULL;
+    
+    MarkovModel* copy = markov_create_model(model->order);
+    if (copy == NULL) return NULL;
+    
+    if (model->state_capacity > copy->state_capacity) {
+        MarkovState* states = realloc(copy->states, model->state_capacity * sizeof(MarkovState));
+        if (states == NULL) {
+            markov_free_model(copy);
+            return NULL;
         }
-        return;
+        copy->states = states;
+        copy->state_capacity = model->state_capacity;
+    }
+    int* index = realloc(copy->index, model->index_size * sizeof(int));
+    if (index == NULL) {
+        markov_free_model(copy);
+        return NULL;
+    }
+    copy->index = index;
+    copy->index_size = model->index_size;
+    memcpy(copy->index, model->index, model->index_size * sizeof(int));
+    if (model->suffix_order != NULL) {
+        copy->suffix_order = malloc(model->state_count * sizeof(int));
+        if (copy->suffix_order == NULL) {
+            markov_free_model(copy);
+            return NULL;
+        }
+        memcpy(copy->suffix_order, model->suffix_order, model->state_count * sizeof(int));
+    }
+    if (model->suffix_totals != NULL) {
+        copy->suffix_totals = malloc((model->state_count + 1) * sizeof(long long));
+        if (copy->suffix_totals == NULL) {
+            markov_free_model(copy);
+            return NULL;
+        }
+        memcpy(copy->suffix_totals, model->suffix_totals, (model->state_count + 1) * sizeof(long long));
     }
     
-    // Entrenar el modelo
-    for (int i = 0; i < word_count - model->order; i++) {
-        // Crear estado actual
-        char** current_words = malloc(model->order * sizeof(char*));
-        if (current_words == NULL) continue;
-        
-        for (int j = 0; j < model->order; j++) {
-            current_words[j] = tokens[i + j];
+    for (int i = 0; i < model->state_count; i++) {
+        MarkovState* source = &model->states[i];
+        MarkovState* target = &copy->states[i];
+        memset(target, 0, sizeof(MarkovState));
+        target->word_count = source->word_count;
+        target->next_count = source->next_count;
+        target->next_capacity = source->next_count > 0 ? source->next_count : 1;
+        target->hash = source->hash;
+        target->total_freq = source->total_freq;
+        target->alias_dirty = source->alias_dirty;
+        target->words = malloc(source->word_count * sizeof(char*));
+        target->next_words = malloc(target->next_capacity * sizeof(char*));
+        target->frequencies = malloc(target->next_capacity * sizeof(int));
+        if (source->alias != NULL) {
+            target->alias = malloc(source->next_count * sizeof(int));
+            target->thresholds = malloc(source->next_count * sizeof(int));
         }
-        
-        char* next_word = tokens[i + model->order];
-        
-        // Buscar o crear el estado
-        int state_index = find_state_index(model, current_words, model->order);
-        
-        if (state_index == -1) {
-            if (model->state_count >= MAX_STATES) {
-                free(current_words);
-                continue;
-            }
-            
-            state_index = model->state_count;
-            model->states[state_index].words = malloc(model->order * sizeof(char*));
-            if (model->states[state_index].words == NULL) {
-                free(current_words);
-                continue;
-            }
-            
-            for (int j = 0; j < model->order; j++) {
-                model->states[state_index].words[j] = duplicate_string(current_words[j]);
-                if (model->states[state_index].words[j] == NULL) {
-                    // Limpiar en caso de error
-                    for (int k = 0; k < j; k++) free(model->states[state_index].words[k]);
-                    free(model->states[state_index].words);
-                    free(current_words);
-                    continue;
-                }
-            }
-            model->states[state_index].word_count = model->order;
-            model->states[state_index].next_words = malloc(MAX_NEXT_WORDS * sizeof(char*));
-            model->states[state_index].frequencies = malloc(MAX_NEXT_WORDS * sizeof(int));
-            model->states[state_index].next_count = 0;
-            model->state_count++;
+        if (source->next_state != NULL) {
+            target->next_state = malloc(source->next_count * sizeof(int));
         }
-        
-        // Agregar palabra siguiente
-        MarkovState* state = &model->states[state_index];
-        int found = 0;
-        for (int j = 0; j < state->next_count; j++) {
-            if (strcmp(state->next_words[j], next_word) == 0) {
-                state->frequencies[j]++;
-                found = 1;
-                break;
-            }
+        // El estado cuenta ya para markov_free_model aunque la copia falle a medias
+        copy->state_count = i + 1;
+        if (target->words == NULL || target->next_words == NULL || target->frequencies == NULL ||
+                (source->alias != NULL && (target->alias == NULL || target->thresholds == NULL)) ||
+                (source->next_state != NULL && target->next_state == NULL)) {
+            target->word_count = 0;
+            target->next_count = 0;
+            markov_free_model(copy);
+            return NULL;
         }
-        
-        if (!found && state->next_count < MAX_NEXT_WORDS) {
-            state->next_words[state->next_count] = duplicate_string(next_word);
-            if (state->next_words[state->next_count] != NULL) {
-                state->frequencies[state->next_count] = 1;
-                state->next_count++;
-            }
+        for (int j = 0; j < source->word_count; j++) {
+            target->words[j] = duplicate_string(source->words[j]);
+        }
+        for (int j = 0; j < source->next_count; j++) {
+            target->next_words[j] = duplicate_string(source->next_words[j]);
+        }
+        for (int j = 0; j < source->next_count; j++) {
+            target->frequencies[j] = state_frequency(model, source, j);
+        }
+        if (source->alias != NULL) {
+            memcpy(target->alias, source->alias, source->next_count * sizeof(int));
+            memcpy(target->thresholds, source->thresholds, source->next_count * sizeof(int));
+        }
+        if (source->next_state != NULL) {
+            memcpy(target->next_state, source->next_state, source->next_count * sizeof(int));
         }
-        
-        free(current_words);
     }
     
-    // Liberar tokens
-    for (int i = 0; i < word_count; i++) {
-        free(tokens[i]);
+    return copy;
+}
+
+// Suma a `target` los recuentos de `source` (del mismo orden) para entrenar en
+// paralelo: cada hilo entrena un modelo con un fragmento del corpus, precedido
+// de las últimas `order` palabras del fragmento anterior, y los modelos se
+// funden en orden. Los estados y sucesores nuevos se añaden en el orden de
+// `source`, así que el resultado es idéntico a entrenar el corpus entero en un
+// hilo. No reconstruye tablas alias ni grafo: después se llama a
+// markov_train_finish. Devuelve 0 si los órdenes difieren, alguno está
+// compactado o falta memoria.
+int markov_merge_model(MarkovModel* target, MarkovModel* source) {
+    if (target == NULL || source == NULL || target->order != source->order) return 0;
+    if (target->packed_next != NULL || source->packed_next != NULL) return 0;
+
+    for (int i = 0; i < source->state_count; i++) {
+        MarkovState* from = &source->states[i];
+        int state_index = target->index[find_slot(target, from->words, target->order, from->hash)];
+        if (state_index == EMPTY_SLOT) {
+            state_index = add_state(target, from->words, from->hash);
+            if (state_index == -1) return 0;
+        }
+        MarkovState* into = &target->states[state_index];
+        for (int j = 0; j < from->next_count; j++) {
+            add_next_word_count(into, from->next_words[j], from->frequencies[j]);
+        }
     }
-    free(tokens);
+    return 1;
+}
+
+// Número de estados (n-gramas distintos) del modelo
+int markov_state_count(MarkovModel* model) {
+    return model != NULL ? model->state_count : 0;
 }
 
 // Generar texto usando el modelo entrenado
-char* markov_generate_text(MarkovModel* model, int length, const char* start) {
-    if (model == NULL || model->state_count == 0) {
-        return duplicate_string("Modelo no entrenado. Entrene el modelo primero.");
+// Añade bytes al buffer. Uno creciente reserva siempre sitio para el '\0'
+// final; uno fijo sin sitio devuelve 0.
+int output_append(OutputBuffer* out, const char* bytes, size_t n) {
+    size_t needed = out->length + n + (out->growable ? 1 : 0);
+    if (needed > out->capacity) {
+        if (!out->growable) return 0;
+        size_t new_capacity = needed * 2;
+        char* grown = realloc(out->data, new_capacity);
+        if (grown == NULL) return 0;
+        out->data = grown;
+        out->capacity = new_capacity;
     }
-    
-    // Inicializar semilla para números aleatorios
-    srand(time(NULL));
-    
-    int start_word_count = 0;
-    char** start_words = NULL;
-    
-    if (start != NULL) {
-        start_words = tokenize_text(start, &start_word_count);
-    }
-    
-    // Preparar estado inicial
-    char** current_state = malloc(model->order * sizeof(char*));
-    if (current_state == NULL) {
+    memcpy(out->data + out->length, bytes, n);
+    out->length += n;
+    return 1;
+}
+
+// Añade una palabra (con un espacio delante si no es la primera)
+int append_word(OutputBuffer* out, int written, const char* word) {
+    return (written == 0 || output_append(out, " ", 1)) && output_append(out, word, strlen(word));
+}
+
+// Generación con un orden menor que el del modelo: el contexto son las últimas
+// `order` palabras y sus sucesores son los de todos los estados del modelo que
+// terminan en ellas (un rango del índice de sufijos). En cada paso se elige un
+// estado del rango por su frecuencia y un sucesor suyo con la tabla alias; si el
+// contexto nuevo no aparece se retrocede a menos palabras. Coste por palabra
+// O(order · log estados) en lugar del O(1) del grafo.
+int generate_lower_order(MarkovModel* model, int length, const char* start, int order, MarkovRng* rng,
+                         OutputBuffer* out, long long* stage_ns) {
+    long long t0 = stage_ns != NULL ? monotonic_ns() : 0;
+    // Las palabras del contexto apuntan siempre a cadenas del modelo
+    char** context = malloc(model->order * sizeof(char*));
+    if (context == NULL) return 0;
+    int fill = 0, lo = 0, hi = 0;
+
+    if (start != NULL && start[0] != '\0') {
+        int start_word_count = 0;
+        char** start_words = tokenize_text(start, &start_word_count);
+        if (start_words != NULL && start_word_count > 0) {
+            int count = start_word_count < order ? start_word_count : order;
+            fill = match_suffix(model, start_words + start_word_count - count, count, &lo, &hi);
+            MarkovState* state = &model->states[model->suffix_order[lo]];
+            for (int i = 0; i < fill; i++) context[i] = state->words[model->order - fill + i];
+        }
         if (start_words) {
             for (int i = 0; i < start_word_count; i++) free(start_words[i]);
             free(start_words);
         }
-        return duplicate_string("Error de memoria");
     }
-    
-    if (start_words != NULL && start_word_count >= model->order) {
-        // Usar las últimas palabras del texto inicial
-        for (int i = 0; i < model->order; i++) {
-            current_state[i] = duplicate_string(start_words[start_word_count - model->order + i]);
-            if (current_state[i] == NULL) {
-                // Limpiar en caso de error
-                for (int j = 0; j < i; j++) free(current_state[j]);
-                free(current_state);
-                for (int j = 0; j < start_word_count; j++) free(start_words[j]);
-                free(start_words);
-                return duplicate_string("Error de memoria");
-            }
+    if (fill == 0) {
+        // Sin contexto conocido: las últimas `order` palabras de un estado aleatorio
+        MarkovState* state = &model->states[rng_below(rng, model->state_count)];
+        for (int i = 0; i < order; i++) context[i] = state->words[model->order - order + i];
+        fill = match_suffix(model, context, order, &lo, &hi);
+    }
+
+    long long t1 = stage_ns != NULL ? monotonic_ns() : 0;
+    int written = 0;
+    while (written < length) {
+        MarkovState* state = &model->states[sample_weighted_state(model, lo, hi, rng)];
+        if (state->next_count == 0 || state->alias == NULL) break;
+
+        char* next_word = state->next_words[sample_next_index(state, rng)];
+        if (!append_word(out, written, next_word)) {
+            written = -1;
+            break;
         }
-    } else {
-        // Estado aleatorio
-        int random_index = rand() % model->state_count;
-        for (int i = 0; i < model->order; i++) {
-            current_state[i] = duplicate_string(model->states[random_index].words[i]);
-            if (current_state[i] == NULL) {
-                for (int j = 0; j < i; j++) free(current_state[j]);
-                free(current_state);
-                return duplicate_string("Error de memoria");
-            }
+        written++;
+
+        if (fill == order) {
+            memmove(context, context + 1, (order - 1) * sizeof(char*));
+            fill--;
         }
+        context[fill++] = next_word;
+        int matched = match_suffix(model, context, fill, &lo, &hi);
+        if (matched == 0) break;
+        memmove(context, context + fill - matched, matched * sizeof(char*));
+        fill = matched;
     }
-    
-    // Buffer para el resultado
-    char* result = malloc(length * MAX_WORD_LENGTH * sizeof(char));
-    if (result == NULL) {
-        for (int i = 0; i < model->order; i++) free(current_state[i]);
-        free(current_state);
+    free(context);
+    if (stage_ns != NULL) {
+        stage_ns[0] = t1 - t0;
+        stage_ns[1] = monotonic_ns() - t1;
+    }
+    return written;
+}
+
+// Genera hasta `length` palabras, separadas por un espacio, a partir de las
+// últimas palabras de `start` (ver resolve_start_state; si ninguna es conocida,
+// de un estado aleatorio) y las añade a `out`. `order` entre 1 y el orden del
+// modelo elige el contexto (0 = el del modelo).
+// Con el orden del modelo sólo el estado inicial se busca en el índice hash:
+// después se sigue el grafo compilado (next_state) y cada palabra se copia una
+// vez, al final de `out`.
+// Si `stage_ns` no es NULL recibe los nanosegundos de la búsqueda del estado
+// inicial ([0]) y del muestreo ([1]).
+// Devuelve las palabras escritas, o -1 si `out` es fijo y se llenó.
+int generate_words(MarkovModel* model, int length, const char* start, int order, MarkovRng* rng,
+                   OutputBuffer* out, long long* stage_ns) {
+    if (order > 0 && order < model->order && model->suffix_order != NULL && model->suffix_totals != NULL) {
+        return generate_lower_order(model, length, start, order, rng, out, stage_ns);
+    }
+
+    long long t0 = stage_ns != NULL ? monotonic_ns() : 0;
+    int state_index = -1;
+    if (start != NULL && start[0] != '\0') {
+        int start_word_count = 0;
+        char** start_words = tokenize_text(start, &start_word_count);
+        if (start_words != NULL && start_word_count > 0) {
+            // Usar las últimas palabras del texto inicial
+            state_index = resolve_start_state(model, start_words, start_word_count, rng);
+        }
         if (start_words) {
             for (int i = 0; i < start_word_count; i++) free(start_words[i]);
             free(start_words);
         }
-        return duplicate_string("Error de memoria");
     }
-    result[0] = '\0';
-    
-    // Generar texto
-    for (int i = 0; i < length; i++) {
-        int state_index = find_state_index(model, current_state, model->order);
-        
-        if (state_index == -1) break;
-        
+    if (state_index == -1) {
+        // Estado aleatorio
+        state_index = rng_below(rng, model->state_count);
+    }
+
+    long long t1 = stage_ns != NULL ? monotonic_ns() : 0;
+    int written = 0;
+    while (written < length && state_index != -1) {
         MarkovState* state = &model->states[state_index];
-        if (state->next_count == 0) break;
-        
-        // Selección basada en frecuencia (probabilística)
-        int total_freq = 0;
-        for (int j = 0; j < state->next_count; j++) {
-            total_freq += state->frequencies[j];
-        }
-        
-        int random_val = rand() % total_freq;
-        int cumulative_freq = 0;
-        char* next_word = NULL;
-        
-        for (int j = 0; j < state->next_count; j++) {
-            cumulative_freq += state->frequencies[j];
-            if (random_val < cumulative_freq) {
-                next_word = state->next_words[j];
-                break;
-            }
-        }
-        
-        if (next_word) {
-            strcat(result, next_word);
-            strcat(result, " ");
-            
-            // Actualizar estado (desplazar ventana)
-            for (int j = 0; j < model->order - 1; j++) {
-                free(current_state[j]);
-                current_state[j] = duplicate_string(current_state[j + 1]);
-                if (current_state[j] == NULL) break;
-            }
-            if (current_state[model->order - 1]) free(current_state[model->order - 1]);
-            current_state[model->order - 1] = duplicate_string(next_word);
-        } else {
+        if (state->next_count == 0 || state->alias == NULL || state->next_state == NULL) break;
+
+        // Selección basada en frecuencia (probabilística) en O(1) con la tabla alias
+        int next = sample_next_index(state, rng);
+        if (!append_word(out, written, state->next_words[next])) {
+            written = -1;
             break;
         }
+        written++;
+        state_index = state->next_state[next];
     }
-    
-    // Liberar memoria
-    for (int i = 0; i < model->order; i++) {
-        if (current_state[i]) free(current_state[i]);
+    if (stage_ns != NULL) {
+        stage_ns[0] = t1 - t0;
+        stage_ns[1] = monotonic_ns() - t1;
     }
-    free(current_state);
-    
-    if (start_words) {
-        for (int i = 0; i < start_word_count; i++) {
-            free(start_words[i]);
+    return written;
+}
+
+// Generar texto. El resultado es del llamador y se libera con markov_free_text;
+// quien quiera evitar la reserva por llamada usa markov_generate_into.
+char* markov_generate_text(MarkovModel* model, int length, const char* start) {
+    if (model == NULL || model->state_count == 0) {
+        return duplicate_string("Modelo no entrenado. Entrene el modelo primero.");
+    }
+
+    OutputBuffer out = { NULL, 0, (size_t) (length > 0 ? length : 1) * 16 + 1, 1 };
+    out.data = malloc(out.capacity);
+    if (out.data == NULL) {
+        return duplicate_string("Error de memoria");
+    }
+
+    MarkovRng rng;
+    rng_seed(&rng, next_seed());
+    generate_words(model, length, start, 0, &rng, &out, NULL);
+    out.data[out.length] = '\0';
+    return out.data;
+}
+
+// Libera un texto devuelto por markov_generate_text
+void markov_free_text(char* text) {
+    free(text);
+}
+
+// Genera un texto con la semilla `seed` directamente en un buffer del llamador
+// (UTF-8, sin terminador). La librería no reserva memoria para el resultado.
+// `order` (1..orden del modelo, 0 = el del modelo) es el contexto usado.
+// Devuelve los bytes escritos, -1 si el modelo no es válido o -2 si el texto no
+// cabe en `out_capacity` (el llamador repite con un buffer mayor).
+int markov_generate_into(MarkovModel* model, int length, const char* start, int order, long long seed,
+                         char* out, int out_capacity) {
+    if (model == NULL || model->state_count == 0) return -1;
+
+    OutputBuffer buffer = { out, 0, (size_t) out_capacity, 0 };
+    MarkovRng rng;
+    rng_seed(&rng, (unsigned long long) seed);
+    if (generate_words(model, length, start, order, &rng, &buffer, NULL) < 0) return -2;
+    return (int) buffer.length;
+}
+
+// Igual que markov_generate_into, y además deja en stage_ns[0] los nanosegundos
+// de la búsqueda del estado inicial y en stage_ns[1] los del muestreo. Es una
+// función aparte para que la generación normal no lea el reloj.
+int markov_generate_timed(MarkovModel* model, int length, const char* start, int order, long long seed,
+                          char* out, int out_capacity, long long* stage_ns) {
+    stage_ns[0] = 0;
+    stage_ns[1] = 0;
+    if (model == NULL || model->state_count == 0) return -1;
+
+    OutputBuffer buffer = { out, 0, (size_t) out_capacity, 0 };
+    MarkovRng rng;
+    rng_seed(&rng, (unsigned long long) seed);
+    if (generate_words(model, length, start, order, &rng, &buffer, stage_ns) < 0) return -2;
+    return (int) buffer.length;
+}
+
+// Genera `count` textos en una sola llamada sobre un buffer del llamador.
+// `starts` contiene los textos iniciales seguidos, cada uno terminado en '\0'
+// (cadena vacía = estado aleatorio); `orders` y `seeds` el orden y la semilla de
+// cada elemento. El texto i (UTF-8, sin terminador) queda en
+// out[out_offsets[i] .. + out_lengths[i]).
+// Devuelve cuántos elementos se completaron: si es menor que `count`, `out` se
+// llenó y el resto debe pedirse en otra llamada. -1 si el modelo no es válido.
+int markov_generate_batch(MarkovModel* model, int count, const int* lengths, const int* orders,
+                          const char* starts, const long long* seeds, char* out, int out_capacity,
+                          int* out_offsets, int* out_lengths) {
+    if (model == NULL || model->state_count == 0) return -1;
+
+    OutputBuffer buffer = { out, 0, (size_t) out_capacity, 0 };
+    const char* start = starts;
+    for (int i = 0; i < count; i++) {
+        size_t offset = buffer.length;
+        MarkovRng rng;
+        rng_seed(&rng, (unsigned long long) seeds[i]);
+        if (generate_words(model, lengths[i], start, orders[i], &rng, &buffer, NULL) < 0) {
+            return i;
         }
-        free(start_words);
+        out_offsets[i] = (int) offset;
+        out_lengths[i] = (int) (buffer.length - offset);
+        start += strlen(start) + 1;
     }
-    
-    return result;
+    return count;
 }
 
 // Liberar memoria del modelo
 void markov_free_model(MarkovModel* model) {
     if (model == NULL) return;
     
-    for (int i = 0; i < model->state_count; i++) {
+    // Compactado: palabras y sucesores viven en la arena y los arrays compartidos
+    for (int i = 0; i < model->state_count && model->packed_next == NULL; i++) {
         for (int j = 0; j < model->states[i].word_count; j++) {
             free(model->states[i].words[j]);
         }
@@ -342,7 +1091,406 @@ void markov_free_model(MarkovModel* model) {
         }
         free(model->states[i].next_words);
         free(model->states[i].frequencies);
+        free(model->states[i].alias);
+        free(model->states[i].thresholds);
+        free(model->states[i].next_state);
     }
     free(model->states);
+    free(model->index);
+    free(model->suffix_order);
+    free(model->suffix_totals);
+    for (int i = 0; i < model->window_fill; i++) free(model->window[i]);
+    free(model->window);
+    free(model->pending);
+    free(model->arena);
+    free(model->packed_words);
+    free(model->packed_next);
+    free(model->packed_counts);
+    free(model->packed_ints);
     free(model);
 }
+
+// ========== COMPACTACIÓN ==========
+
+// Bytes de un bloque de malloc de n bytes (cabecera y alineación de glibc)
+size_t heap_bytes(size_t n) {
+    return n == 0 ? 0 : (n + sizeof(size_t) + 15) & ~(size_t) 15;
+}
+
+// Memoria aproximada del modelo: estructuras, índices, sucesores y palabras
+long long markov_model_bytes(MarkovModel* model) {
+    if (model == NULL) return 0;
+    size_t states = (size_t) model->state_count;
+    size_t bytes = heap_bytes(sizeof(MarkovModel))
+            + heap_bytes((size_t) model->state_capacity * sizeof(MarkovState))
+            + heap_bytes((size_t) model->index_size * sizeof(int))
+            + heap_bytes((size_t) model->order * sizeof(char*))
+            + heap_bytes(model->pending_capacity);
+    if (model->suffix_order != NULL) {
+        bytes += heap_bytes(states * sizeof(int)) + heap_bytes((states + 1) * sizeof(long long));
+    }
+
+    if (model->packed_next != NULL) {
+        size_t transitions = 0;
+        for (size_t i = 0; i < states; i++) transitions += model->states[i].next_count;
+        return (long long) (bytes + heap_bytes(model->arena_size)
+                + heap_bytes(states * model->order * sizeof(char*))
+                + heap_bytes(transitions * sizeof(char*))
+                + heap_bytes(transitions * model->count_bytes)
+                + heap_bytes(3 * transitions * sizeof(int)));
+    }
+
+    for (size_t i = 0; i < states; i++) {
+        MarkovState* state = &model->states[i];
+        size_t n = (size_t) state->next_count;
+        bytes += heap_bytes(state->word_count * sizeof(char*))
+                + heap_bytes(state->next_capacity * sizeof(char*))
+                + heap_bytes(state->next_capacity * sizeof(int));
+        for (int j = 0; j < state->word_count; j++) bytes += heap_bytes(strlen(state->words[j]) + 1);
+        for (size_t j = 0; j < n; j++) bytes += heap_bytes(strlen(state->next_words[j]) + 1);
+        if (state->alias != NULL) bytes += 2 * heap_bytes(n * sizeof(int));
+        if (state->next_state != NULL) bytes += heap_bytes(n * sizeof(int));
+    }
+    return (long long) bytes;
+}
+
+int compare_ints(const void* a, const void* b) {
+    int x = *(const int*) a, y = *(const int*) b;
+    return (x > y) - (x < y);
+}
+
+// Posición del sucesor más frecuente del estado (el primero si hay empate)
+int top_successor(MarkovState* state) {
+    int top = 0;
+    for (int j = 1; j < state->next_count; j++) {
+        if (state->frequencies[j] > state->frequencies[top]) top = j;
+    }
+    return top;
+}
+
+// Recuento mínimo con el que el modelo compactado cabe en max_bytes: se estima
+// la parte fija (estados, índices, palabras de los estados y arena) y se
+// conservan los sucesores más frecuentes que quepan en el resto. Devuelve
+// INT_MAX si sólo cabe el sucesor principal de cada estado.
+int budget_min_count(MarkovModel* model, int min_count, int count_bytes, long long max_bytes) {
+    size_t states = (size_t) model->state_count;
+    size_t fixed = heap_bytes(sizeof(MarkovModel))
+            + heap_bytes(states * sizeof(MarkovState))
+            + heap_bytes((size_t) model->index_size * sizeof(int))
+            + heap_bytes((size_t) model->order * sizeof(char*))
+            + heap_bytes(model->pending_capacity)
+            + heap_bytes(states * sizeof(int)) + heap_bytes((states + 1) * sizeof(long long))
+            + heap_bytes(states * model->order * sizeof(char*));
+    // Vocabulario aproximado: las últimas palabras distintas de los estados
+    // (suffix_order las deja contiguas)
+    for (size_t i = 0; model->suffix_order != NULL && i < states; i++) {
+        const char* word = model->states[model->suffix_order[i]].words[model->order - 1];
+        if (i == 0 || strcmp(word, model->states[model->suffix_order[i - 1]].words[model->order - 1]) != 0) {
+            fixed += strlen(word) + 1;
+        }
+    }
+
+    size_t per_transition = sizeof(char*) + count_bytes + 3 * sizeof(int);
+    size_t transitions = 0, with_successors = 0;
+    for (size_t i = 0; i < states; i++) {
+        transitions += model->states[i].next_count;
+        if (model->states[i].next_count > 0) with_successors++;
+    }
+    long long allowed = max_bytes > (long long) fixed
+            ? (max_bytes - (long long) fixed) / (long long) per_transition - (long long) with_successors
+            : -1;
+    if (allowed <= 0) return INT_MAX;
+
+    // Recuentos de los sucesores secundarios que superan min_count
+    int* counts = malloc((transitions > 0 ? transitions : 1) * sizeof(int));
+    if (counts == NULL) return min_count;
+    size_t candidates = 0;
+    for (size_t i = 0; i < states; i++) {
+        MarkovState* state = &model->states[i];
+        int top = top_successor(state);
+        for (int j = 0; j < state->next_count; j++) {
+            if (j != top && state->frequencies[j] >= min_count) counts[candidates++] = state->frequencies[j];
+        }
+    }
+    int result = min_count;
+    if ((long long) candidates > allowed) {
+        qsort(counts, candidates, sizeof(int), compare_ints);
+        // Con recuento > counts[candidates - allowed - 1] quedan como mucho `allowed`
+        result = counts[candidates - allowed - 1] + 1;
+    }
+    free(counts);
+    return result;
+}
+
+// Descarta los sucesores con menos de min_count apariciones (salvo el más
+// frecuente) y reescala los recuentos para que el mayor no pase de
+// count_limit (0: recuentos exactos). Ningún sucesor conservado queda a 0.
+// Devuelve 1 si descartó algún sucesor o cambió algún recuento.
+int prune_state(MarkovState* state, int min_count, int count_limit) {
+    int top = top_successor(state);
+    int original_count = state->next_count;
+    int rescaled = 0;
+    int max = state->frequencies[top];
+    int kept = 0;
+    for (int j = 0; j < state->next_count; j++) {
+        if (j == top || state->frequencies[j] >= min_count) {
+            state->next_words[kept] = state->next_words[j];
+            state->frequencies[kept] = state->frequencies[j];
+            kept++;
+        } else {
+            free(state->next_words[j]);
+        }
+    }
+    state->next_count = kept;
+    if (count_limit > 0 && max > count_limit) {
+        for (int j = 0; j < kept; j++) {
+            long long scaled = ((long long) state->frequencies[j] * count_limit + max / 2) / max;
+            int count = scaled > 0 ? (int) scaled : 1;
+            rescaled |= count != state->frequencies[j];
+            state->frequencies[j] = count;
+        }
+    }
+    state->alias_dirty = 1;
+    return kept < original_count || rescaled;
+}
+
+// Tabla de internado de cadenas (direccionamiento abierto, sondeo lineal)
+typedef struct {
+    const char** keys;
+    char** values;
+    size_t mask;
+} InternTable;
+
+size_t intern_slot(InternTable* table, const char* word) {
+    size_t slot = hash_words((char**) &word, 1) & table->mask;
+    while (table->keys[slot] != NULL && strcmp(table->keys[slot], word) != 0) {
+        slot = (slot + 1) & table->mask;
+    }
+    return slot;
+}
+
+// Pasa las palabras a una arena de cadenas distintas y los sucesores, recuentos,
+// tablas alias y grafo de todos los estados a arrays contiguos: un puñado de
+// bloques en lugar de varios por estado y uno por palabra. Devuelve 0 sin tocar
+// el modelo si falta memoria.
+int pack_model(MarkovModel* model, int count_bytes) {
+    size_t states = (size_t) model->state_count;
+    size_t order = (size_t) model->order;
+    size_t transitions = 0;
+    for (size_t i = 0; i < states; i++) {
+        MarkovState* state = &model->states[i];
+        if (state->next_count > 0 && (state->alias == NULL || state->next_state == NULL)) return 0;
+        transitions += state->next_count;
+    }
+
+    size_t capacity = 16;
+    while (capacity < 2 * (states * order + transitions)) capacity *= 2;
+    InternTable table = { calloc(capacity, sizeof(char*)), calloc(capacity, sizeof(char*)), capacity - 1 };
+    char** words = malloc((states * order > 0 ? states * order : 1) * sizeof(char*));
+    char** next = malloc((transitions > 0 ? transitions : 1) * sizeof(char*));
+    void* counts = malloc((transitions > 0 ? transitions : 1) * count_bytes);
+    int* ints = malloc((transitions > 0 ? 3 * transitions : 1) * sizeof(int));
+    char* arena = NULL;
+    if (table.keys == NULL || table.values == NULL || words == NULL || next == NULL || counts == NULL || ints == NULL) {
+        goto fail;
+    }
+
+    // Cadenas distintas y tamaño de la arena
+    size_t arena_size = 0;
+    for (size_t i = 0; i < states; i++) {
+        MarkovState* state = &model->states[i];
+        for (size_t k = 0; k < order + state->next_count; k++) {
+            const char* word = k < order ? state->words[k] : state->next_words[k - order];
+            size_t slot = intern_slot(&table, word);
+            if (table.keys[slot] == NULL) {
+                table.keys[slot] = word;
+                arena_size += strlen(word) + 1;
+            }
+        }
+    }
+    arena = malloc(arena_size > 0 ? arena_size : 1);
+    if (arena == NULL) goto fail;
+    char* cursor = arena;
+    for (size_t slot = 0; slot < capacity; slot++) {
+        if (table.keys[slot] == NULL) continue;
+        size_t length = strlen(table.keys[slot]) + 1;
+        memcpy(cursor, table.keys[slot], length);
+        // Las claves pasan a la copia: las cadenas originales se liberan abajo
+        table.keys[slot] = cursor;
+        table.values[slot] = cursor;
+        cursor += length;
+    }
+
+    size_t offset = 0;
+    for (size_t i = 0; i < states; i++) {
+        MarkovState* state = &model->states[i];
+        size_t n = (size_t) state->next_count;
+        for (size_t k = 0; k < order; k++) {
+            words[i * order + k] = table.values[intern_slot(&table, state->words[k])];
+            free(state->words[k]);
+        }
+        for (size_t j = 0; j < n; j++) {
+            next[offset + j] = table.values[intern_slot(&table, state->next_words[j])];
+            free(state->next_words[j]);
+            if (count_bytes == 1) ((unsigned char*) counts)[offset + j] = (unsigned char) state->frequencies[j];
+            else if (count_bytes == 2) ((unsigned short*) counts)[offset + j] = (unsigned short) state->frequencies[j];
+            else ((int*) counts)[offset + j] = state->frequencies[j];
+            ints[offset + j] = state->alias[j];
+            ints[transitions + offset + j] = state->thresholds[j];
+            ints[2 * transitions + offset + j] = state->next_state[j];
+        }
+        free(state->words);
+        free(state->next_words);
+        free(state->frequencies);
+        free(state->alias);
+        free(state->thresholds);
+        free(state->next_state);
+        state->words = &words[i * order];
+        state->next_words = &next[offset];
+        state->frequencies = NULL;
+        state->next_capacity = (int) n;
+        state->alias = &ints[offset];
+        state->thresholds = &ints[transitions + offset];
+        state->next_state = &ints[2 * transitions + offset];
+        offset += n;
+    }
+    free(table.keys);
+    free(table.values);
+
+    if (states > 0 && states < (size_t) model->state_capacity) {
+        MarkovState* shrunk = realloc(model->states, states * sizeof(MarkovState));
+        if (shrunk != NULL) {
+            model->states = shrunk;
+            model->state_capacity = (int) states;
+        }
+    }
+    model->arena = arena;
+    model->arena_size = arena_size;
+    model->packed_words = words;
+    model->packed_next = next;
+    model->packed_counts = counts;
+    model->count_bytes = count_bytes;
+    model->packed_ints = ints;
+    return 1;
+
+fail:
+    free(table.keys);
+    free(table.values);
+    free(words);
+    free(next);
+    free(counts);
+    free(ints);
+    free(arena);
+    return 0;
+}
+
+// Compacta el modelo entrenado para servirlo con menos memoria: descarta los
+// sucesores con menos de min_count apariciones (o los necesarios para no pasar
+// de max_bytes, si es > 0), conservando siempre el más frecuente de cada estado
+// para que ninguno se quede sin salida; reescala los recuentos de cada estado a
+// count_bits bits (8 o 16; otro valor los deja exactos) y empaqueta palabras y
+// sucesores en bloques contiguos. Devuelve los bytes resultantes, o -1 si ya
+// estaba compactado o falta memoria para empaquetarlo (sigue siendo utilizable).
+// Si descartó o reescaló algo el modelo queda marcado como `lossy` y
+// markov_clone_model ya no lo copia para seguir entrenando.
+long long markov_compact_model(MarkovModel* model, int min_count, int count_bits, long long max_bytes) {
+    if (model == NULL || model->packed_next != NULL) return -1;
+    int count_bytes = count_bits == 8 ? 1 : count_bits == 16 ? 2 : (int) sizeof(int);
+    int count_limit = count_bits == 8 ? 255 : count_bits == 16 ? 65535 : 0;
+
+    if (max_bytes > 0) {
+        int budget = budget_min_count(model, min_count, count_bytes, max_bytes);
+        if (budget > min_count) min_count = budget;
+    }
+    if (min_count > 1 || count_limit > 0) {
+        for (int i = 0; i < model->state_count; i++) {
+            if (model->states[i].next_count > 0 && prune_state(&model->states[i], min_count, count_limit)) {
+                model->lossy = 1;
+            }
+        }
+        build_alias_tables(model);
+        link_states(model);
+        build_suffix_index(model);
+    }
+
+    if (!pack_model(model, count_bytes)) return -1;
+    return markov_model_bytes(model);
+}
+
+// ========== BENCHMARK DE MUESTREO ==========
+// gcc -O2 -DMARKOV_BENCH -o markov_bench markov_native.c && ./markov_bench [tokens] [vocabulario]
+// Compara palabras/segundo del muestreo lineal anterior (suma + recorrido
+// acumulado) frente a la tabla alias, con un corpus sintético de distribución
+// Zipf en el que las palabras frecuentes tienen cientos de sucesores.
+#ifdef MARKOV_BENCH
+
+const char* sample_next_word_linear(MarkovState* state, MarkovRng* rng) {
+    int total_freq = 0;
+    for (int j = 0; j < state->next_count; j++) total_freq += state->frequencies[j];
+    int random_val = rng_below(rng, total_freq);
+    int cumulative_freq = 0;
+    for (int j = 0; j < state->next_count; j++) {
+        cumulative_freq += state->frequencies[j];
+        if (random_val < cumulative_freq) return state->next_words[j];
+    }
+    return state->next_words[state->next_count - 1];
+}
+
+double bench_walk(MarkovModel* model, const char* (*sampler)(MarkovState*, MarkovRng*), long steps) {
+    MarkovState* state = &model->states[0];
+    MarkovRng rng;
+    rng_seed(&rng, 42);
+    struct timespec start, end;
+    clock_gettime(CLOCK_MONOTONIC, &start);
+    for (long i = 0; i < steps; i++) {
+        const char* next = sampler(state, &rng);
+        // Orden 1: el siguiente estado es la palabra muestreada
+        char* key[1] = { (char*) next };
+        int index = find_state_index(model, key, 1);
+        state = &model->states[index == EMPTY_SLOT || model->states[index].next_count == 0 ? 0 : index];
+    }
+    clock_gettime(CLOCK_MONOTONIC, &end);
+    double seconds = (end.tv_sec - start.tv_sec) + (end.tv_nsec - start.tv_nsec) / 1e9;
+    return steps / seconds;
+}
+
+int main(int argc, char** argv) {
+    long tokens = argc > 1 ? atol(argv[1]) : 2000000;
+    int vocabulary = argc > 2 ? atoi(argv[2]) : 5000;
+
+    // Palabra de rango k con probabilidad ~ 1/k (muestreo por inversa aproximada)
+    double* cumulative = malloc(vocabulary * sizeof(double));
+    double sum = 0;
+    for (int k = 0; k < vocabulary; k++) cumulative[k] = (sum += 1.0 / (k + 1));
+    char* text = malloc(tokens * 8 + 1);
+    size_t length = 0;
+    srand(12345);
+    for (long i = 0; i < tokens; i++) {
+        double u = (double) rand() / RAND_MAX * sum;
+        int lo = 0, hi = vocabulary - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) / 2;
+            if (cumulative[mid] < u) lo = mid + 1; else hi = mid;
+        }
+        length += sprintf(text + length, "w%d ", lo);
+    }
+
+    MarkovModel* model = markov_create_model(1);
+    markov_train_model(model, text);
+
+    int max_fanout = 0;
+    for (int i = 0; i < model->state_count; i++) {
+        if (model->states[i].next_count > max_fanout) max_fanout = model->states[i].next_count;
+    }
+    printf("estados: %d, sucesores máx. por estado: %d\n", model->state_count, max_fanout);
+
+    long steps = 2000000;
+    printf("lineal: %.0f palabras/s\n", bench_walk(model, sample_next_word_linear, steps));
+    printf("alias:  %.0f palabras/s\n", bench_walk(model, sample_next_word, steps));
+
+    markov_free_model(model);
+    free(text);
+    free(cumulative);
+    return 0;
+}
+#endif
@@ -0,0 +1,39 @@
+package com.ova.platform.markov.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class AliasTablesTests {
+
+    @Test
+    void reproducesExactSuccessorWeights() {
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            int n = 1 + random.nextInt(50);
+            int[] counts = new int[n + 2];
+            for (int j = 1; j <= n; j++) {
+                counts[j] = random.nextInt(10) == 0 ? 1000 + random.nextInt(100000) : 1 + random.nextInt(20);
+            }
+
+            int[] thresholds = new int[n + 2];
+            int[] aliases = new int[n + 2];
+            AliasTables.build(counts, 1, n + 1, thresholds, aliases);
+
+            long total = 0;
+            for (int j = 1; j <= n; j++) total += counts[j];
+
+            // Peso implícito de cada sucesor en unidades de 1/(n*T): debe ser count * n
+            long[] expected = new long[n + 2];
+            long[] implied = new long[n + 2];
+            for (int j = 1; j <= n; j++) {
+                expected[j] = (long) counts[j] * n;
+                implied[j] += thresholds[j];
+                implied[aliases[j]] += total - thresholds[j];
+            }
+            assertArrayEquals(expected, implied);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.ova.platform.markov.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainBuilderTests {
+
+    @Test
+    void compilesStatsFromTrainingText() {
+        ChainBuilder builder = new ChainBuilder(2);
+        builder.addText("El gato come. El gato duerme, el perro come.");
+
+        MarkovChain chain = builder.compile();
+
+        assertEquals(5, chain.vocabularySize());
+        // el gato, gato come, come el, gato duerme, duerme el, el perro
+        assertEquals(6, chain.stateCount());
+        assertEquals(9, chain.tokenCount());
+    }
+
+    @Test
+    void followsDeterministicTransitionsFromStartText() {
+        ChainBuilder builder = new ChainBuilder(2);
+        builder.addText("uno dos tres cuatro cinco seis");
+
+        String generated = builder.compile().generate(10, "Uno DOS", new Random(7));
+
+        assertEquals("tres cuatro cinco seis", generated);
+    }
+
+    @Test
+    void lowercasesOnlyAsciiLikeNativeTokenizer() {
+        // La librería nativa sólo baja A-Z: "Árbol" y "árbol" son palabras distintas, "ÑU" queda "Ñu"
+        assertEquals(List.of("árbol", "Árbol", "casa", "Ñu"), Tokenizer.tokenize("árbol Árbol CASA ÑU"));
+    }
+
+    @Test
+    void streamingTrainingMatchesInMemoryTraining() throws IOException {
+        String text = "uno dos tres, dos tres cuatro. Tres cuatro uno dos tres";
+        ChainBuilder inMemory = new ChainBuilder(2);
+        inMemory.addText(text);
+
+        // Reader que entrega de a un carácter: cada palabra queda partida entre lecturas
+        Reader oneCharAtATime = new Reader() {
+            private final Reader delegate = new StringReader(text);
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return delegate.read(buffer, offset, Math.min(1, length));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ChainBuilder streamed = new ChainBuilder(2);
+        long characters = streamed.addText(oneCharAtATime);
+
+        assertEquals(text.length(), characters);
+        assertEquals(inMemory.vocabularySize(), streamed.vocabularySize());
+        assertEquals(inMemory.stateCount(), streamed.stateCount());
+        assertEquals(inMemory.compile().generate(5, "uno dos", new Random(1)),
+                streamed.compile().generate(5, "uno dos", new Random(1)));
+    }
+
+    @Test
+    void continuingFromCompiledChainMatchesTrainingBothDocuments() {
+        ChainBuilder full = new ChainBuilder(2);
+        full.addText("uno dos tres uno dos cuatro");
+        full.addText("dos tres cinco uno dos tres");
+
+        ChainBuilder first = new ChainBuilder(2);
+        first.addText("uno dos tres uno dos cuatro");
+        ChainBuilder continued = ChainBuilder.from(first.compile());
+        continued.addText("dos tres cinco uno dos tres");
+
+        MarkovChain expected = full.compile();
+        MarkovChain actual = continued.compile();
+        assertEquals(expected.vocabularySize(), actual.vocabularySize());
+        assertEquals(expected.stateCount(), actual.stateCount());
+        assertEquals(expected.transitionCount(), actual.transitionCount());
+        assertEquals(expected.tokenCount(), actual.tokenCount());
+        assertEquals(expected.generate(20, "uno dos", new Random(5)), actual.generate(20, "uno dos", new Random(5)));
+    }
+
+    @Test
+    void sameSeedReproducesTheSameText() {
+        ChainBuilder builder = new ChainBuilder(1);
+        builder.addText("a b a c a b a d b c d a c b d a b c a d c b a");
+        MarkovChain chain = builder.compile();
+
+        String first = chain.generate(50, null, new SplittableRandom(123));
+        assertEquals(first, chain.generate(50, null, new SplittableRandom(123)));
+        assertNotEquals(first, chain.generate(50, null, new SplittableRandom(124)));
+    }
+
+    @Test
+    void samplesOnlyObservedSuccessors() {
+        ChainBuilder builder = new ChainBuilder(1);
+        builder.addText("a b a c a b a c a b");
+        MarkovChain chain = builder.compile();
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            String next = chain.generate(1, "a", random);
+            assertTrue(next.equals("b") || next.equals("c"), next);
+        }
+    }
+
+    @Test
+    void startTextBacksOffToLongestKnownSuffix() {
+        ChainBuilder builder = new ChainBuilder(3);
+        builder.addText("uno dos tres cuatro cinco seis siete uno dos ocho nueve diez once tres doce trece "
+                + "catorce quince dos tres cinco");
+        MarkovChain chain = builder.compile();
+
+        Random random = new Random(11);
+        for (int i = 0; i < 50; i++) {
+            // "nada dos tres" no existe: estados que terminan en "dos tres"
+            String afterTwoWords = chain.generate(1, "nada dos tres", random);
+            assertTrue(afterTwoWords.equals("cuatro") || afterTwoWords.equals("cinco"), afterTwoWords);
+            // Una sola palabra: estados que terminan en "dos"
+            String afterOneWord = chain.generate(1, "dos", random);
+            assertTrue(afterOneWord.equals("tres") || afterOneWord.equals("ocho"), afterOneWord);
+        }
+        // Con un único estado candidato no se consume aleatoriedad
+        assertEquals("trece catorce", chain.generate(2, "Doce", new Random(1)));
+        assertEquals(chain.generate(2, "Doce", new Random(1)), chain.generate(2, "x y doce", new Random(2)));
+        assertEquals(chain.generate(5, null, new Random(4)), chain.generate(5, "desconocida", new Random(4)));
+    }
+
+    @Test
+    void lowerOrderGenerationUsesTheSameChain() {
+        String text = "a b c a b d b c a c b a d c b d a b c d";
+        ChainBuilder builder = new ChainBuilder(3);
+        builder.addText(text + " " + text);
+        MarkovChain chain = builder.compile();
+
+        List<String> corpus = List.of((text + " " + text).split(" "));
+        List<String> bigrams = new ArrayList<>();
+        for (int i = 0; i + 1 < corpus.size(); i++) {
+            bigrams.add(corpus.get(i) + " " + corpus.get(i + 1));
+        }
+
+        List<String> words = new ArrayList<>(List.of("a"));
+        int emitted = chain.generate(5_000, "a", 1, new Random(8), words::add);
+        assertEquals(5_000, emitted);
+        for (int i = 0; i + 1 < words.size(); i++) {
+            String bigram = words.get(i) + " " + words.get(i + 1);
+            assertTrue(bigrams.contains(bigram), bigram);
+        }
+
+        // Orden 1 tras "a": b 5/9, c 2/9, d 2/9 (las "a" que cierran un estado de orden 3)
+        Random random = new Random(21);
+        int b = 0;
+        for (int i = 0; i < 5_000; i++) {
+            if (chain.generate(1, "c a", 1, random).equals("b")) b++;
+        }
+        assertEquals(5 / 9.0, b / 5_000.0, 0.03);
+
+        assertEquals(chain.generate(40, "a b c", new Random(2)), chain.generate(40, "a b c", 3, new Random(2)));
+        assertThrows(IllegalArgumentException.class, () -> chain.generate(10, null, 4, new Random(1)));
+    }
+
+    @Test
+    void longGenerationFollowsObservedTrigrams() {
+        String text = "a b c a b d b c a c b a d c b d a b c d";
+        ChainBuilder builder = new ChainBuilder(2);
+        builder.addText(text + " " + text);
+        MarkovChain chain = builder.compile();
+
+        List<String> corpus = List.of((text + " " + text).split(" "));
+        List<String> trigrams = new ArrayList<>();
+        for (int i = 0; i + 2 < corpus.size(); i++) {
+            trigrams.add(String.join(" ", corpus.subList(i, i + 3)));
+        }
+
+        List<String> words = new ArrayList<>(List.of("a", "b"));
+        int emitted = chain.generate(100_000, "a b", new Random(3), words::add);
+
+        // El texto es cíclico: el grafo nunca llega a un estado sin sucesores
+        assertEquals(100_000, emitted);
+        for (int i = 0; i + 2 < words.size(); i++) {
+            String trigram = String.join(" ", words.subList(i, i + 3));
+            assertTrue(trigrams.contains(trigram), trigram);
+        }
+    }
+
+    @Test
+    void streamingGenerationEmitsWordsInOrderAndStopsOnCancel() {
+        ChainBuilder builder = new ChainBuilder(1);
+        builder.addText("a b c d e f g h");
+        MarkovChain chain = builder.compile();
+
+        List<String> words = new ArrayList<>();
+        int emitted = chain.generate(10, "a", new Random(1), word -> {
+            words.add(word);
+            return words.size() < 3;
+        });
+
+        assertEquals(3, emitted);
+        assertEquals(List.of("b", "c", "d"), words);
+    }
+}
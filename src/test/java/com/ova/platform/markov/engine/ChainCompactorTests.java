@@ -0,0 +1,82 @@
+package com.ova.platform.markov.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainCompactorTests {
+
+    // a -> b 300, c 2, d 1; b -> a; c -> a; d -> a
+    private static MarkovChain chain() {
+        ChainBuilder builder = new ChainBuilder(1);
+        builder.addText("a b ".repeat(300) + "a c a c a d a");
+        return builder.compile();
+    }
+
+    @Test
+    void prunesRareSuccessorsButNeverTheMostFrequent() {
+        MarkovChain chain = chain();
+        assertEquals(6, chain.transitionCount());
+
+        MarkovChain pruned = new ChainCompactor(2, 0, 0).compact(chain);
+        assertEquals(5, pruned.transitionCount());
+        assertEquals(chain.stateCount(), pruned.stateCount());
+        assertTrue(pruned.memoryBytes() < chain.memoryBytes());
+        // "d" sólo tenía un sucesor: aunque aparezca una vez se conserva
+        assertEquals("a b", pruned.generate(2, "d", new Random(1)));
+        assertSame(chain, new ChainCompactor(1, 0, 0).compact(chain));
+    }
+
+    @Test
+    void quantizesCountsPerStateWithoutDroppingSuccessors() {
+        MarkovChain quantized = new ChainCompactor(1, 8, 0).compact(chain());
+
+        assertEquals(6, quantized.transitionCount());
+        IntBuffer counts = quantized.successorCounts();
+        for (int t = 0; t < counts.limit(); t++) {
+            assertTrue(counts.get(t) >= 1 && counts.get(t) <= 255, String.valueOf(counts.get(t)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ChainCompactor(1, 12, 0));
+    }
+
+    @Test
+    void budgetKeepsTheMostFrequentSecondarySuccessors() {
+        MarkovChain chain = chain();
+
+        // Un byte menos: sobra una transición secundaria, la menos frecuente (d)
+        MarkovChain tight = new ChainCompactor(1, 0, chain.memoryBytes() - 1).compact(chain);
+        assertEquals(5, tight.transitionCount());
+        assertTrue(tight.memoryBytes() < chain.memoryBytes());
+
+        // Sin sitio para ninguna secundaria: sólo el sucesor principal de cada estado
+        MarkovChain minimal = new ChainCompactor(1, 0, 1).compact(chain);
+        assertEquals(4, minimal.transitionCount());
+        Random random = new Random(5);
+        for (int i = 0; i < 50; i++) {
+            assertEquals("b", minimal.generate(1, "a", random));
+        }
+    }
+
+    @Test
+    void lossyCompactionCannotSeedFurtherTraining() {
+        MarkovChain chain = chain();
+        assertTrue(chain.hasExactCounts());
+
+        MarkovChain pruned = new ChainCompactor(2, 0, 0).compact(chain);
+        assertFalse(pruned.hasExactCounts());
+        assertFalse(pruned.toOffHeap().hasExactCounts());
+        assertThrows(IllegalArgumentException.class, () -> ChainBuilder.from(pruned));
+
+        // 16 bits caben los 300 de a -> b: no se reescala nada y la cadena sigue siendo exacta
+        MarkovChain unchanged = new ChainCompactor(1, 16, 0).compact(chain);
+        assertSame(chain, unchanged);
+        ChainBuilder.from(unchanged).addText("a e");
+    }
+}
@@ -0,0 +1,210 @@
+package com.ova.platform.markov.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainSnapshotTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripPreservesChainAndSampling() throws IOException {
+        ChainBuilder builder = new ChainBuilder(2);
+        builder.addText("el gato come pescado, el gato duerme. El perro come carne y el perro duerme; ñandú come");
+        MarkovChain chain = builder.compile();
+        Path file = dir.resolve("model.mkvs");
+
+        ChainSnapshot.write(chain, 1234, file);
+        ChainSnapshot snapshot = ChainSnapshot.read(file);
+        MarkovChain loaded = snapshot.chain();
+
+        assertEquals(1234, snapshot.trainedCharacters());
+        assertEquals(chain.order(), loaded.order());
+        assertEquals(chain.vocabularySize(), loaded.vocabularySize());
+        assertEquals(chain.stateCount(), loaded.stateCount());
+        assertEquals(chain.transitionCount(), loaded.transitionCount());
+        assertEquals(chain.tokenCount(), loaded.tokenCount());
+        // Mismas tablas alias y mismo índice: misma semilla, mismo texto
+        for (long seed = 0; seed < 20; seed++) {
+            assertEquals(chain.generate(30, "el gato", new Random(seed)),
+                    loaded.generate(30, "el gato", new Random(seed)));
+            assertEquals(chain.generate(30, null, new Random(seed)),
+                    loaded.generate(30, null, new Random(seed)));
+            // Índice de sufijos: "el" no es un estado completo
+            assertEquals(chain.generate(30, "y el", new Random(seed)),
+                    loaded.generate(30, "y el", new Random(seed)));
+        }
+    }
+
+    @Test
+    void roundTripKeepsWhetherCountsAreExact() throws IOException {
+        ChainBuilder builder = new ChainBuilder(1);
+        builder.addText("a b a b a b a c");
+        MarkovChain chain = builder.compile();
+        Path exact = dir.resolve("exact.mkvs");
+        Path lossy = dir.resolve("lossy.mkvs");
+
+        ChainSnapshot.write(chain, 15, exact);
+        ChainSnapshot.write(new ChainCompactor(2, 0, 0).compact(chain), 15, lossy);
+
+        assertTrue(ChainSnapshot.read(exact).chain().hasExactCounts());
+        assertFalse(ChainSnapshot.read(lossy).chain().hasExactCounts());
+        assertFalse(ChainSnapshot.map(lossy).chain().hasExactCounts());
+    }
+
+    @Test
+    void mappedSnapshotGeneratesWithoutCopyingTables() throws IOException {
+        ChainBuilder builder = new ChainBuilder(2);
+        builder.addText("uno dos tres uno dos cuatro uno dos tres cinco");
+        MarkovChain chain = builder.compile();
+        Path file = dir.resolve("model.mkvs");
+        ChainSnapshot.write(chain, 47, file);
+
+        ChainSnapshot snapshot = ChainSnapshot.map(file);
+
+        assertTrue(snapshot.isMapped());
+        assertTrue(snapshot.chain().successorWords().isDirect());
+        assertEquals(snapshot.chain().memoryBytes(), snapshot.chain().offHeapBytes());
+        // Los totales acumulados del índice de sufijos se leen del fichero, no se recalculan
+        assertTrue(snapshot.chain().suffixes().cumulativeTotals().isDirect());
+        assertEquals(chain.suffixes().cumulativeTotals(), snapshot.chain().suffixes().cumulativeTotals());
+        assertEquals(chain.suffixes().cumulativeTotals(), ChainSnapshot.read(file).chain().suffixes().cumulativeTotals());
+        for (long seed = 0; seed < 20; seed++) {
+            assertEquals(chain.generate(25, "uno dos", new Random(seed)),
+                    snapshot.chain().generate(25, "uno dos", new Random(seed)));
+        }
+
+        // Se puede seguir entrenando a partir de un modelo mapeado
+        ChainBuilder continued = ChainBuilder.from(snapshot.chain());
+        continued.addText("seis siete ocho");
+        assertEquals(chain.stateCount() + 1, continued.compile().stateCount());
+    }
+
+    @Test
+    void offHeapCopyGeneratesAndSnapshotsLikeTheHeapChain() throws IOException {
+        ChainBuilder builder = new ChainBuilder(2);
+        builder.addText("el gato come pescado, el gato duerme. El perro come carne y el perro duerme; ñandú come");
+        MarkovChain chain = builder.compile();
+
+        MarkovChain offHeap = chain.toOffHeap();
+
+        assertEquals(0, chain.offHeapBytes());
+        assertEquals(offHeap.memoryBytes(), offHeap.offHeapBytes());
+        for (long seed = 0; seed < 20; seed++) {
+            assertEquals(chain.generate(30, "el gato", new Random(seed)),
+                    offHeap.generate(30, "el gato", new Random(seed)));
+            assertEquals(chain.generate(30, "ñandú", new Random(seed)),
+                    offHeap.generate(30, "ñandú", new Random(seed)));
+        }
+        ChainSnapshot.write(chain, 10, dir.resolve("heap.mkvs"));
+        ChainSnapshot.write(offHeap, 10, dir.resolve("off-heap.mkvs"));
+        assertArrayEquals(Files.readAllBytes(dir.resolve("heap.mkvs")), Files.readAllBytes(dir.resolve("off-heap.mkvs")));
+
+        ChainBuilder continued = ChainBuilder.from(offHeap);
+        continued.addText("ñandú duerme mucho");
+        assertEquals(chain.stateCount() + 1, continued.compile().stateCount());
+    }
+
+    @Test
+    void freeReturnsDirectMemoryAndMappingWithoutWaitingForGc() throws IOException {
+        ChainBuilder builder = new ChainBuilder(2);
+        builder.addText("el gato come pescado, el gato duerme. El perro come carne y el perro duerme; ñandú come");
+        MarkovChain chain = builder.compile();
+        Path file = dir.resolve("model.mkvs");
+        ChainSnapshot.write(chain, 10, file);
+
+        // Otras liberaciones en paralelo sólo pueden bajar más el uso
+        MarkovChain offHeap = chain.toOffHeap();
+        long direct = bufferPool("direct").getMemoryUsed();
+        offHeap.free();
+        assertTrue(bufferPool("direct").getMemoryUsed() <= direct - offHeap.offHeapBytes());
+
+        MarkovChain mapped = ChainSnapshot.map(file).chain();
+        long mappedBytes = bufferPool("mapped").getMemoryUsed();
+        mapped.free();
+        assertTrue(bufferPool("mapped").getMemoryUsed() <= mappedBytes - Files.size(file));
+
+        // Liberar dos veces o una cadena del heap no hace nada
+        offHeap.free();
+        chain.free();
+        assertFalse(chain.generate(10, "el gato", new Random(1)).isEmpty());
+    }
+
+    @Test
+    void concurrentWritesToTheSameFileNeverLeaveItCorrupt() throws Exception {
+        ChainBuilder small = new ChainBuilder(1);
+        small.addText("uno dos tres uno dos");
+        ChainBuilder large = new ChainBuilder(2);
+        large.addText("el gato come pescado y el perro come carne ".repeat(500));
+        MarkovChain[] chains = {small.compile(), large.compile()};
+        Path file = dir.resolve("default.mkvs");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (MarkovChain chain : chains) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 20; i++) ChainSnapshot.write(chain, i, file);
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) writer.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        MarkovChain loaded = ChainSnapshot.read(file).chain();
+        assertTrue(loaded.order() == 1 || loaded.order() == 2);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void rejectsCorruptedSnapshot() throws IOException {
+        ChainBuilder builder = new ChainBuilder(1);
+        builder.addText("uno dos tres uno dos");
+        Path file = dir.resolve("model.mkvs");
+        ChainSnapshot.write(builder.compile(), 20, file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[ChainSnapshot.HEADER_BYTES + 5] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> ChainSnapshot.read(file));
+
+        // Otra versión del formato se rechaza igual, aunque el resto del fichero esté bien
+        ChainSnapshot.write(builder.compile(), 20, file);
+        bytes = Files.readAllBytes(file);
+        bytes[4] = (byte) (ChainSnapshot.VERSION - 1);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> ChainSnapshot.read(file));
+    }
+
+    private static BufferPoolMXBean bufferPool(String name) {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+}
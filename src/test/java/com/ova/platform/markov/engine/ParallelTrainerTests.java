@@ -0,0 +1,90 @@
+package com.ova.platform.markov.engine;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelTrainerTests {
+
+    private static ForkJoinPool pool;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void shardedTrainingBuildsTheSameChainAsSingleThreaded() throws IOException {
+        String text = randomText(20_000, 300, 11);
+        for (int order = 1; order <= 3; order++) {
+            ChainBuilder sequential = new ChainBuilder(order);
+            long expectedCharacters = sequential.addText(new StringReader(text));
+
+            // Fragmentos pequeños: muchas rondas y fragmentos de menos de `order` palabras
+            ChainBuilder parallel = new ChainBuilder(order);
+            long characters = new ParallelTrainer(pool, 7).addText(parallel, new StringReader(text));
+            ChainBuilder parallelLarge = new ChainBuilder(order);
+            new ParallelTrainer(pool, 4096).addText(parallelLarge, new StringReader(text));
+
+            assertEquals(expectedCharacters, characters);
+            byte[] expected = snapshotBytes(sequential.compile(), "sequential-" + order);
+            assertArrayEquals(expected, snapshotBytes(parallel.compile(), "parallel-" + order));
+            assertArrayEquals(expected, snapshotBytes(parallelLarge.compile(), "parallel-large-" + order));
+        }
+    }
+
+    @Test
+    void continuedTrainingMatchesSingleThreaded() throws IOException {
+        ChainBuilder base = new ChainBuilder(2);
+        base.addText(randomText(5_000, 200, 1));
+        MarkovChain chain = base.compile();
+        String more = randomText(8_000, 400, 2);
+
+        ChainBuilder sequential = ChainBuilder.from(chain);
+        sequential.addText(new StringReader(more));
+        ChainBuilder parallel = ChainBuilder.from(chain);
+        new ParallelTrainer(pool, 512).addText(parallel, new StringReader(more));
+
+        MarkovChain expected = sequential.compile();
+        MarkovChain actual = parallel.compile();
+        assertArrayEquals(snapshotBytes(expected, "sequential"), snapshotBytes(actual, "parallel"));
+        assertEquals(expected.generate(200, null, new Random(9)), actual.generate(200, null, new Random(9)));
+    }
+
+    private byte[] snapshotBytes(MarkovChain chain, String name) throws IOException {
+        Path file = dir.resolve(name + ".mkvs");
+        ChainSnapshot.write(chain, 0, file);
+        return Files.readAllBytes(file);
+    }
+
+    private static String randomText(int words, int vocabulary, long seed) {
+        Random random = new Random(seed);
+        String[] separators = {" ", " ", " ", ", ", ". ", "\n", "; "};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            // Zipf aproximado: pocas palabras muy frecuentes y una cola larga
+            int rank = (int) Math.floor(Math.pow(vocabulary, random.nextDouble())) - 1;
+            text.append(i % 17 == 0 ? "Palabra" : "p").append(rank).append(separators[random.nextInt(separators.length)]);
+        }
+        return text.toString();
+    }
+}
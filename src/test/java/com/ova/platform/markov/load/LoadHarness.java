@@ -0,0 +1,174 @@
+package com.ova.platform.markov.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Generador de carga HTTP en lazo abierto: las peticiones salen a una tasa
+ * fija, cada una en su instante previsto, aunque las anteriores no hayan
+ * respondido. La latencia se mide desde ese instante previsto y no desde el
+ * envío, así que si el servidor (o el propio generador) se atasca, las
+ * peticiones que debieron salir durante el atasco cuentan su espera y no se
+ * produce omisión coordinada.
+ *
+ * <p>Cada operación de la mezcla tiene su {@link Histogram} (en nanosegundos)
+ * y el informe se escribe con el formato de percentiles de HdrHistogram
+ * ({@code .hgrm}), que se compara entre builds con un diff o con el plotter
+ * de HdrHistogram.</p>
+ */
+final class LoadHarness {
+
+    /** Una operación de la mezcla: su peso y cómo construir la petición. */
+    record Operation(String name, int weight, Function<SplittableRandom, HttpRequest> request) {
+    }
+
+    /** Resultado de una operación durante la fase medida. */
+    static final class Stats {
+        final String name;
+        final Histogram latency = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        long count() {
+            return latency.getTotalCount();
+        }
+    }
+
+    private final HttpClient client;
+    private final List<Operation> operations;
+    private final int totalWeight;
+    private final Predicate<HttpResponse<String>> success;
+
+    LoadHarness(HttpClient client, List<Operation> operations, Predicate<HttpResponse<String>> success) {
+        this.client = client;
+        this.operations = List.copyOf(operations);
+        this.totalWeight = operations.stream().mapToInt(Operation::weight).sum();
+        this.success = success;
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("La mezcla no tiene ninguna operación con peso positivo");
+        }
+    }
+
+    /**
+     * Lanza {@code ratePerSecond} peticiones por segundo durante el calentamiento
+     * (sin medir) y después durante {@code duration}, y espera a que terminen las
+     * que sigan en vuelo.
+     */
+    Map<String, Stats> run(double ratePerSecond, Duration warmup, Duration duration, long seed) {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        operations.forEach(op -> stats.put(op.name(), new Stats(op.name())));
+
+        SplittableRandom random = new SplittableRandom(seed);
+        drive(ratePerSecond, warmup, random, null);
+        drive(ratePerSecond, duration, random, stats);
+        return stats;
+    }
+
+    private void drive(double ratePerSecond, Duration length, SplittableRandom random, Map<String, Stats> stats) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long start = System.nanoTime();
+        long end = start + length.toNanos();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) break;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation op = pick(random);
+            HttpRequest request = op.request().apply(random);
+            Stats target = stats != null ? stats.get(op.name()) : null;
+            inFlight.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, error) -> {
+                        if (target == null) return;
+                        target.latency.recordValue(System.nanoTime() - intended);
+                        if (error != null || !success.test(response)) target.errors.increment();
+                    }));
+            if (inFlight.size() >= 4096) {
+                inFlight.removeIf(CompletableFuture::isDone);
+            }
+        }
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new))
+                .exceptionally(error -> null)
+                .join();
+    }
+
+    private Operation pick(SplittableRandom random) {
+        int r = random.nextInt(totalWeight);
+        for (Operation op : operations) {
+            r -= op.weight();
+            if (r < 0) return op;
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * Escribe {@code <operación>.hgrm} (latencias en milisegundos) y
+     * {@code resumen.txt} en {@code dir}, y devuelve el resumen.
+     */
+    static String report(Map<String, Stats> stats, Duration duration, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        double seconds = duration.toNanos() / 1e9;
+        StringBuilder summary = new StringBuilder(String.format(Locale.ROOT,
+                "%-16s %10s %10s %8s %10s %10s %10s %10s%n",
+                "operacion", "peticiones", "req/s", "errores", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+        Histogram all = new Histogram(3);
+        long allErrors = 0;
+        for (Stats s : stats.values()) {
+            writeHgrm(s.latency, dir.resolve(s.name + ".hgrm"));
+            summary.append(line(s.name, s.latency, s.errors.sum(), seconds));
+            all.add(s.latency);
+            allErrors += s.errors.sum();
+        }
+        writeHgrm(all, dir.resolve("total.hgrm"));
+        summary.append(line("total", all, allErrors, seconds));
+
+        Files.writeString(dir.resolve("resumen.txt"), summary);
+        return summary.toString();
+    }
+
+    private static String line(String name, Histogram latency, long errors, double seconds) {
+        return String.format(Locale.ROOT, "%-16s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n",
+                name, latency.getTotalCount(), latency.getTotalCount() / seconds, errors,
+                millis(latency, 50), millis(latency, 99), millis(latency, 99.9),
+                latency.getMaxValue() / 1e6);
+    }
+
+    private static double millis(Histogram latency, double percentile) {
+        return latency.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    private static void writeHgrm(Histogram latency, Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+            latency.outputPercentileDistribution(out, 1e6);
+        }
+    }
+}
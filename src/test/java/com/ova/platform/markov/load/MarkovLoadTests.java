@@ -0,0 +1,197 @@
+package com.ova.platform.markov.load;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Prueba de carga de extremo a extremo: arranca la aplicación completa en un
+ * puerto aleatorio (Tomcat, Jackson, validación, JPA y logging tal como están
+ * configurados) y la somete a una mezcla de {@code /generate}, {@code /train}
+ * y {@code /models} a tasa fija con {@link LoadHarness}.
+ *
+ * <p>Excluida del build normal; se lanza con {@code mvn test -Pload} y se
+ * ajusta con propiedades del sistema, p. ej.
+ * {@code -Dload.rate=200 -Dload.duration-s=60 -Dload.mix=generate:90,models:10
+ * -Dload.corpus=/datos/es.txt}. Los histogramas quedan en {@code load.out}
+ * (por defecto {@code target/load}).</p>
+ */
+@Tag("load")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "markov.snapshots.dir=target/load/snapshots")
+class MarkovLoadTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarkovLoadTests.class);
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private String corpus;
+    private final List<Long> modelIds = new ArrayList<>();
+
+    @BeforeAll
+    void prepararModelos() throws IOException, InterruptedException {
+        String path = System.getProperty("load.corpus");
+        corpus = path != null ? Files.readString(Path.of(path), StandardCharsets.UTF_8) : syntheticCorpus(200_000);
+
+        // Modelo por defecto de /generate y dos modelos persistidos para /generate con modeloId y /models
+        assertEquals(200, send(post("/api/markov/train", trainBody(corpus.substring(0, Math.min(corpus.length(),
+                trainChars() * 4))))).statusCode());
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<String> created = send(post("/api/markov/models", String.format(
+                    "{\"nombre\":\"carga-%d\",\"orden\":2,\"textoEntrenamiento\":%s}", i,
+                    json(window(new SplittableRandom(i), trainChars())))));
+            assertEquals(200, created.statusCode(), created.body());
+            Matcher id = ID.matcher(created.body());
+            assertTrue(id.find(), created.body());
+            modelIds.add(Long.parseLong(id.group(1)));
+        }
+    }
+
+    @Test
+    void mezclaATasaFija() throws IOException {
+        double rate = Double.parseDouble(System.getProperty("load.rate", "100"));
+        Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup-s", 10));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration-s", 30));
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.max-error-rate", "0.01"));
+
+        LoadHarness harness = new LoadHarness(client, operations(System.getProperty("load.mix",
+                "generate:70,generate-modelo:10,train:5,models:15")),
+                response -> response.statusCode() == 200 && response.body().contains("\"success\":true"));
+        Map<String, LoadHarness.Stats> stats = harness.run(rate, warmup, duration, 42);
+
+        String summary = LoadHarness.report(stats, duration, Path.of(System.getProperty("load.out", "target/load")));
+        logger.info("Resultado de la prueba de carga:\n{}", summary);
+
+        long requests = stats.values().stream().mapToLong(LoadHarness.Stats::count).sum();
+        long errors = stats.values().stream().mapToLong(s -> s.errors.sum()).sum();
+        assertTrue(requests > 0, "No se completó ninguna petición");
+        assertTrue(errors <= maxErrorRate * requests, "Demasiados errores: " + errors + " de " + requests);
+    }
+
+    // "generate:70,train:5,..." -> operaciones con su peso
+    private List<LoadHarness.Operation> operations(String mix) {
+        List<LoadHarness.Operation> operations = new ArrayList<>();
+        int length = Integer.getInteger("load.longitud", 50);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            String name = parts[0];
+            int weight = Integer.parseInt(parts[1]);
+            operations.add(switch (name) {
+                case "generate" -> new LoadHarness.Operation(name, weight, random -> post("/api/markov/generate",
+                        "{\"longitud\":" + length + "}"));
+                case "generate-modelo" -> new LoadHarness.Operation(name, weight, random -> post("/api/markov/generate",
+                        "{\"longitud\":" + length + ",\"modeloId\":" + modelIds.get(random.nextInt(modelIds.size())) + "}"));
+                case "train" -> new LoadHarness.Operation(name, weight, random -> post("/api/markov/train",
+                        trainBody(window(random, trainChars()))));
+                case "models" -> new LoadHarness.Operation(name, weight, random -> get("/api/markov/models"));
+                default -> throw new IllegalArgumentException("Operación desconocida en load.mix: " + name);
+            });
+        }
+        return operations;
+    }
+
+    private static int trainChars() {
+        return Integer.getInteger("load.train-chars", 20_000);
+    }
+
+    // Fragmento del corpus que empieza y acaba en un espacio
+    private String window(SplittableRandom random, int chars) {
+        if (corpus.length() <= chars) return corpus;
+        int from = corpus.indexOf(' ', random.nextInt(corpus.length() - chars)) + 1;
+        int to = corpus.lastIndexOf(' ', from + chars);
+        return corpus.substring(from, Math.max(to, from + 1));
+    }
+
+    private static String trainBody(String text) {
+        return "{\"orden\":2,\"textoEntrenamiento\":" + json(text) + "}";
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String json(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 16).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                    else out.append(c);
+                }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    // Español sintético reproducible: palabras frecuentes con tildes y una cola de palabras raras
+    private static String syntheticCorpus(int chars) {
+        String[] common = {"de", "la", "que", "el", "en", "y", "a", "los", "se", "del", "las", "un", "por",
+                "con", "no", "una", "su", "para", "es", "al", "como", "más", "pero", "también", "está",
+                "año", "niño", "mañana", "corazón", "canción", "después", "según", "música", "país", "árbol"};
+        String[] syllables = {"ca", "de", "fi", "go", "lu", "ma", "ne", "pi", "ro", "sa", "te", "vi", "ña", "ció"};
+        SplittableRandom random = new SplittableRandom(7);
+        StringBuilder text = new StringBuilder(chars + 32);
+        while (text.length() < chars) {
+            int rank = (int) Math.pow(common.length + 5_000, random.nextDouble()) - 1;
+            if (rank < common.length) {
+                text.append(common[rank]);
+            } else {
+                for (int code = rank; code > 0; code /= syllables.length) {
+                    text.append(syllables[code % syllables.length]);
+                }
+            }
+            text.append(random.nextInt(12) == 0 ? ". " : " ");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package com.ova.platform.markov.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationCacheTests {
+
+    private static final String MODELO = GenerationCache.modelo(1L);
+    private static final String OTRO = GenerationCache.modelo(2L);
+    private static final GenerationCache.Entrada TEXTO = new GenerationCache.Entrada("uno dos tres cuatro", 4);
+
+    // 160 bytes fijos más 2 por carácter de texto, modelo e inicio
+    private static final long PESO = 160 + 2 * (TEXTO.texto().length() + MODELO.length() + "uno".length());
+
+    private static GenerationCache cache(long maxBytes) {
+        GenerationCache cache = new GenerationCache();
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+        cache.registrarMetricas();
+        return cache;
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedToStayWithinByteLimit() {
+        GenerationCache cache = cache(2 * PESO + PESO / 2);
+
+        cache.put(MODELO, 0, "uno", 10, 2, 1L, TEXTO);
+        cache.put(MODELO, 0, "uno", 10, 2, 2L, TEXTO);
+        assertTrue(cache.get(MODELO, 0, "uno", 10, 2, 1L).isPresent());
+        cache.put(MODELO, 0, "uno", 10, 2, 3L, TEXTO);
+
+        assertEquals(2, cache.size());
+        assertEquals(2 * PESO, cache.bytes());
+        assertTrue(cache.get(MODELO, 0, "uno", 10, 2, 1L).isPresent());
+        assertTrue(cache.get(MODELO, 0, "uno", 10, 2, 2L).isEmpty());
+        assertTrue(cache.get(MODELO, 0, "uno", 10, 2, 3L).isPresent());
+
+        // Una entrada que por sí sola supera el límite no se guarda ni desaloja nada
+        cache.put(MODELO, 0, "uno", 10, 2, 4L, new GenerationCache.Entrada("x".repeat((int) PESO), 1));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void invalidateDropsModelEntriesAndRejectsStaleResults() {
+        GenerationCache cache = cache(1 << 20);
+        long version = cache.version(MODELO);
+        cache.put(MODELO, version, "uno", 10, 2, 1L, TEXTO);
+        cache.put(OTRO, cache.version(OTRO), "uno", 10, 2, 1L, TEXTO);
+
+        cache.invalidate(MODELO);
+
+        assertEquals(version + 1, cache.version(MODELO));
+        assertTrue(cache.get(MODELO, version + 1, "uno", 10, 2, 1L).isEmpty());
+        assertTrue(cache.get(OTRO, cache.version(OTRO), "uno", 10, 2, 1L).isPresent());
+        assertEquals(1, cache.size());
+
+        // Generación que empezó con el modelo anterior: su resultado ya no se guarda
+        cache.put(MODELO, version, "uno", 10, 2, 2L, TEXTO);
+        assertEquals(1, cache.size());
+        assertEquals(PESO, cache.bytes());
+    }
+}
@@ -0,0 +1,60 @@
+package com.ova.platform.markov.service;
+
+import com.ova.platform.markov.model.request.CreateModelRequest;
+import com.ova.platform.markov.model.response.ModelResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Ampliar un modelo compactado con poda: el resultado es el de reentrenar
+ * todos sus textos con los recuentos exactos y compactar después, no el de
+ * sumar el texto nuevo a los recuentos ya podados.
+ */
+@SpringBootTest(properties = {"markov.engine=java", "markov.snapshots.enabled=false", "spring.jpa.show-sql=false",
+        "markov.compaction.min-count=2", "spring.datasource.url=jdbc:h2:mem:lossycompaction"})
+class LossyCompactionAppendTests {
+
+    // "come" tiene sucesores de una sola aparición que la poda descarta
+    private static final String BASE = "el gato come pescado y el gato come carne y el perro come pan";
+    private static final String NUEVO = "el perro come pan y el gato come queso";
+
+    @Autowired
+    private ModelService modelService;
+
+    @Autowired
+    private ModelRegistry modelRegistry;
+
+    @Autowired
+    private MarkovEngine engine;
+
+    @Test
+    void appendRetrainsFromStoredTexts() {
+        CreateModelRequest request = new CreateModelRequest();
+        request.setNombre("podado");
+        request.setOrden(1);
+        request.setTextoEntrenamiento(BASE);
+        Long id = modelService.createModel(request).getId();
+        assertFalse(modelRegistry.getOrLoad(id).orElseThrow().hasExactCounts());
+
+        ModelResponse appended = modelService.appendTraining(id, NUEVO).orElseThrow();
+
+        MarkovModelHandle resident = modelRegistry.getOrLoad(id).orElseThrow();
+        MarkovModelHandle expected = engine.trainModel(1, List.of(BASE, NUEVO));
+        try {
+            assertEquals(expected.getEstadosCount(), appended.getEstadosCount());
+            assertEquals(expected.getBytesEnMemoria(), resident.getBytesEnMemoria());
+            for (long seed = 0; seed < 10; seed++) {
+                assertEquals(engine.generateText(expected, 20, "come", seed),
+                        engine.generateText(resident, 20, "come", seed));
+            }
+        } finally {
+            engine.freeModel(expected);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.ova.platform.markov.service;
+
+import com.ova.platform.markov.model.request.CreateModelRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Una carga que ya leyó la fila del modelo y se cruza con una actualización o un
+ * borrado: al terminar no debe quedar registrado el modelo que leyó.
+ */
+@SpringBootTest(properties = {"markov.engine=java", "markov.snapshots.enabled=false", "spring.jpa.show-sql=false",
+        "markov.warmup.enabled=false", "spring.datasource.url=jdbc:h2:mem:loadrace"})
+class ModelLoadRaceTests {
+
+    private static final String ANTIGUO = "el gato come pescado y el perro come carne cuando el gato duerme";
+    private static final String NUEVO = "carne y pescado come el gato mientras el perro duerme en casa";
+
+    @SpyBean
+    private ModelSnapshotStore snapshotStore;
+
+    @Autowired
+    private ModelService modelService;
+
+    @Autowired
+    private ModelRegistry modelRegistry;
+
+    @Autowired
+    private MarkovEngine engine;
+
+    // La carga se detiene tras leer la fila y antes de entrenar y registrar, hasta que el test la suelta
+    private final CountDownLatch filaLeida = new CountDownLatch(1);
+    private final CountDownLatch seguir = new CountDownLatch(1);
+
+    @BeforeEach
+    void pausarCargas() {
+        doAnswer(invocation -> {
+            filaLeida.countDown();
+            seguir.await();
+            return invocation.callRealMethod();
+        }).when(snapshotStore).load(any());
+    }
+
+    @Test
+    void loadRacingAnUpdateKeepsTheUpdatedModel() throws Exception {
+        Long id = modelService.createModel(request("carrera-update", ANTIGUO)).getId();
+        modelRegistry.remove(id);
+
+        cruzar(id, () -> modelService.updateModel(id, request("carrera-update", NUEVO)));
+
+        MarkovModelHandle residente = modelRegistry.find(id).orElseThrow();
+        MarkovModelHandle esperado = engine.trainModel(2, NUEVO);
+        try {
+            assertEquals(esperado.getEstadosCount(), residente.getEstadosCount());
+            assertEquals(engine.generateText(esperado, 30, "el gato", 1L), engine.generateText(residente, 30, "el gato", 1L));
+        } finally {
+            engine.freeModel(esperado);
+        }
+    }
+
+    @Test
+    void loadRacingADeleteDoesNotResurrectTheModel() throws Exception {
+        Long id = modelService.createModel(request("carrera-delete", ANTIGUO)).getId();
+        modelRegistry.remove(id);
+
+        cruzar(id, () -> modelService.deleteModel(id));
+
+        assertTrue(modelRegistry.find(id).isEmpty());
+        assertTrue(modelRegistry.getOrLoad(id).isEmpty());
+    }
+
+    // Arranca una carga, la deja parada con la fila ya leída y lanza el cambio; la carga sigue cuando
+    // el cambio ha terminado o espera el lock del modelo
+    private void cruzar(Long id, Runnable cambio) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Optional<MarkovModelHandle>> carga = executor.submit(() -> modelRegistry.getOrLoad(id));
+            assertTrue(filaLeida.await(10, TimeUnit.SECONDS));
+
+            Future<?> escritura = executor.submit(cambio);
+            while (!escritura.isDone() && !modelRegistry.lockFor(id).hasQueuedThreads()) {
+                Thread.sleep(5);
+            }
+            seguir.countDown();
+
+            carga.get(10, TimeUnit.SECONDS);
+            escritura.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CreateModelRequest request(String nombre, String texto) {
+        CreateModelRequest request = new CreateModelRequest();
+        request.setNombre(nombre);
+        request.setOrden(2);
+        request.setTextoEntrenamiento(texto);
+        return request;
+    }
+}
@@ -0,0 +1,120 @@
+package com.ova.platform.markov.service;
+
+import com.ova.platform.markov.exception.ModelReleasedException;
+import com.ova.platform.markov.model.entity.MarkovModel;
+import com.ova.platform.markov.repository.MarkovModelRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Registro de modelos residentes sobre el motor Java y sin snapshots: cada
+ * carga reentrena desde el texto persistido.
+ */
+@SpringBootTest(properties = {"markov.engine=java", "markov.snapshots.enabled=false", "spring.jpa.show-sql=false",
+        "markov.registry.max-models=2", "markov.warmup.enabled=false",
+        "spring.datasource.url=jdbc:h2:mem:registry"})
+class ModelRegistryTests {
+
+    private static final String TEXTO = "el gato come pescado y el perro come carne cuando el gato duerme";
+
+    @Autowired
+    private ModelRegistry modelRegistry;
+
+    @Autowired
+    private MarkovModelRepository modelRepository;
+
+    @Autowired
+    private MarkovEngine engine;
+
+    @AfterEach
+    void vaciarRegistro() {
+        modelRegistry.freeAll();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedModel() {
+        Long primero = guardar("lru-1");
+        Long segundo = guardar("lru-2");
+        Long tercero = guardar("lru-3");
+
+        modelRegistry.getOrLoad(primero).orElseThrow();
+        MarkovModelHandle desalojado = modelRegistry.getOrLoad(segundo).orElseThrow();
+        modelRegistry.find(primero);
+        modelRegistry.getOrLoad(tercero).orElseThrow();
+
+        assertEquals(2, modelRegistry.getResidentCount());
+        assertTrue(modelRegistry.find(primero).isPresent());
+        assertTrue(modelRegistry.find(segundo).isEmpty());
+        // Sin generaciones en curso, desalojar libera el modelo
+        assertFalse(desalojado.retain());
+    }
+
+    @Test
+    void releasedModelIsReloadedOnNextLookup() {
+        Long id = guardar("liberado");
+        MarkovModelHandle anterior = modelRegistry.getOrLoad(id).orElseThrow();
+        String texto = engine.generateText(anterior, 20, "el gato", 7L);
+
+        modelRegistry.remove(id);
+
+        // Quien todavía tenía el modelo anterior recibe ModelReleasedException y vuelve a pedirlo
+        assertThrows(ModelReleasedException.class, () -> engine.generateText(anterior, 20, "el gato", 7L));
+        MarkovModelHandle recargado = modelRegistry.getOrLoad(id).orElseThrow();
+        assertNotSame(anterior, recargado);
+        assertEquals(texto, engine.generateText(recargado, 20, "el gato", 7L));
+    }
+
+    @Test
+    void concurrentLookupsShareOneLoad() throws Exception {
+        Long id = guardar("compartido", TEXTO.repeat(2000));
+        int hilos = 8;
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try {
+            List<Future<MarkovModelHandle>> cargas = new ArrayList<>();
+            for (int i = 0; i < hilos; i++) {
+                cargas.add(executor.submit(() -> {
+                    salida.await();
+                    return modelRegistry.getOrLoad(id).orElseThrow();
+                }));
+            }
+            salida.countDown();
+
+            MarkovModelHandle handle = cargas.get(0).get();
+            for (Future<MarkovModelHandle> carga : cargas) {
+                // Una segunda carga habría registrado otro handle y liberado el primero
+                assertSame(handle, carga.get());
+            }
+            assertTrue(handle.retain());
+            handle.release();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Long guardar(String nombre) {
+        return guardar(nombre, TEXTO);
+    }
+
+    private Long guardar(String nombre, String texto) {
+        MarkovModel model = new MarkovModel(nombre, null, 2);
+        model.setTextoEntrenamiento(texto);
+        return modelRepository.save(model).getId();
+    }
+}
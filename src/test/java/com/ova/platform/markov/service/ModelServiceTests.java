@@ -0,0 +1,114 @@
+package com.ova.platform.markov.service;
+
+import com.ova.platform.markov.model.entity.MarkovModel;
+import com.ova.platform.markov.model.request.CreateModelRequest;
+import com.ova.platform.markov.model.response.ModelResponse;
+import com.ova.platform.markov.repository.MarkovModelRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Entrenamiento incremental de punta a punta sobre el motor Java, sin
+ * snapshots: un modelo desalojado se reconstruye desde sus textos guardados.
+ */
+@SpringBootTest(properties = {"markov.engine=java", "markov.snapshots.enabled=false", "spring.jpa.show-sql=false"})
+class ModelServiceTests {
+
+    private static final String BASE = "el gato come pescado y el perro come carne cuando el gato duerme";
+    private static final String NUEVO = "carne y pescado come el gato mientras el perro duerme en casa";
+
+    @Autowired
+    private ModelService modelService;
+
+    @Autowired
+    private ModelRegistry modelRegistry;
+
+    @Autowired
+    private MarkovModelRepository modelRepository;
+
+    @Autowired
+    private MarkovEngine engine;
+
+    @Test
+    void appendedTextIsRebuiltAsSeparateDocument() {
+        ModelResponse created = modelService.createModel(request("ampliado", BASE));
+        Long id = created.getId();
+
+        ModelResponse appended = modelService.appendTraining(id, NUEVO).orElseThrow();
+        assertEquals("ACTIVO", appended.getEstado());
+        assertEquals(BASE, modelRepository.findById(id).orElseThrow().getTextoEntrenamiento());
+        assertEquals(List.of(BASE, NUEVO), modelRegistry.trainingDocuments(modelRepository.findById(id).orElseThrow()));
+
+        List<String> incremental = generate(id);
+        assertSameAs(List.of(BASE, NUEVO), appended, incremental);
+
+        // Desalojado y sin snapshot: la recarga entrena los dos documentos por separado
+        modelRegistry.remove(id);
+        assertEquals(incremental, generate(id));
+    }
+
+    @Test
+    void appendToInactiveModelRetrainsStoredText() {
+        Long id = modelService.createModel(request("inactivo", BASE)).getId();
+        MarkovModel model = modelRepository.findById(id).orElseThrow();
+        model.setEstado("ERROR");
+        modelRepository.save(model);
+        modelRegistry.remove(id);
+
+        ModelResponse appended = modelService.appendTraining(id, NUEVO).orElseThrow();
+
+        assertEquals("ACTIVO", appended.getEstado());
+        List<String> resident = generate(id);
+        assertSameAs(List.of(BASE, NUEVO), appended, resident);
+        modelRegistry.remove(id);
+        assertEquals(resident, generate(id));
+    }
+
+    @Test
+    void updateWithNewTextDropsAppendedDocuments() {
+        Long id = modelService.createModel(request("reemplazado", BASE)).getId();
+        modelService.appendTraining(id, NUEVO).orElseThrow();
+
+        modelService.updateModel(id, request("reemplazado", NUEVO)).orElseThrow();
+
+        assertEquals(List.of(NUEVO), modelRegistry.trainingDocuments(modelRepository.findById(id).orElseThrow()));
+    }
+
+    private static CreateModelRequest request(String nombre, String texto) {
+        CreateModelRequest request = new CreateModelRequest();
+        request.setNombre(nombre);
+        request.setOrden(2);
+        request.setTextoEntrenamiento(texto);
+        return request;
+    }
+
+    private List<String> generate(Long id) {
+        MarkovModelHandle handle = modelRegistry.getOrLoad(id).orElseThrow();
+        return List.of(engine.generateText(handle, 30, "el gato", 1L),
+                engine.generateText(handle, 30, "el perro", 2L),
+                engine.generateText(handle, 30, "carne", 3L));
+    }
+
+    // Mismos estados y mismo texto generado que el modelo entrenado de una vez con esos documentos
+    private void assertSameAs(List<String> documents, ModelResponse response, List<String> generated) {
+        MarkovModelHandle expected = engine.trainModel(2, documents);
+        MarkovModelHandle joined = engine.trainModel(2, String.join("\n", documents));
+        try {
+            assertEquals(expected.getEstadosCount(), response.getEstadosCount());
+            assertEquals(List.of(engine.generateText(expected, 30, "el gato", 1L),
+                    engine.generateText(expected, 30, "el perro", 2L),
+                    engine.generateText(expected, 30, "carne", 3L)), generated);
+            assertTrue(response.getEstadosCount() < joined.getEstadosCount(),
+                    "la ventana no debe pasar de un documento al siguiente");
+        } finally {
+            engine.freeModel(expected);
+            engine.freeModel(joined);
+        }
+    }
+}